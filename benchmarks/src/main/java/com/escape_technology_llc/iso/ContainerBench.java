@@ -0,0 +1,74 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.escape_technology_llc.iso.box.handler.IsoContainerHandler;
+
+/**
+ * End-to-end {@link IsoContainerHandler} over a file, through each file-based entry point.
+ * @author escape-llc
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerBench {
+	@Param("../src/test/resources/auphonic_chapters_demo.m4a")
+	public String file;
+	@Param({ Inputs.FIXTURE, Inputs.LARGE, Inputs.FRAGMENTED })
+	public String layout;
+	File fx;
+	final ParseHandler eh = new NullHandler();
+	@Setup
+	public void setup() throws Exception {
+		fx = Inputs.file(layout, file);
+	}
+	@TearDown
+	public void teardown() {
+		Inputs.release(layout, fx);
+	}
+	@Benchmark
+	public Object parse() throws Exception {
+		final IsoContainerHandler ich = new IsoContainerHandler();
+		ISOParser.parse(fx, eh, ich);
+		return ich.render();
+	}
+	@Benchmark
+	public Object parseMapped() throws Exception {
+		final IsoContainerHandler ich = new IsoContainerHandler();
+		ISOParser.parseMapped(fx, eh, ich);
+		return ich.render();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Box header walking only; every container box is descended, no box data is decoded.
+ * The file is memory-mapped and stays in the page cache, so the numbers reflect the parser, not the storage.
+ * @author escape-llc
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderWalkBench {
+	/**
+	 * Counts boxes and descends into containers.
+	 */
+	static final class Walker implements ParseCallback {
+		int count;
+		public void start() {
+		}
+		public void box(ParseContext pc, Box box) throws Exception {
+			count++;
+			if(Box.hasBoxes(box)) {
+				pc.parseBox(box, this);
+			}
+		}
+		public void end(ParseContext pc) throws Exception {
+		}
+	}
+	@Param("../src/test/resources/auphonic_chapters_demo.m4a")
+	public String file;
+	@Param({ Inputs.FIXTURE, Inputs.LARGE, Inputs.FRAGMENTED })
+	public String layout;
+	File fx;
+	RandomAccessFile raf;
+	MappedParseContext ctx;
+	@Setup
+	public void setup() throws Exception {
+		fx = Inputs.file(layout, file);
+		raf = new RandomAccessFile(fx, "r");
+		ctx = new MappedParseContext(new NullHandler(), raf, MappedParseContext.WINDOW);
+	}
+	@TearDown
+	public void teardown() throws Exception {
+		raf.close();
+		Inputs.release(layout, fx);
+	}
+	@Benchmark
+	public int walk() throws Exception {
+		final Walker wx = new Walker();
+		ISOParser.parseBoxes(null, 0, ctx.length(), ctx, wx);
+		return wx.count;
+	}
+}
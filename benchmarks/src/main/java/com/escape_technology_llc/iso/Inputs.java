@@ -0,0 +1,78 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.File;
+
+import com.escape_technology_llc.IsoGenerator;
+
+/**
+ * Input files for the file-based benchmarks.
+ * Layouts:
+ * fixture: the file given by the "file" parameter.
+ * large: 2 tracks of 1M samples each, chunk size alternating 22/21, moov at end.
+ * fragmented: 1 track of 1M samples in 1000 moof/mdat pairs.
+ * Generated files are temporary; see {@link #release(String, File)}.
+ * @author escape-llc
+ *
+ */
+final class Inputs {
+	static final String FIXTURE = "fixture";
+	static final String LARGE = "large";
+	static final String FRAGMENTED = "fragmented";
+	private Inputs() { }
+	/**
+	 * Return the file for the given layout, generating it if necessary.
+	 * @param layout layout name.
+	 * @param fixture path of the fixture file.
+	 * @return the file.
+	 * @throws Exception on errors.
+	 */
+	static File file(String layout, String fixture) throws Exception {
+		if(FIXTURE.equals(layout)) {
+			final File fx = new File(fixture);
+			if(!fx.isFile())
+				throw new IllegalArgumentException(String.format("not a file: %s", fx.getAbsolutePath()));
+			return fx;
+		}
+		final IsoGenerator gen = new IsoGenerator();
+		gen.samples = 1000000;
+		gen.minSize = 1;
+		gen.maxSize = 16;
+		if(LARGE.equals(layout)) {
+			gen.tracks = 2;
+			gen.moovAtEnd = true;
+		}
+		else if(FRAGMENTED.equals(layout)) {
+			gen.fragmentSamples = 1000;
+		}
+		else
+			throw new IllegalArgumentException("layout");
+		final File fx = File.createTempFile("isobench-" + layout, ".mp4");
+		gen.write(fx);
+		return fx;
+	}
+	/**
+	 * Delete the file if it was generated.
+	 * @param layout layout name.
+	 * @param fx file from {@link #file(String, String)}.
+	 */
+	static void release(String layout, File fx) {
+		if(fx != null && !FIXTURE.equals(layout)) {
+			fx.delete();
+		}
+	}
+}
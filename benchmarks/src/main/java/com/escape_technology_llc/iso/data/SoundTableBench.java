@@ -0,0 +1,79 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Sample lookup through {@link SoundTable}.
+ * Samples are visited in a fixed pseudo-random order, so lookups do not benefit from locality.
+ * @author escape-llc
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoundTableBench {
+	@Param({ "5000", "1000000" })
+	public int samples;
+	SoundTable st;
+	int[] order;
+	int next;
+	@Setup
+	public void setup() throws Exception {
+		final SampleToChunk stsc = (SampleToChunk)BoxDataFactory.create(Tables.box(Box.STSC, Tables.stsc(samples)), Tables.stsc(samples));
+		final TimeToSample stts = (TimeToSample)BoxDataFactory.create(Tables.box(Box.STTS, Tables.stts(samples)), Tables.stts(samples));
+		final SampleSize stsz = (SampleSize)BoxDataFactory.create(Tables.box(Box.STSZ, Tables.stsz(samples)), Tables.stsz(samples));
+		final ChunkOffset stco = (ChunkOffset)BoxDataFactory.create(Tables.box(Box.STCO, Tables.stco(samples)), Tables.stco(samples));
+		st = new SoundTable(null, stsc, stts, null, stsz, stco);
+		order = new int[4096];
+		long seed = 12345;
+		for(int ix = 0; ix < order.length; ix++) {
+			seed = seed*6364136223846793005L + 1442695040888963407L;
+			order[ix] = 1 + (int)((seed >>> 33) % samples);
+		}
+	}
+	int sample() {
+		final int sample = order[next];
+		next = (next + 1) & (order.length - 1);
+		return sample;
+	}
+	@Benchmark
+	public Object chunkForSample() {
+		return st.chunkForSample(sample());
+	}
+	@Benchmark
+	public Object resolve() {
+		return st.resolve(sample());
+	}
+}
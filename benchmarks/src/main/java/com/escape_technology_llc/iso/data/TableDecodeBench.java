@@ -0,0 +1,78 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Sample table decoding through {@link BoxDataFactory}.
+ * @author escape-llc
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableDecodeBench {
+	@Param({ "5000", "1000000" })
+	public int samples;
+	Box stsz, stco, stts, stsc;
+	ByteBuffer stszData, stcoData, sttsData, stscData;
+	@Setup
+	public void setup() {
+		stszData = Tables.stsz(samples);
+		stcoData = Tables.stco(samples);
+		sttsData = Tables.stts(samples);
+		stscData = Tables.stsc(samples);
+		stsz = Tables.box(Box.STSZ, stszData);
+		stco = Tables.box(Box.STCO, stcoData);
+		stts = Tables.box(Box.STTS, sttsData);
+		stsc = Tables.box(Box.STSC, stscData);
+	}
+	@Benchmark
+	public Object stsz() throws Exception {
+		return BoxDataFactory.create(stsz, stszData.duplicate());
+	}
+	@Benchmark
+	public Object stco() throws Exception {
+		return BoxDataFactory.create(stco, stcoData.duplicate());
+	}
+	@Benchmark
+	public Object stts() throws Exception {
+		return BoxDataFactory.create(stts, sttsData.duplicate());
+	}
+	@Benchmark
+	public Object stsc() throws Exception {
+		return BoxDataFactory.create(stsc, stscData.duplicate());
+	}
+}
@@ -0,0 +1,96 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+import java.nio.ByteBuffer;
+
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FullBox;
+
+/**
+ * Synthetic sample table box contents, as the unmarshalers see them (after version/flags).
+ * Chunks alternate between 22 and 21 samples, which gives STSC one entry per chunk;
+ * the worst case for sample-to-chunk lookup.
+ * @author escape-llc
+ *
+ */
+final class Tables {
+	static final int SPC_EVEN = 22;
+	static final int SPC_ODD = 21;
+	private Tables() { }
+	/**
+	 * Return a box with no parent and the given type; position and length are nominal.
+	 * @param type box type.
+	 * @param data box contents.
+	 * @return new instance.
+	 */
+	static Box box(String type, ByteBuffer data) {
+		return new FullBox(null, type, 0, data.remaining() + 12, 12, 0);
+	}
+	/**
+	 * Number of chunks needed for the given number of samples.
+	 * @param samples sample count.
+	 * @return chunk count.
+	 */
+	static int chunks(int samples) {
+		int chunks = 0;
+		for(int ix = 0; ix < samples; ) {
+			ix += (chunks & 1) == 0 ? SPC_EVEN : SPC_ODD;
+			chunks++;
+		}
+		return chunks;
+	}
+	static ByteBuffer stsz(int samples) {
+		final ByteBuffer bb = ByteBuffer.allocate(8 + 4*samples);
+		bb.putInt(0);
+		bb.putInt(samples);
+		for(int ix = 0; ix < samples; ix++) {
+			bb.putInt(200 + (ix*37 & 127));
+		}
+		bb.flip();
+		return bb;
+	}
+	static ByteBuffer stco(int samples) {
+		final int chunks = chunks(samples);
+		final ByteBuffer bb = ByteBuffer.allocate(4 + 4*chunks);
+		bb.putInt(chunks);
+		for(int ix = 0; ix < chunks; ix++) {
+			bb.putInt(4096 + ix*(SPC_EVEN*328));
+		}
+		bb.flip();
+		return bb;
+	}
+	static ByteBuffer stts(int samples) {
+		final ByteBuffer bb = ByteBuffer.allocate(4 + 8);
+		bb.putInt(1);
+		bb.putInt(samples);
+		bb.putInt(1024);
+		bb.flip();
+		return bb;
+	}
+	static ByteBuffer stsc(int samples) {
+		final int chunks = chunks(samples);
+		final ByteBuffer bb = ByteBuffer.allocate(4 + 12*chunks);
+		bb.putInt(chunks);
+		for(int ix = 0; ix < chunks; ix++) {
+			bb.putInt(ix + 1);
+			bb.putInt((ix & 1) == 0 ? SPC_EVEN : SPC_ODD);
+			bb.putInt(1);
+		}
+		bb.flip();
+		return bb;
+	}
+}
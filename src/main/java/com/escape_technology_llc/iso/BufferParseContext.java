@@ -0,0 +1,83 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Parse context over a buffer holding a range of the file.
+ * Used when only part of the file is available, e.g. a single box.
+ * @author escape-llc
+ *
+ */
+final class BufferParseContext extends ISOParser.BaseParseContext {
+	// index zero is file offset base
+	final ByteBuffer data;
+	// file offset of data[0]
+	final long base;
+	// current read position
+	long position;
+	/**
+	 * Ctor.
+	 * @param eh Handler to use.
+	 * @param data the bytes; index zero corresponds to base.
+	 * @param base file offset of the first byte.
+	 */
+	BufferParseContext(ParseHandler eh, ByteBuffer data, long base) {
+		super(eh);
+		if(data == null)
+			throw new IllegalArgumentException("data");
+		this.data = data;
+		this.base = base;
+		this.position = base;
+	}
+	/**
+	 * Return a view of the given range.
+	 * @param offset absolute file offset.
+	 * @param length number of bytes.
+	 * @return new view; index zero is the first byte.
+	 * @throws Exception range is not in the buffer.
+	 */
+	ByteBuffer view(long offset, int length) throws Exception {
+		if(offset < base || offset + length > base + data.limit())
+			throw new EOFException(String.format("read %d bytes @%d outside of buffered range %d-%d", length, offset, base, base + data.limit()));
+		final ByteBuffer dup = data.duplicate();
+		dup.position((int)(offset - base));
+		dup.limit(dup.position() + length);
+		return dup.slice();
+	}
+	void seek(long position) throws Exception {
+		this.position = position;
+	}
+	void readFully(byte[] buf, int offset, int length) throws Exception {
+		view(position, length).get(buf, offset, length);
+		position += length;
+	}
+	long length() throws Exception {
+		return base + data.limit();
+	}
+	ByteBuffer contents(Box box) throws Exception {
+		return view(box.dataPosition(), dataLength(box));
+	}
+	public byte[] materialize(long position, int length) throws Exception {
+		final byte[] buf = new byte[length];
+		view(position, length).get(buf);
+		return buf;
+	}
+}
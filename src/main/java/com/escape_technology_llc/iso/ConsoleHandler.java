@@ -21,6 +21,9 @@ package com.escape_technology_llc.iso;
  *
  */
 public class ConsoleHandler implements ParseHandler {
+	public boolean isEnabled(int level) {
+		return true;
+	}
 	public void message(String msg) {
 		System.out.println(msg);
 	}
@@ -16,10 +16,16 @@ limitations under the License.
 package com.escape_technology_llc.iso;
 
 import java.io.File;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.BitSet;
 import java.util.concurrent.TimeUnit;
 
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
 import com.escape_technology_llc.iso.box.FullBox;
 import com.escape_technology_llc.iso.box.UserType;
 import com.escape_technology_llc.iso.data.BoxDataFactory;
@@ -27,32 +33,154 @@ import com.escape_technology_llc.iso.data.Unmarshal;
 
 /**
  * ISO Part 12 file parser.
+ * Callbacks can end the parse early with {@link ParseContext#stop()} or {@link ParseContext#skipSiblings()}.
+ * Interrupting the parsing thread ends the parse with InterruptedException before the next box.
  * @author escape-llc
  *
  */
 public class ISOParser {
 	/**
-	 * Implementation of parse context.
+	 * Base for parse contexts that can reposition and read from the underlying source.
+	 * This is what {@link ISOParser#parseBoxes(Box, long, long, BaseParseContext, ParseCallback)} requires.
 	 * @author escape-llc
 	 *
 	 */
-	static final class MPParseContext implements ParseContext {
-		final RandomAccessFile raf;
+	static abstract class BaseParseContext implements ParseContext {
+		// largest data scratch buffer kept between calls
+		static final int SCRATCH_MAX = 1024*1024;
 		final ParseHandler eh;
-		public MPParseContext(ParseHandler eh, RandomAccessFile raf) {
+		// header scratch; values are extracted before any callback runs, so nested walks can share them
+		final byte[] buf32 = new byte[4];
+		final byte[] buf64 = new byte[8];
+		final byte[] lengthandtype = new byte[8];
+		// box data scratch; see scratch(int)
+		ByteBuffer scratch;
+		// set by stop()
+		boolean stopped;
+		// number of walks in progress; see parseBoxes()
+		int depth;
+		// walks that end after the current callback, by depth; nested walks keep their own request
+		final BitSet skipped = new BitSet();
+		BaseParseContext(ParseHandler eh) {
 			if(eh == null)
 				throw new IllegalArgumentException("eh");
-			if(raf == null)
-				throw new IllegalArgumentException("raf");
-			this.raf = raf;
 			this.eh = eh;
 		}
+		/**
+		 * Move the read position to the given offset.
+		 * @param position absolute offset (from start of file).
+		 * @throws Exception on errors.
+		 */
+		abstract void seek(long position) throws Exception;
+		/**
+		 * Fill the buffer range from the current read position, advancing the read position.
+		 * @param buf target buffer.
+		 * @param offset first index to fill.
+		 * @param length number of bytes to read.
+		 * @throws Exception on errors, including EOF before buffer is filled.
+		 */
+		abstract void readFully(byte[] buf, int offset, int length) throws Exception;
+		/**
+		 * Fill the buffer from the current read position, advancing the read position.
+		 * @param buf target buffer.
+		 * @throws Exception on errors, including EOF before buffer is filled.
+		 */
+		void readFully(byte[] buf) throws Exception {
+			readFully(buf, 0, buf.length);
+		}
+		/**
+		 * Return the data portion of the box.
+		 * The buffer is only valid until the next call; unmarshalers copy what they keep.
+		 * @param box source box.
+		 * @return buffer positioned at first data byte, limit at end of box.
+		 * @throws Exception on errors.
+		 */
+		abstract ByteBuffer contents(Box box) throws Exception;
+		/**
+		 * Return the total number of bytes in the source.
+		 * @return number of bytes.
+		 * @throws Exception on errors.
+		 */
+		abstract long length() throws Exception;
+		/**
+		 * Return whether the source has no more bytes at the current read position.
+		 * Only sources of unknown length need to report true; the top-level walk stops there.
+		 * @return true: no more bytes; false: more bytes or length is known.
+		 * @throws Exception on errors.
+		 */
+		boolean exhausted() throws Exception {
+			return false;
+		}
+		/**
+		 * Return a heap buffer for box data.
+		 * The same buffer is handed out each time, so this context is not safe for use by multiple threads;
+		 * use one context per parse.
+		 * Requests larger than SCRATCH_MAX get a buffer that is not retained.
+		 * @param length number of bytes required.
+		 * @return buffer positioned at zero with limit length.
+		 */
+		ByteBuffer scratch(int length) {
+			if(length > SCRATCH_MAX) {
+				return ByteBuffer.allocate(length);
+			}
+			if(scratch == null || scratch.capacity() < length) {
+				scratch = ByteBuffer.allocate(Math.max(length, 4096));
+			}
+			scratch.clear();
+			scratch.limit(length);
+			return scratch;
+		}
+		/**
+		 * Return the data length of the box as a buffer size.
+		 * @param box source box.
+		 * @return number of data bytes.
+		 */
+		static int dataLength(Box box) {
+			final long lg = box.dataLength();
+			if(lg < 0 || lg > Integer.MAX_VALUE)
+				throw new IllegalArgumentException(String.format("box data length %d cannot be buffered", lg));
+			return (int)lg;
+		}
 		public void parseBox(Box box, ParseCallback pc) throws Exception {
-			parseBoxes(raf, box, box.dataPosition(), box.dataLength(), this, pc);
+			parseBoxes(box, box.dataPosition(), box.dataLength(), this, pc);
 		}
 		@SuppressWarnings("unchecked")
 		public <T> T create(Box box) throws Exception {
-			return (T) BoxDataFactory.create(box, raf);
+			final BoxDataFactory.BoxUnmarshaler dfb = BoxDataFactory.find(box);
+			if(dfb == null) return null;
+			return (T) dfb.unmarshal(box, contents(box).slice());
+		}
+		public ParseHandler handler() { return eh; }
+		public void stop() { stopped = true; }
+		public void skipSiblings() { skipped.set(depth); }
+	}
+	/**
+	 * Implementation of parse context.
+	 * @author escape-llc
+	 *
+	 */
+	static final class MPParseContext extends BaseParseContext {
+		final RandomAccessFile raf;
+		public MPParseContext(ParseHandler eh, RandomAccessFile raf) {
+			super(eh);
+			if(raf == null)
+				throw new IllegalArgumentException("raf");
+			this.raf = raf;
+		}
+		void seek(long position) throws Exception {
+			raf.seek(position);
+		}
+		void readFully(byte[] buf, int offset, int length) throws Exception {
+			raf.readFully(buf, offset, length);
+		}
+		long length() throws Exception {
+			return raf.length();
+		}
+		ByteBuffer contents(Box box) throws Exception {
+			final ByteBuffer data = scratch(dataLength(box));
+			raf.seek(box.dataPosition());
+			raf.readFully(data.array(), 0, data.limit());
+			return data;
 		}
 		public byte[] materialize(long position, int length) throws Exception {
 			final byte[] buf = new byte[length];
@@ -60,13 +188,10 @@ public class ISOParser {
 			raf.readFully(buf);
 			return buf;
 		}
-		public ParseHandler handler() { return eh; }
 	}
 	/**
 	 * Parse the given byte range for boxes.
-	 * Assumes RAF position already done.
 	 * Does not save or restore file pointer.
-	 * @param raf source of bytes; should be positioned at box boundary.
 	 * @param parent !NULL: parent box; NULL: top-level box.
 	 * @param position initial offset (from start of file).  must be positioned at a box boundary.
 	 * @param totalBytes number of bytes in box.
@@ -74,57 +199,90 @@ public class ISOParser {
 	 * @param pc callback for boxes.
 	 * @throws Exception
 	 */
-	static void parseBoxes(RandomAccessFile raf, Box parent, long position, long totalBytes, MPParseContext ctx, ParseCallback pc) throws Exception {
+	static void parseBoxes(Box parent, long position, long totalBytes, BaseParseContext ctx, ParseCallback pc) throws Exception {
+		if(ctx.stopped) return;
+		ctx.depth++;
+		ctx.skipped.clear(ctx.depth);
+		try {
+			walkBoxes(parent, position, totalBytes, ctx, pc);
+		}
+		finally {
+			ctx.depth--;
+		}
+	}
+	/**
+	 * Walk the boxes of the given byte range; see {@link #parseBoxes(Box, long, long, BaseParseContext, ParseCallback)}.
+	 * The walk ends early if a callback calls {@link ParseContext#stop()} or {@link ParseContext#skipSiblings()}.
+	 * The thread interrupt status is checked before each box.
+	 * @param parent !NULL: parent box; NULL: top-level box.
+	 * @param position initial offset (from start of file).  must be positioned at a box boundary.
+	 * @param totalBytes number of bytes in box.
+	 * @param ctx parse context.
+	 * @param pc callback for boxes.
+	 * @throws InterruptedException the thread was interrupted; the interrupt status is cleared.
+	 * @throws Exception
+	 */
+	static void walkBoxes(Box parent, long position, long totalBytes, BaseParseContext ctx, ParseCallback pc) throws Exception {
 		//ctx.handler().message(String.format("parseBoxes position=%d totalBytes=%d", position, totalBytes));
 		long current = 0;
-		final byte[] buf32 = new byte[4];
-		final byte[] buf64 = new byte[8];
-		final byte[] lengthandtype = new byte[8];
+		final byte[] buf32 = ctx.buf32;
+		final byte[] buf64 = ctx.buf64;
+		final byte[] lengthandtype = ctx.lengthandtype;
 		while(current < totalBytes) {
+			if(Thread.interrupted())
+				throw new InterruptedException(String.format("parse interrupted @%d", position + current));
 			if(current + lengthandtype.length > totalBytes) {
 				ctx.handler().error(new IllegalStateException(String.format("%d leftover bytes cannot make a box", totalBytes - current)));
 				break;
 			}
 			final long boxpos = position + current;
 			//ctx.handler().message(String.format("BOX starts seek to %d", boxpos));
-			raf.seek(boxpos);
+			ctx.seek(boxpos);
+			if(parent == null && ctx.exhausted()) {
+				// source of unknown length ended at a box boundary
+				break;
+			}
 			// TODO in udta list it can end with length==0 and nothing else!
 			// that will cause this to overshoot reading by 4 bytes
 			// also must kick out when that condition is detected!
-			raf.readFully(lengthandtype);
+			ctx.readFully(lengthandtype);
 			final int length = Unmarshal.getInt32(lengthandtype, 0);
-			final String type = Unmarshal.getType(lengthandtype, 4);
+			final int type = Unmarshal.getInt32(lengthandtype, 4);
 			if(parent == null && !Box.isTopLevel(type)) {
-				ctx.handler().error(new IllegalArgumentException(String.format("invalid top-level tag '%s' @%d", type, boxpos)));
+				ctx.handler().error(new IllegalArgumentException(String.format("invalid top-level tag '%s' @%d", FourCC.toString(type), boxpos)));
 				break;
 			}
 			if(length == 0 && parent != null) {
-				ctx.handler().warning(new IllegalArgumentException(String.format("zero-size tag '%s' level %d @%d", type, parent == null ? 0 : parent.level() + 1, boxpos)));
+				if(ctx.handler().isEnabled(ParseHandler.WARNING)) {
+					ctx.handler().warning(new IllegalArgumentException(String.format("zero-size tag '%s' level %d @%d", FourCC.toString(type), parent == null ? 0 : parent.level() + 1, boxpos)));
+				}
 				// not sure what to do here yet
 			}
 			int hdrsize = lengthandtype.length;
 			// if length == 1 get extended length
-			long full = (long)length;
+			long full = length & 0xffffffffL;
 			if(length == 1) {
-				raf.readFully(buf64);
+				ctx.readFully(buf64);
 				full = Unmarshal.getInt64(buf64, 0);
 				hdrsize += buf64.length;
 			}
 			if(current + full > totalBytes) {
 				// cannot overshoot
-				ctx.handler().warning(new IllegalStateException(String.format("overshooting limit %d current %d full %d diff %d", totalBytes, current, full, (current + full) - totalBytes)));
+				if(ctx.handler().isEnabled(ParseHandler.WARNING)) {
+					ctx.handler().warning(new IllegalStateException(String.format("overshooting limit %d current %d full %d diff %d", totalBytes, current, full, (current + full) - totalBytes)));
+				}
 			}
 			byte[] uuid = null;
-			if(Box.UUID.equals(type)) {
+			if(type == FourCC.UUID) {
 				// extended UUID 16 bytes
 				uuid = new byte[16];
-				raf.readFully(uuid);
+				ctx.readFully(uuid);
 				hdrsize += uuid.length;
 			}
 			Box box = null;
 			if(FullBox.isFull(type)) {
 				// it's a full box get the version+flags
-				raf.readFully(buf32);
+				ctx.readFully(buf32);
 				final int vf = Unmarshal.getInt32(buf32, 0);
 				hdrsize += buf32.length;
 				box = new FullBox(parent, type, boxpos, full, hdrsize, vf);
@@ -139,6 +297,13 @@ public class ISOParser {
 				//ctx.handler().message(String.format("BOX type='%s' position=%d current=%d length=%d full=%d hdrsize=%d boxpos=%d", type, position, current, length, full, hdrsize, boxpos));
 			}
 			pc.box(ctx, box);
+			if(ctx.stopped) return;
+			if(ctx.skipped.get(ctx.depth)) {
+				ctx.skipped.clear(ctx.depth);
+				// no siblings to continue with
+				if(parent == null) ctx.stopped = true;
+				return;
+			}
 			// length zero means box extends to end of file
 			if(length == 0) break;
 			current += full;
@@ -146,7 +311,7 @@ public class ISOParser {
 		if(current > totalBytes) {
 			ctx.handler().error(new IllegalStateException(String.format("Overshot current %d limit %d diff %d", current, totalBytes, current - totalBytes)));
 		}
-		else if(parent == null && current < totalBytes) {
+		else if(parent == null && current < totalBytes && !ctx.exhausted()) {
 			ctx.handler().error(new IllegalStateException(String.format("%d Extra bytes not in a box", totalBytes - current)));
 		}
 	}
@@ -165,16 +330,376 @@ public class ISOParser {
 		if(pc == null)
 			throw new IllegalArgumentException("pc");
 		final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+		try {
+			parse(new MPParseContext(eh, raf), pc);
+		}
+		finally {
+			raf.close();
+		}
+	}
+	/**
+	 * Parse the ISO container file through a memory-mapped view, pass each top-level box to given callback.
+	 * Box headers and box contents are read directly from the mapping instead of through file system calls.
+	 * Files larger than the mapping window are remapped on demand.
+	 * @param fx Source ISO container file.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static void parseMapped(File fx, ParseHandler eh, ParseCallback pc) throws Exception {
+		parseMapped(fx, eh, pc, MappedParseContext.WINDOW);
+	}
+	/**
+	 * Parse the ISO container file through a memory-mapped view, pass each top-level box to given callback.
+	 * @param fx Source ISO container file.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @param window maximum number of bytes to map at once.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static void parseMapped(File fx, ParseHandler eh, ParseCallback pc, long window) throws Exception {
+		if(fx == null)
+			throw new IllegalArgumentException("fx");
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		if(pc == null)
+			throw new IllegalArgumentException("pc");
+		if(window <= 0 || window > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("window");
+		final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+		try {
+			parse(new MappedParseContext(eh, raf, window), pc);
+		}
+		finally {
+			raf.close();
+		}
+	}
+	/**
+	 * Parse an ISO container from a non-seekable channel, pass each top-level box to given callback.
+	 * Boxes are walked strictly forward; box contents are only read when the callback asks to
+	 * {@link ParseContext#create(Box)} or {@link ParseContext#parseBox(Box, ParseCallback)}, otherwise they are skipped.
+	 * Callbacks must visit boxes in file order; any attempt to read data before the current position fails.
+	 * The channel must be in blocking mode, and is not closed.
+	 * @param ch Source of bytes, positioned at the start of the container.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @throws Exception Invalid arguments, including a non-blocking {@link java.nio.channels.SelectableChannel}.
+	 */
+	public static void parse(ReadableByteChannel ch, ParseHandler eh, ParseCallback pc) throws Exception {
+		if(ch == null)
+			throw new IllegalArgumentException("ch");
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		if(pc == null)
+			throw new IllegalArgumentException("pc");
+		parse(new StreamParseContext(eh, ch), pc);
+	}
+	/**
+	 * Parse an ISO container from a stream, pass each top-level box to given callback.
+	 * Same rules as {@link #parse(ReadableByteChannel, ParseHandler, ParseCallback)}.
+	 * The stream is not closed.
+	 * @param is Source of bytes, positioned at the start of the container.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static void parse(InputStream is, ParseHandler eh, ParseCallback pc) throws Exception {
+		if(is == null)
+			throw new IllegalArgumentException("is");
+		parse(Channels.newChannel(is), eh, pc);
+	}
+	/**
+	 * Parse only the movie fragment random access box (MFRA) of a fragmented file, pass it to given callback.
+	 * The MFRO footer at the end of the file gives the size of the MFRA, so just the footer and the MFRA are read;
+	 * the fragments are never visited. Use {@link com.escape_technology_llc.iso.box.handler.RandomAccessHandler} to collect the seek tables.
+	 * @param fx Source ISO container file.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback; receives the MFRA as its only top-level box.
+	 * @return true: MFRA parsed; false: file has no valid MFRO footer.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static boolean parseRandomAccess(File fx, ParseHandler eh, ParseCallback pc) throws Exception {
+		if(fx == null)
+			throw new IllegalArgumentException("fx");
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		if(pc == null)
+			throw new IllegalArgumentException("pc");
+		final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+		try {
+			return parseRandomAccess(new MPParseContext(eh, raf), pc);
+		}
+		finally {
+			raf.close();
+		}
+	}
+	/**
+	 * Locate the MFRA through the MFRO footer and parse it.
+	 * @param ctx parse context.
+	 * @param pc Parse callback.
+	 * @return true: MFRA parsed; false: no valid MFRO footer.
+	 * @throws Exception on errors.
+	 */
+	static boolean parseRandomAccess(BaseParseContext ctx, ParseCallback pc) throws Exception {
+		// mfro: size, type, version+flags, mfra size
+		final byte[] mfro = new byte[16];
+		final long length = ctx.length();
+		if(length < mfro.length) return false;
+		ctx.seek(length - mfro.length);
+		ctx.readFully(mfro);
+		if(Unmarshal.getInt32(mfro, 0) != mfro.length || Unmarshal.getInt32(mfro, 4) != FourCC.MFRO) return false;
+		final long size = Unmarshal.getInt32(mfro, 12) & 0xffffffffL;
+		if(size < mfro.length + 8 || size > length) {
+			if(ctx.handler().isEnabled(ParseHandler.WARNING)) {
+				ctx.handler().warning(new IllegalArgumentException(String.format("mfro size %d invalid for file size %d", size, length)));
+			}
+			return false;
+		}
+		final long position = length - size;
+		ctx.seek(position);
+		ctx.readFully(ctx.lengthandtype);
+		if(Unmarshal.getInt32(ctx.lengthandtype, 4) != FourCC.MFRA) {
+			if(ctx.handler().isEnabled(ParseHandler.WARNING)) {
+				ctx.handler().warning(new IllegalArgumentException(String.format("mfro does not point at mfra @%d", position)));
+			}
+			return false;
+		}
+		pc.start();
+		parseBoxes(null, position, size, ctx, pc);
+		pc.end(ctx);
+		return true;
+	}
+	/**
+	 * Parse only the metadata boxes (FTYP, MOOV, META) of the ISO container file, pass each to given callback.
+	 * Same as {@link #parseMetadata(File, ParseHandler, ParseCallback, int)} without probing.
+	 * @param fx Source ISO container file.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static void parseMetadata(File fx, ParseHandler eh, ParseCallback pc) throws Exception {
+		parseMetadata(fx, eh, pc, 0);
+	}
+	/**
+	 * Parse only the metadata boxes (FTYP, MOOV, META) of the ISO container file, pass each to given callback.
+	 * The top-level box headers are walked first; the metadata boxes are then fetched with one read per run of
+	 * neighboring boxes, and parsed from memory. Other top-level boxes (e.g. MDAT) are never read.
+	 * If probe is not zero, the first and last probe bytes are read first; when they hold the FTYP and the MOOV
+	 * (at the start, or ending the file) no header walk is done, so a moov-last file costs two reads.
+	 * Callbacks can only read within the fetched boxes; {@link ParseContext#materialize(long, int)} of sample data fails.
+	 * @param fx Source ISO container file.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @param probe number of bytes to read at each end of the file; zero: do not probe.
+	 * @throws Exception Invalid arguments.
+	 */
+	public static void parseMetadata(File fx, ParseHandler eh, ParseCallback pc, int probe) throws Exception {
+		if(fx == null)
+			throw new IllegalArgumentException("fx");
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		if(pc == null)
+			throw new IllegalArgumentException("pc");
+		if(probe < 0)
+			throw new IllegalArgumentException("probe");
+		final RandomAccessFile raf = new RandomAccessFile(fx, "r");
 		try {
 			final MPParseContext ctx = new MPParseContext(eh, raf);
 			pc.start();
-			parseBoxes(raf, null, 0, raf.length(), ctx, pc);
+			if(probe == 0 || !probeMetadata(ctx, probe, pc)) {
+				walkMetadata(ctx, pc);
+			}
 			pc.end(ctx);
 		}
 		finally {
 			raf.close();
 		}
 	}
+	// coalesce metadata boxes separated by fewer bytes than this into one read
+	static final int METADATA_GAP = 64*1024;
+	/**
+	 * Return whether the top-level box is passed on by metadata-first parsing.
+	 * @param type box type.
+	 * @return true: metadata box.
+	 */
+	static boolean isMetadata(int type) {
+		return type == FourCC.FTYP || type == FourCC.MOOV || type == FourCC.META;
+	}
+	/**
+	 * Passes only metadata boxes to the target.
+	 */
+	static final class MetadataFilter implements ParseCallback {
+		final ParseCallback pc;
+		MetadataFilter(ParseCallback pc) {
+			this.pc = pc;
+		}
+		public void start() {
+		}
+		public void box(ParseContext ctx, Box box) throws Exception {
+			if(isMetadata(box.fourcc)) {
+				pc.box(ctx, box);
+			}
+		}
+		public void end(ParseContext ctx) throws Exception {
+		}
+	}
+	/**
+	 * Read the top-level box header at the given position of the buffer.
+	 * @param bb source buffer.
+	 * @param at buffer position of the header.
+	 * @param base file offset of bb[0].
+	 * @param length file length.
+	 * @return new box; NULL: header not in the buffer or not a valid top-level box.
+	 */
+	static Box header(ByteBuffer bb, int at, long base, long length) {
+		if(at + 8 > bb.limit()) return null;
+		final int type = bb.getInt(at + 4);
+		if(!Box.isTopLevel(type)) return null;
+		long size = bb.getInt(at) & 0xffffffffL;
+		int hdrsize = 8;
+		if(size == 1) {
+			if(at + 16 > bb.limit()) return null;
+			size = bb.getLong(at + 8);
+			hdrsize = 16;
+		}
+		else if(size == 0) {
+			size = length - (base + at);
+		}
+		if(size < hdrsize || base + at + size > length) return null;
+		return new Box(null, type, base + at, size, hdrsize);
+	}
+	/**
+	 * Try to find the metadata in the first and last probe bytes.
+	 * @param ctx parse context.
+	 * @param probe bytes to read at each end.
+	 * @param pc Parse callback.
+	 * @return true: metadata parsed; false: not found, nothing passed to pc.
+	 * @throws Exception on errors.
+	 */
+	static boolean probeMetadata(MPParseContext ctx, int probe, ParseCallback pc) throws Exception {
+		final long length = ctx.length();
+		final int hn = (int)Math.min(probe, length);
+		final byte[] head = new byte[hn];
+		ctx.seek(0);
+		ctx.readFully(head);
+		final ByteBuffer hb = ByteBuffer.wrap(head);
+		final MetadataFilter filter = new MetadataFilter(pc);
+		// top-level boxes wholly in the head
+		long end = 0;
+		boolean ftyp = false;
+		boolean moov = false;
+		for(Box box = header(hb, 0, 0, length); box != null && box.position + box.length <= hn; box = header(hb, (int)end, 0, length)) {
+			end = box.position + box.length;
+			if(box.fourcc == FourCC.FTYP) ftyp = true;
+			else if(box.fourcc == FourCC.MOOV) {
+				moov = true;
+				break;
+			}
+		}
+		if(!ftyp) return false;
+		final BufferParseContext hctx = new BufferParseContext(ctx.handler(), hb, 0);
+		if(moov || end == length) {
+			// moov-first, or the whole file is in the head
+			parseBoxes(null, 0, end, hctx, filter);
+			return true;
+		}
+		// look for a moov that ends the file, or is followed only by valid boxes up to the end
+		final int tn = (int)Math.min(probe, length - end);
+		final long tbase = length - tn;
+		final byte[] tail = new byte[tn];
+		ctx.seek(tbase);
+		ctx.readFully(tail);
+		final ByteBuffer tb = ByteBuffer.wrap(tail);
+		for(int ix = 0; ix + 8 <= tn; ix++) {
+			if(tb.getInt(ix + 4) != FourCC.MOOV) continue;
+			final Box box = header(tb, ix, tbase, length);
+			if(box == null) continue;
+			long next = box.position + box.length;
+			while(next < length) {
+				final Box bx = header(tb, (int)(next - tbase), tbase, length);
+				if(bx == null) break;
+				next = bx.position + bx.length;
+			}
+			if(next != length) continue;
+			parseBoxes(null, 0, end, hctx, filter);
+			if(!hctx.stopped) {
+				parseBoxes(null, box.position, length - box.position, new BufferParseContext(ctx.handler(), tb, tbase), filter);
+			}
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Walk the top-level box headers, then fetch and parse the metadata boxes.
+	 * @param ctx parse context.
+	 * @param pc Parse callback.
+	 * @throws Exception on errors.
+	 */
+	static void walkMetadata(MPParseContext ctx, ParseCallback pc) throws Exception {
+		final long length = ctx.length();
+		// room for the 64-bit length form
+		final ByteBuffer hdr = ByteBuffer.allocate(16);
+		final MetadataFilter filter = new MetadataFilter(pc);
+		// current run of metadata boxes; start < 0: none
+		long start = -1;
+		long end = 0;
+		long position = 0;
+		while(position + 8 <= length) {
+			ctx.seek(position);
+			ctx.readFully(hdr.array(), 0, 8);
+			if(hdr.getInt(0) == 1 && position + 16 <= length) {
+				ctx.readFully(hdr.array(), 8, 8);
+			}
+			final Box box = header(hdr, 0, position, length);
+			if(box == null) {
+				ctx.handler().error(new IllegalArgumentException(String.format("invalid top-level box @%d", position)));
+				break;
+			}
+			if(isMetadata(box.fourcc)) {
+				if(start >= 0 && box.position - end > METADATA_GAP) {
+					fetchMetadata(ctx, start, end, filter);
+					if(ctx.stopped) return;
+					start = -1;
+				}
+				if(start < 0) start = box.position;
+				end = box.position + box.length;
+			}
+			position = box.position + box.length;
+		}
+		if(start >= 0) {
+			fetchMetadata(ctx, start, end, filter);
+		}
+	}
+	/**
+	 * Read the byte range with one read, and parse it from memory.
+	 * A stop from the callback is passed on to ctx.
+	 * @param ctx parse context.
+	 * @param start file offset of the first box.
+	 * @param end file offset after the last box.
+	 * @param pc Parse callback.
+	 * @throws Exception on errors.
+	 */
+	static void fetchMetadata(MPParseContext ctx, long start, long end, ParseCallback pc) throws Exception {
+		if(end - start > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(String.format("metadata range %d-%d exceeds 2GB", start, end));
+		final byte[] buf = new byte[(int)(end - start)];
+		ctx.seek(start);
+		ctx.readFully(buf);
+		final BufferParseContext bctx = new BufferParseContext(ctx.handler(), ByteBuffer.wrap(buf), start);
+		parseBoxes(null, start, end - start, bctx, pc);
+		if(bctx.stopped) ctx.stop();
+	}
+	/**
+	 * Run the top-level parse over the given context.
+	 * @param ctx parse context.
+	 * @param pc Parse callback.
+	 * @throws Exception on errors.
+	 */
+	static void parse(BaseParseContext ctx, ParseCallback pc) throws Exception {
+		pc.start();
+		parseBoxes(null, 0, ctx.length(), ctx, pc);
+		pc.end(ctx);
+	}
 	/**
 	 * Convert 16.16 fixed-point to float.
 	 * @param val value to convert.
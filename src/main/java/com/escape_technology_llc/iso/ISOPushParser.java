@@ -0,0 +1,278 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.nio.ByteBuffer;
+
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.box.FullBox;
+import com.escape_technology_llc.iso.data.BoxDataFactory;
+import com.escape_technology_llc.iso.data.Unmarshal;
+
+/**
+ * Push-style ISO Part 12 parser.
+ * Bytes are fed as they arrive; each top-level box is passed to the callback as soon as it is complete.
+ * Top-level boxes are buffered until complete, so the callback can create and parse into them as usual.
+ * Media data and padding boxes (mdat, free, skip, wide), and boxes larger than the buffer limit,
+ * are passed to the callback as soon as their header arrives, and their contents are discarded;
+ * the callback only has access to the header bytes of those boxes.
+ * A callback can call {@link ParseContext#stop()} to finish parsing; further bytes are ignored.
+ * Not thread-safe; feed from one thread at a time.
+ * @author escape-llc
+ *
+ */
+public class ISOPushParser {
+	/**
+	 * Outcome of a call to {@link ISOPushParser#feed(ByteBuffer)}.
+	 * @author escape-llc
+	 *
+	 */
+	public enum Status {
+		/** No box was completed; feed more bytes. */
+		NEED_MORE,
+		/** At least one top-level box was passed to the callback. */
+		BOX,
+		/** Parsing is finished; further bytes are ignored. */
+		DONE
+	}
+	// default limit for buffering a single top-level box
+	public static final int MAX_BUFFER = 64*1024*1024;
+	// length + type + extended length + uuid + version/flags
+	static final int HDR_MAX = 8 + 8 + 16 + 4;
+	static final int STATE_HEADER = 0;
+	static final int STATE_BODY = 1;
+	static final int STATE_SKIP = 2;
+	final ParseHandler eh;
+	final ParseCallback pc;
+	final int maxBuffer;
+	final byte[] hdr = new byte[HDR_MAX];
+	int hdrfill;
+	int hdrneed = 8;
+	int state = STATE_HEADER;
+	// box being buffered (STATE_BODY)
+	Box current;
+	ByteBuffer body;
+	// bytes left to discard (STATE_SKIP)
+	long skip;
+	// stream offset of the next byte fed
+	long position;
+	boolean started;
+	boolean done;
+	/**
+	 * Ctor.
+	 * Uses the default buffer limit.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 */
+	public ISOPushParser(ParseHandler eh, ParseCallback pc) {
+		this(eh, pc, MAX_BUFFER);
+	}
+	/**
+	 * Ctor.
+	 * @param eh Handler to use.
+	 * @param pc Parse callback.
+	 * @param maxBuffer largest top-level box to buffer, in bytes.
+	 */
+	public ISOPushParser(ParseHandler eh, ParseCallback pc, int maxBuffer) {
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		if(pc == null)
+			throw new IllegalArgumentException("pc");
+		if(maxBuffer < HDR_MAX)
+			throw new IllegalArgumentException("maxBuffer");
+		this.eh = eh;
+		this.pc = pc;
+		this.maxBuffer = maxBuffer;
+	}
+	/**
+	 * Stream offset of the next byte to feed.
+	 * @return number of bytes consumed so far.
+	 */
+	public long position() { return position; }
+	/**
+	 * Return whether parsing is finished.
+	 * @return true: finished; false: accepting bytes.
+	 */
+	public boolean isDone() { return done; }
+	/**
+	 * Consume the given bytes.
+	 * All remaining bytes in the buffer are consumed, unless parsing finishes.
+	 * @param data source bytes.
+	 * @return status.
+	 * @throws Exception on errors, including those from the callback.
+	 */
+	public Status feed(ByteBuffer data) throws Exception {
+		if(data == null)
+			throw new IllegalArgumentException("data");
+		if(!started) {
+			started = true;
+			pc.start();
+		}
+		boolean delivered = false;
+		while(!done && data.hasRemaining()) {
+			switch(state) {
+			case STATE_HEADER:
+				delivered |= header(data);
+				break;
+			case STATE_BODY:
+				final int ct = Math.min(data.remaining(), body.remaining());
+				final ByteBuffer src = data.duplicate();
+				src.limit(src.position() + ct);
+				body.put(src);
+				data.position(data.position() + ct);
+				position += ct;
+				if(!body.hasRemaining()) {
+					final Box box = current;
+					final ByteBuffer bx = body;
+					current = null;
+					body = null;
+					state = STATE_HEADER;
+					deliver(box, bx);
+					delivered = true;
+				}
+				break;
+			case STATE_SKIP:
+				final int sk = (int)Math.min(data.remaining(), skip);
+				data.position(data.position() + sk);
+				position += sk;
+				skip -= sk;
+				if(skip == 0) {
+					state = STATE_HEADER;
+				}
+				break;
+			}
+		}
+		return done ? Status.DONE : delivered ? Status.BOX : Status.NEED_MORE;
+	}
+	/**
+	 * Signal end of input.
+	 * Reports an error if a box is incomplete, then ends the callback.
+	 * @throws Exception on errors, including those from the callback.
+	 */
+	public void end() throws Exception {
+		if(!started) {
+			started = true;
+			pc.start();
+		}
+		if(!done) {
+			if(state == STATE_BODY) {
+				eh.error(new IllegalStateException(String.format("input ended %d bytes short of box %s", body.remaining(), current)));
+			}
+			else if(state == STATE_HEADER && hdrfill > 0) {
+				eh.error(new IllegalStateException(String.format("%d leftover bytes cannot make a box", hdrfill)));
+			}
+			else if(state == STATE_SKIP && skip != Long.MAX_VALUE) {
+				eh.warning(new IllegalStateException(String.format("input ended %d bytes short of box end", skip)));
+			}
+		}
+		done = true;
+		pc.end(new BufferParseContext(eh, ByteBuffer.allocate(0), position));
+	}
+	/**
+	 * Accumulate header bytes, and start the box once the header is complete.
+	 * @param data source bytes.
+	 * @return true: box was delivered; false: not.
+	 * @throws Exception on errors.
+	 */
+	boolean header(ByteBuffer data) throws Exception {
+		final int ct = Math.min(data.remaining(), hdrneed - hdrfill);
+		data.get(hdr, hdrfill, ct);
+		hdrfill += ct;
+		position += ct;
+		if(hdrfill < hdrneed) return false;
+		if(hdrneed == 8) {
+			// now we know how long the header is
+			final int length = Unmarshal.getInt32(hdr, 0);
+			final int type = Unmarshal.getInt32(hdr, 4);
+			if(!Box.isTopLevel(type)) {
+				eh.error(new IllegalArgumentException(String.format("invalid top-level tag '%s' @%d", FourCC.toString(type), position - hdrfill)));
+				done = true;
+				return false;
+			}
+			if(length == 1) hdrneed += 8;
+			if(type == FourCC.UUID) hdrneed += 16;
+			if(FullBox.isFull(type)) hdrneed += 4;
+			if(hdrfill < hdrneed) return false;
+		}
+		final long boxpos = position - hdrfill;
+		final ByteBuffer hb = ByteBuffer.wrap(hdr, 0, hdrfill);
+		final Box box = BoxDataFactory.extractBox(null, boxpos, hb);
+		final int hdrsize = hdrfill;
+		final byte[] hx = new byte[hdrsize];
+		System.arraycopy(hdr, 0, hx, 0, hdrsize);
+		hdrfill = 0;
+		hdrneed = 8;
+		if(box.length == 0) {
+			// box extends to end of input
+			state = STATE_SKIP;
+			skip = Long.MAX_VALUE;
+			deliver(box, ByteBuffer.wrap(hx));
+			return true;
+		}
+		if(box.length < hdrsize) {
+			eh.error(new IllegalArgumentException(String.format("box %s shorter than its header", box)));
+			done = true;
+			return false;
+		}
+		if(streamed(box) || box.length > maxBuffer) {
+			if(!streamed(box)) {
+				eh.warning(new IllegalStateException(String.format("box %s exceeds buffer limit %d; contents skipped", box, maxBuffer)));
+			}
+			skip = box.length - hdrsize;
+			state = skip > 0 ? STATE_SKIP : STATE_HEADER;
+			deliver(box, ByteBuffer.wrap(hx));
+			return true;
+		}
+		body = ByteBuffer.allocate((int)box.length);
+		body.put(hx);
+		current = box;
+		if(!body.hasRemaining()) {
+			current = null;
+			final ByteBuffer bx = body;
+			body = null;
+			deliver(box, bx);
+			return true;
+		}
+		state = STATE_BODY;
+		return false;
+	}
+	/**
+	 * Pass the box to the callback, over a context holding the buffered bytes.
+	 * A stop from the callback finishes parsing.
+	 * @param box top-level box.
+	 * @param bytes buffered bytes; index zero is the box position.
+	 * @throws Exception on errors.
+	 */
+	void deliver(Box box, ByteBuffer bytes) throws Exception {
+		bytes.clear();
+		final BufferParseContext ctx = new BufferParseContext(eh, bytes, box.position);
+		// as if walking the top level, so skipSiblings() applies here
+		ctx.depth = 1;
+		pc.box(ctx, box);
+		if(ctx.stopped || ctx.skipped.get(ctx.depth)) {
+			done = true;
+		}
+	}
+	/**
+	 * Return whether the box contents are discarded rather than buffered.
+	 * @param box top-level box.
+	 * @return true: discard; false: buffer.
+	 */
+	static boolean streamed(Box box) {
+		return box.fourcc == FourCC.MDAT || box.fourcc == FourCC.FREE || box.fourcc == FourCC.SKIP || box.fourcc == FourCC.WIDE;
+	}
+}
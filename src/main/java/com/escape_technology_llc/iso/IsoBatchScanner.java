@@ -0,0 +1,276 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.escape_technology_llc.iso.box.handler.IsoContainerHandler;
+import com.escape_technology_llc.iso.box.handler.TrackHandler.Selector;
+import com.escape_technology_llc.iso.data.IsoMediaContainer;
+
+/**
+ * Run {@link IsoContainerHandler} over many files concurrently.
+ * Files are parsed on the given executor; the number of files in flight is bounded,
+ * so a directory walk never queues more work than the executor can absorb.
+ * Each worker thread reuses its data buffer from file to file.
+ * The executor is owned by the caller; use whatever suits the storage (fixed pool, fork-join, virtual threads).
+ * @author escape-llc
+ *
+ */
+public class IsoBatchScanner {
+	/**
+	 * Receives the outcome of each file.
+	 * Called from worker threads, so implementations MUST be thread-safe.
+	 * @author escape-llc
+	 *
+	 */
+	public interface Sink {
+		/**
+		 * Report the container extracted from a file.
+		 * @param fx source file.
+		 * @param imc extracted container.
+		 */
+		void result(File fx, IsoMediaContainer imc);
+		/**
+		 * Report an error for a file.
+		 * A file may report errors and still produce a result.
+		 * @param fx source file.
+		 * @param ex the error.
+		 */
+		void error(File fx, Exception ex);
+	}
+	/**
+	 * Accepts the usual ISO media file extensions.
+	 */
+	public static final FileFilter MEDIA = new FileFilter() {
+		public boolean accept(File fx) {
+			final String name = fx.getName().toLowerCase(Locale.ROOT);
+			return name.endsWith(".m4a") || name.endsWith(".m4b") || name.endsWith(".m4v")
+					|| name.endsWith(".mp4") || name.endsWith(".mov") || name.endsWith(".3gp");
+		}
+	};
+	final Executor executor;
+	final int inflight;
+	final boolean trak;
+	final boolean meta;
+	final Selector ps;
+	// per-worker data buffer, handed from one parse context to the next
+	final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>();
+	/**
+	 * Ctor.
+	 * All collection flags are TRUE.
+	 * All track data is collected.
+	 * @param executor runs the parsing.
+	 * @param inflight maximum number of files submitted and not yet finished.
+	 */
+	public IsoBatchScanner(Executor executor, int inflight) {
+		this(executor, inflight, true, true, null);
+	}
+	/**
+	 * Ctor.
+	 * @param executor runs the parsing.
+	 * @param inflight maximum number of files submitted and not yet finished.
+	 * @param trak true: collect tracks.
+	 * @param meta true: collect top-level metadata.
+	 * @param ps the selector; shared by all workers, so MUST be thread-safe.
+	 */
+	public IsoBatchScanner(Executor executor, int inflight, boolean trak, boolean meta, Selector ps) {
+		if(executor == null)
+			throw new IllegalArgumentException("executor");
+		if(inflight <= 0)
+			throw new IllegalArgumentException("inflight");
+		this.executor = executor;
+		this.inflight = inflight;
+		this.trak = trak;
+		this.meta = meta;
+		this.ps = ps;
+	}
+	/**
+	 * Scan the directory tree for files matching the filter.
+	 * Returns when every file has been reported to the sink.
+	 * @param root starting directory.
+	 * @param filter selects the files to parse; directories are always descended, each one once
+	 * even if linked from several places.
+	 * @param sink receives the outcomes.
+	 * @throws Exception on errors, including interruption while waiting.
+	 */
+	public void scan(File root, FileFilter filter, Sink sink) throws Exception {
+		if(root == null)
+			throw new IllegalArgumentException("root");
+		if(filter == null)
+			throw new IllegalArgumentException("filter");
+		if(sink == null)
+			throw new IllegalArgumentException("sink");
+		final Semaphore sem = new Semaphore(inflight);
+		try {
+			walk(root, filter, sem, sink, new HashSet<String>());
+		}
+		catch(Exception ex) {
+			settle(sem);
+			throw ex;
+		}
+		drain(sem);
+	}
+	/**
+	 * Scan the given files.
+	 * Returns when every file has been reported to the sink.
+	 * @param files source files.
+	 * @param sink receives the outcomes.
+	 * @throws Exception on errors, including interruption while waiting.
+	 */
+	public void scan(Iterable<File> files, Sink sink) throws Exception {
+		if(files == null)
+			throw new IllegalArgumentException("files");
+		if(sink == null)
+			throw new IllegalArgumentException("sink");
+		final Semaphore sem = new Semaphore(inflight);
+		try {
+			for(final File fx : files) {
+				submit(fx, sem, sink);
+			}
+		}
+		catch(Exception ex) {
+			settle(sem);
+			throw ex;
+		}
+		drain(sem);
+	}
+	/**
+	 * Depth-first walk submitting matching files.
+	 * Directories are identified by canonical path, so symbolic links cannot revisit a directory or loop.
+	 * @param dir current directory.
+	 * @param filter file filter.
+	 * @param sem in-flight bound.
+	 * @param sink receives the outcomes.
+	 * @param visited canonical paths of the directories walked so far.
+	 * @throws Exception on errors.
+	 */
+	void walk(File dir, FileFilter filter, Semaphore sem, Sink sink, HashSet<String> visited) throws Exception {
+		try {
+			if(!visited.add(dir.getCanonicalPath())) return;
+		}
+		catch(IOException ex) {
+			sink.error(dir, ex);
+			return;
+		}
+		final File[] list = dir.listFiles();
+		if(list == null) {
+			sink.error(dir, new IllegalArgumentException(String.format("cannot list directory %s", dir)));
+			return;
+		}
+		for(final File fx : list) {
+			if(fx.isDirectory()) {
+				walk(fx, filter, sem, sink, visited);
+			}
+			else if(filter.accept(fx)) {
+				submit(fx, sem, sink);
+			}
+		}
+	}
+	/**
+	 * Submit one file, blocking while the in-flight limit is reached.
+	 * @param fx source file.
+	 * @param sem in-flight bound.
+	 * @param sink receives the outcome.
+	 * @throws InterruptedException while waiting.
+	 */
+	void submit(final File fx, final Semaphore sem, final Sink sink) throws InterruptedException {
+		sem.acquire();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						parse(fx, sink);
+					}
+					finally {
+						sem.release();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException ex) {
+			sem.release();
+			throw ex;
+		}
+	}
+	/**
+	 * Wait for all submitted files to finish.
+	 * @param sem in-flight bound.
+	 * @throws InterruptedException while waiting.
+	 */
+	void drain(Semaphore sem) throws InterruptedException {
+		sem.acquire(inflight);
+		sem.release(inflight);
+	}
+	/**
+	 * Wait for all submitted files to finish, after the submitting loop failed.
+	 * Not interruptible, so the original failure is the one reported; an interrupt stays pending.
+	 * @param sem in-flight bound.
+	 */
+	void settle(Semaphore sem) {
+		sem.acquireUninterruptibly(inflight);
+		sem.release(inflight);
+	}
+	/**
+	 * Parse one file on the current thread, and report to the sink.
+	 * @param fx source file.
+	 * @param sink receives the outcome.
+	 */
+	void parse(final File fx, final Sink sink) {
+		final ParseHandler eh = new ParseHandler() {
+			public boolean isEnabled(int level) {
+				return level == ERROR;
+			}
+			public void message(String msg) {
+			}
+			public void warning(Exception ex) {
+			}
+			public void error(Exception ex) {
+				sink.error(fx, ex);
+			}
+		};
+		try {
+			final IsoContainerHandler ich = new IsoContainerHandler(trak, meta, ps);
+			final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+			try {
+				final ISOParser.MPParseContext ctx = new ISOParser.MPParseContext(eh, raf);
+				ctx.scratch = scratch.get();
+				try {
+					ISOParser.parse(ctx, ich);
+				}
+				finally {
+					scratch.set(ctx.scratch);
+				}
+			}
+			finally {
+				raf.close();
+			}
+			sink.result(fx, ich.render());
+		}
+		catch(Exception ex) {
+			sink.error(fx, ex);
+		}
+	}
+}
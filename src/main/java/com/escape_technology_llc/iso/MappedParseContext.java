@@ -0,0 +1,139 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.EOFException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Parse context backed by a memory-mapped view of the file.
+ * A single mapping cannot exceed 2GB, so the file is mapped through a sliding window.
+ * The window is remapped at the requested offset whenever a read falls outside of it.
+ * Reads larger than the window go directly to the channel.
+ * @author escape-llc
+ *
+ */
+final class MappedParseContext extends ISOParser.BaseParseContext {
+	// default mapping window
+	static final long WINDOW = 256L*1024L*1024L;
+	final RandomAccessFile raf;
+	final FileChannel fc;
+	final long size;
+	final long window;
+	// current mapping; may be NULL
+	MappedByteBuffer map;
+	// file offset of map[0]
+	long mapbase;
+	// current read position
+	long position;
+	/**
+	 * Ctor.
+	 * @param eh Handler to use.
+	 * @param raf Source file; caller retains ownership.
+	 * @param window maximum number of bytes to map at once.
+	 * @throws Exception on errors.
+	 */
+	MappedParseContext(ParseHandler eh, RandomAccessFile raf, long window) throws Exception {
+		super(eh);
+		if(raf == null)
+			throw new IllegalArgumentException("raf");
+		if(window <= 0 || window > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("window");
+		this.raf = raf;
+		this.fc = raf.getChannel();
+		this.size = fc.size();
+		this.window = window;
+	}
+	/**
+	 * Return the mapping positioned at the given offset, remapping if necessary.
+	 * @param offset absolute file offset.
+	 * @param length number of bytes required.
+	 * @return positioned buffer; NULL: length exceeds the window.
+	 * @throws Exception on errors.
+	 */
+	ByteBuffer window(long offset, int length) throws Exception {
+		if(offset < 0 || offset + length > size)
+			throw new EOFException(String.format("read %d bytes @%d exceeds file size %d", length, offset, size));
+		if(length > window)
+			return null;
+		if(map == null || offset < mapbase || offset + length > mapbase + map.capacity()) {
+			final long mapsize = Math.min(window, size - offset);
+			map = fc.map(FileChannel.MapMode.READ_ONLY, offset, mapsize);
+			mapbase = offset;
+		}
+		map.position((int)(offset - mapbase));
+		return map;
+	}
+	/**
+	 * Fill the buffer directly from the channel; for reads that do not fit the window.
+	 * @param offset absolute file offset.
+	 * @param bb target buffer; filled from position to limit.
+	 * @throws Exception on errors.
+	 */
+	void read(long offset, ByteBuffer bb) throws Exception {
+		long ofs = offset;
+		while(bb.hasRemaining()) {
+			final int ct = fc.read(bb, ofs);
+			if(ct < 0)
+				throw new EOFException(String.format("EOF @%d", ofs));
+			ofs += ct;
+		}
+	}
+	void seek(long position) throws Exception {
+		this.position = position;
+	}
+	void readFully(byte[] buf, int offset, int length) throws Exception {
+		final ByteBuffer bb = window(position, length);
+		if(bb != null) {
+			bb.get(buf, offset, length);
+		}
+		else {
+			read(position, ByteBuffer.wrap(buf, offset, length));
+		}
+		position += length;
+	}
+	long length() throws Exception {
+		return size;
+	}
+	/**
+	 * {@inheritDoc}
+	 * The mapping is used directly if the data fits in the window.
+	 */
+	ByteBuffer contents(Box box) throws Exception {
+		final int lg = dataLength(box);
+		final ByteBuffer bb = window(box.dataPosition(), lg);
+		if(bb != null) {
+			final ByteBuffer view = bb.slice();
+			view.limit(lg);
+			return view;
+		}
+		final ByteBuffer data = scratch(lg);
+		read(box.dataPosition(), data);
+		data.flip();
+		return data;
+	}
+	public byte[] materialize(long position, int length) throws Exception {
+		final byte[] buf = new byte[length];
+		seek(position);
+		readFully(buf);
+		return buf;
+	}
+}
@@ -21,6 +21,9 @@ package com.escape_technology_llc.iso;
  *
  */
 public class NullHandler implements ParseHandler {
+	public boolean isEnabled(int level) {
+		return false;
+	}
 	public void message(String msg) {
 	}
 	public void warning(Exception ex) {
@@ -51,4 +51,16 @@ public interface ParseContext {
 	 * @return instance.
 	 */
 	ParseHandler handler();
+	/**
+	 * Stop the parse once the current callback returns.
+	 * No more boxes are passed to any callback; the end callback is still called.
+	 */
+	void stop();
+	/**
+	 * Skip the remaining siblings of the current box once the current callback returns.
+	 * The walk of the enclosing box ends, and the parse continues after it.
+	 * At the top level, this is the same as {@link #stop()}.
+	 * The request belongs to the current nesting level; skips requested by nested walks started from the same callback do not cancel it.
+	 */
+	void skipSiblings();
 }
@@ -21,6 +21,19 @@ package com.escape_technology_llc.iso;
  *
  */
 public interface ParseHandler {
+	/** Level of {@link #message(String)} reports. */
+	int MESSAGE = 0;
+	/** Level of {@link #warning(Exception)} reports. */
+	int WARNING = 1;
+	/** Level of {@link #error(Exception)} reports. */
+	int ERROR = 2;
+	/**
+	 * Return whether reports at the given level are consumed.
+	 * Callers check this before building a report, so discarded reports cost nothing to format.
+	 * @param level one of MESSAGE, WARNING, ERROR.
+	 * @return true: consumed; false: discarded.
+	 */
+	boolean isEnabled(int level);
 	/**
 	 * Message report.
 	 * @param msg The message to report.
@@ -0,0 +1,118 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+import com.escape_technology_llc.iso.box.Box;
+
+/**
+ * Parse context over a non-seekable channel.
+ * Reads are strictly forward; seeking ahead discards bytes, seeking back is an error.
+ * @author escape-llc
+ *
+ */
+final class StreamParseContext extends ISOParser.BaseParseContext {
+	static final int READAHEAD = 64*1024;
+	final ReadableByteChannel ch;
+	// read-ahead buffer; always in "get" mode
+	final ByteBuffer buf;
+	// stream offset of buf.position()
+	long position;
+	boolean eof;
+	/**
+	 * Ctor.
+	 * @param eh Handler to use.
+	 * @param ch Source of bytes; caller retains ownership.  Must be in blocking mode.
+	 */
+	StreamParseContext(ParseHandler eh, ReadableByteChannel ch) {
+		super(eh);
+		if(ch == null)
+			throw new IllegalArgumentException("ch");
+		// a non-blocking read returns zero until data arrives; fill() would spin on it
+		if(ch instanceof SelectableChannel && !((SelectableChannel)ch).isBlocking())
+			throw new IllegalArgumentException("ch is non-blocking");
+		this.ch = ch;
+		this.buf = ByteBuffer.allocate(READAHEAD);
+		this.buf.flip();
+	}
+	/**
+	 * Read more bytes from the channel into the read-ahead buffer.
+	 * A blocking channel only returns zero bytes when the buffer is full, which it is not here.
+	 * @return true: bytes available; false: EOF.
+	 * @throws Exception on errors.
+	 */
+	boolean fill() throws Exception {
+		if(buf.hasRemaining()) return true;
+		if(eof) return false;
+		buf.clear();
+		int ct = 0;
+		while(ct == 0) {
+			ct = ch.read(buf);
+		}
+		buf.flip();
+		if(ct < 0) {
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+	void seek(long target) throws Exception {
+		if(target < position)
+			throw new IllegalStateException(String.format("cannot rewind stream from %d to %d", position, target));
+		while(position < target) {
+			if(!fill())
+				throw new EOFException(String.format("EOF @%d seeking to %d", position, target));
+			final int skip = (int)Math.min(buf.remaining(), target - position);
+			buf.position(buf.position() + skip);
+			position += skip;
+		}
+	}
+	void readFully(byte[] dst, int offset, int length) throws Exception {
+		int ofs = offset;
+		final int end = offset + length;
+		while(ofs < end) {
+			if(!fill())
+				throw new EOFException(String.format("EOF @%d", position));
+			final int ct = Math.min(buf.remaining(), end - ofs);
+			buf.get(dst, ofs, ct);
+			ofs += ct;
+			position += ct;
+		}
+	}
+	long length() throws Exception {
+		// not known until EOF
+		return Long.MAX_VALUE;
+	}
+	boolean exhausted() throws Exception {
+		return !fill();
+	}
+	ByteBuffer contents(Box box) throws Exception {
+		final ByteBuffer data = scratch(dataLength(box));
+		seek(box.dataPosition());
+		readFully(data.array(), 0, data.limit());
+		return data;
+	}
+	public byte[] materialize(long position, int length) throws Exception {
+		final byte[] data = new byte[length];
+		seek(position);
+		readFully(data);
+		return data;
+	}
+}
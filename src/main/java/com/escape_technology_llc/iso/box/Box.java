@@ -15,9 +15,6 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.box;
 
-import java.util.HashSet;
-import java.util.Stack;
-
 /**
  * Represents the packaging unit of ISO Part 12 file data model.
  * For purposes of this framework, the version/flags are considered part of the header!
@@ -71,6 +68,8 @@ public class Box {
 	public static final String MOOF = "moof";
 	public static final String MOOV = "moov";
 	public static final String PDIN = "pdin";
+	public static final String SIDX = "sidx";
+	public static final String STYP = "styp";
 	public static final String WIDE = "wide";
 	// level agnostic
 	public static final String FREE = "free";
@@ -87,8 +86,11 @@ public class Box {
 	public static final String ILOC = "iloc";
 	public static final String ILST = "ilst";
 	// level 1
+	public static final String MFHD = "mfhd";
+	public static final String MFRO = "mfro";
 	public static final String MVHD = "mvhd";
 	public static final String MVEX = "mvex";
+	public static final String TFRA = "tfra";
 	public static final String TRAF = "traf";
 	public static final String TRAK = "trak";
 	// level 2
@@ -96,6 +98,11 @@ public class Box {
 	public static final String EDTS = "edts";
 	public static final String MDIA = "mdia";
 	public static final String TREF = "tref";
+	public static final String MEHD = "mehd";
+	public static final String TFDT = "tfdt";
+	public static final String TFHD = "tfhd";
+	public static final String TREX = "trex";
+	public static final String TRUN = "trun";
 	// level 3
 	public static final String MDHD = "mdhd";
 	public static final String MINF = "minf";
@@ -105,6 +112,7 @@ public class Box {
 	public static final String GMHD = "gmhd";
 	public static final String STBL = "stbl";
 	// level 5
+	public static final String CO64 = "co64";
 	public static final String DREF = "dref";
 	public static final String STCO = "stco";
 	public static final String STSC = "stsc";
@@ -112,58 +120,60 @@ public class Box {
 	public static final String STSS = "stss";
 	public static final String STSZ = "stsz";
 	public static final String STTS = "stts";
+	public static final String STZ2 = "stz2";
 	
-	static final HashSet<String> hasboxes;
-	static final HashSet<String> toplevel;
-	//static final HashSet<String> containment;
-	static {
-		//containment = new HashSet<String>();
-		hasboxes = new HashSet<String>();
-		toplevel = new HashSet<String>();
-		
+	static final int[] hasboxes = FourCC.table(
 		// L0 and agnostic
-		hasboxes.add(META);
-		hasboxes.add(MFRA);
-		hasboxes.add(MOOF);
-		hasboxes.add(MOOV);
-		hasboxes.add(UDTA);
+		FourCC.META,
+		FourCC.MFRA,
+		FourCC.MOOF,
+		FourCC.MOOV,
+		FourCC.UDTA,
 		// L1
-		hasboxes.add(TRAF);
-		hasboxes.add(TRAK);
-		hasboxes.add(MVEX);
+		FourCC.TRAF,
+		FourCC.TRAK,
+		FourCC.MVEX,
 		// L2
-		hasboxes.add(EDTS);
-		hasboxes.add(MDIA);
+		FourCC.EDTS,
+		FourCC.MDIA,
 		// L3
-		hasboxes.add(MINF);
+		FourCC.MINF,
 		// L4
-		hasboxes.add(DINF);
-		hasboxes.add(GMHD);
-		hasboxes.add(STBL);
-		
-		// init top-level tag map
-		toplevel.add(FREE);
-		toplevel.add(FTYP);
-		toplevel.add(MDAT);
-		toplevel.add(META);
-		toplevel.add(MFRA);
-		toplevel.add(MOOF);
-		toplevel.add(MOOV);
-		toplevel.add(PDIN);
-		toplevel.add(SKIP);
-		toplevel.add(UUID);
-		toplevel.add(WIDE);
-	}
+		FourCC.DINF,
+		FourCC.GMHD,
+		FourCC.STBL
+	);
+	static final int[] toplevel = FourCC.table(
+		FourCC.FREE,
+		FourCC.FTYP,
+		FourCC.MDAT,
+		FourCC.META,
+		FourCC.MFRA,
+		FourCC.MOOF,
+		FourCC.MOOV,
+		FourCC.PDIN,
+		FourCC.SIDX,
+		FourCC.SKIP,
+		FourCC.STYP,
+		FourCC.UUID,
+		FourCC.WIDE
+	);
 	// box length; includes the length field itself.
 	public final long length;
 	// 4-byte type code as Unicode string
 	public final String type;
+	// 4-byte type code as packed int; see FourCC
+	public final int fourcc;
 	// absolute offset of this box
 	public final long position;
 	// number of bytes in the header portion
 	public final int hdrsize;
 	// the parent; may be NULL
 	public final Box parent;
+	// tree level; root level is zero
+	final int level;
+	// cached path; built on first request
+	String path;
 	/**
 	 * Ctor.
 	 * @param parent parent box; may be NULL for root box.
@@ -176,7 +186,26 @@ public class Box {
 		if(type == null || type.length() == 0)
 			throw new IllegalArgumentException("type");
 		this.parent = parent;
+		this.level = parent == null ? 0 : parent.level + 1;
 		this.type = type;
+		this.fourcc = FourCC.of(type);
+		this.position = position;
+		this.length = length;
+		this.hdrsize = hdrsize;
+	}
+	/**
+	 * Ctor.
+	 * @param parent parent box; may be NULL for root box.
+	 * @param fourcc box type code in packed format.
+	 * @param position absolute file offset of this box.
+	 * @param length the overall length of the box, independent of header encoding.
+	 * @param hdrsize number of header bytes, used to skip to the data portion.
+	 */
+	public Box(Box parent, int fourcc, long position, long length, int hdrsize) {
+		this.parent = parent;
+		this.level = parent == null ? 0 : parent.level + 1;
+		this.type = FourCC.toString(fourcc);
+		this.fourcc = fourcc;
 		this.position = position;
 		this.length = length;
 		this.hdrsize = hdrsize;
@@ -197,36 +226,32 @@ public class Box {
 	 * @return box level.
 	 */
 	public int level() {
-		if(parent == null) return 0;
-		int ct = 0;
-		Box cx = parent;
-		while(cx != null) {
-			ct++;
-			cx = cx.parent;
-		}
-		return ct;
+		return level;
 	}
 	/**
 	 * Concatenate a string representing this box's Path.
+	 * The path is built once and cached; siblings share the parent's cached path.
 	 * @return formatted path.
 	 */
 	public String path() {
-		if(parent == null) {
-			return "/" + type;
+		if(path == null) {
+			path = parent == null ? "/" + type : parent.path() + "/" + type;
 		}
-		final Stack<String> names = new Stack<String>();
+		return path;
+	}
+	/**
+	 * Return whether this box's path is exactly the given sequence of types, from the root down.
+	 * Does not allocate; compare against a constant array.
+	 * @param types packed types from level zero to this box's level.
+	 * @return true: match; false: no match.
+	 */
+	public boolean isPath(int[] types) {
+		if(types.length != level + 1) return false;
 		Box cx = this;
-		while(cx != null) {
-			names.push(cx.type);
-			cx = cx.parent;
-		}
-		final StringBuilder sb = new StringBuilder();
-		while(!names.isEmpty()) {
-			final String name = names.pop();
-			sb.append("/");
-			sb.append(name);
+		for(int ix = level; ix >= 0; ix--, cx = cx.parent) {
+			if(cx.fourcc != types[ix]) return false;
 		}
-		return sb.toString();
+		return true;
 	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
@@ -267,7 +292,7 @@ public class Box {
 	 * @return true: can decompose; false: no more boxes.
 	 */
 	public static boolean hasBoxes(Box box) {
-		return hasboxes.contains(box.type);
+		return FourCC.contains(hasboxes, box.fourcc);
 	}
 	/**
 	 * Return whether the given box is in the list of ISO Part 12 top-level boxes.
@@ -275,6 +300,14 @@ public class Box {
 	 * @return true: top-level; false: not.
 	 */
 	public static boolean isTopLevel(String type) {
-		return toplevel.contains(type);
+		return isTopLevel(FourCC.of(type));
+	}
+	/**
+	 * Return whether the given box is in the list of ISO Part 12 top-level boxes.
+	 * @param fourcc box type in packed format.
+	 * @return true: top-level; false: not.
+	 */
+	public static boolean isTopLevel(int fourcc) {
+		return FourCC.contains(toplevel, fourcc);
 	}
 }
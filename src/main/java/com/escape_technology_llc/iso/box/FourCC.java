@@ -0,0 +1,180 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box;
+
+import java.util.Arrays;
+
+/**
+ * Box type codes as big-endian packed int values.
+ * Constants mirror the string constants on {@link Box}.
+ * Comparing these avoids decoding a String for every box header.
+ * @author escape-llc
+ *
+ */
+public final class FourCC {
+	// level 0
+	public static final int FTYP = 0x66747970; // "ftyp"
+	public static final int MDAT = 0x6d646174; // "mdat"
+	public static final int META = 0x6d657461; // "meta"
+	public static final int MFRA = 0x6d667261; // "mfra"
+	public static final int MOOF = 0x6d6f6f66; // "moof"
+	public static final int MOOV = 0x6d6f6f76; // "moov"
+	public static final int PDIN = 0x7064696e; // "pdin"
+	public static final int SIDX = 0x73696478; // "sidx"
+	public static final int STYP = 0x73747970; // "styp"
+	public static final int WIDE = 0x77696465; // "wide"
+	// level agnostic
+	public static final int FREE = 0x66726565; // "free"
+	public static final int HDLR = 0x68646c72; // "hdlr"
+	public static final int SKIP = 0x736b6970; // "skip"
+	public static final int UDTA = 0x75647461; // "udta"
+	public static final int UUID = 0x75756964; // "uuid"
+	public static final int BXML = 0x62786d6c; // "bxml"
+	public static final int XML = 0x786d6c20; // "xml "
+	public static final int DREF_URL = 0x75726c20; // "url "
+	public static final int DREF_URN = 0x75726e20; // "urn "
+	public static final int DREF_ALIS = 0x616c6973; // "alis"
+	// DONT KNOW look it up
+	public static final int ILOC = 0x696c6f63; // "iloc"
+	public static final int ILST = 0x696c7374; // "ilst"
+	// level 1
+	public static final int MFHD = 0x6d666864; // "mfhd"
+	public static final int MFRO = 0x6d66726f; // "mfro"
+	public static final int MVHD = 0x6d766864; // "mvhd"
+	public static final int MVEX = 0x6d766578; // "mvex"
+	public static final int TFRA = 0x74667261; // "tfra"
+	public static final int TRAF = 0x74726166; // "traf"
+	public static final int TRAK = 0x7472616b; // "trak"
+	// level 2
+	public static final int TKHD = 0x746b6864; // "tkhd"
+	public static final int EDTS = 0x65647473; // "edts"
+	public static final int MDIA = 0x6d646961; // "mdia"
+	public static final int TREF = 0x74726566; // "tref"
+	public static final int MEHD = 0x6d656864; // "mehd"
+	public static final int TFDT = 0x74666474; // "tfdt"
+	public static final int TFHD = 0x74666864; // "tfhd"
+	public static final int TREX = 0x74726578; // "trex"
+	public static final int TRUN = 0x7472756e; // "trun"
+	// level 3
+	public static final int MDHD = 0x6d646864; // "mdhd"
+	public static final int MINF = 0x6d696e66; // "minf"
+	public static final int ELST = 0x656c7374; // "elst"
+	// level 4
+	public static final int DINF = 0x64696e66; // "dinf"
+	public static final int GMHD = 0x676d6864; // "gmhd"
+	public static final int STBL = 0x7374626c; // "stbl"
+	// level 5
+	public static final int CO64 = 0x636f3634; // "co64"
+	public static final int DREF = 0x64726566; // "dref"
+	public static final int STCO = 0x7374636f; // "stco"
+	public static final int STSC = 0x73747363; // "stsc"
+	public static final int STSD = 0x73747364; // "stsd"
+	public static final int STSS = 0x73747373; // "stss"
+	public static final int STSZ = 0x7374737a; // "stsz"
+	public static final int STTS = 0x73747473; // "stts"
+	public static final int STZ2 = 0x73747a32; // "stz2"
+
+	// types whose String form is shared instead of decoded per box
+	static final String[] KNOWN = {
+		Box.FTYP, Box.MDAT, Box.META, Box.MFRA, Box.MOOF, Box.MOOV, Box.PDIN, Box.SIDX, Box.STYP, Box.WIDE,
+		Box.FREE, Box.HDLR, Box.SKIP, Box.UDTA, Box.UUID, Box.BXML, Box.XML, Box.DREF_URL, Box.DREF_URN, Box.DREF_ALIS,
+		Box.ILOC, Box.ILST,
+		Box.MFHD, Box.MFRO, Box.MVHD, Box.MVEX, Box.TFRA, Box.TRAF, Box.TRAK,
+		Box.TKHD, Box.EDTS, Box.MDIA, Box.TREF, Box.MEHD, Box.TFDT, Box.TFHD, Box.TREX, Box.TRUN,
+		Box.MDHD, Box.MINF, Box.ELST,
+		Box.DINF, Box.GMHD, Box.STBL,
+		Box.CO64, Box.DREF, Box.STCO, Box.STSC, Box.STSD, Box.STSS, Box.STSZ, Box.STTS, Box.STZ2,
+		// common boxes without constants
+		"smhd", "vmhd", "nmhd", "hmhd", "sthd", "ctts", "sdtp", "sgpd", "sbgp", "chpl", "chap",
+		"mp4a", "avc1", "hvc1", "esds", "tx3g", "text",
+		// metadata items
+		"data", "mean", "name", "----",
+		"aART", "covr", "cprt", "desc", "ldes", "purl", "stik", "trkn", "tmpo", "disk", "cpil", "pgap",
+		"\u00a9alb", "\u00a9art", "\u00a9ART", "\u00a9cmt", "\u00a9day", "\u00a9gen", "\u00a9lyr", "\u00a9nam", "\u00a9too", "\u00a9wrt"
+	};
+	static final int[] codes;
+	static final String[] names;
+	static {
+		final String[] sorted = KNOWN.clone();
+		final int[] cx = new int[sorted.length];
+		// insertion sort by code; keeps codes/names aligned
+		for(int ix = 0; ix < sorted.length; ix++) {
+			final String name = sorted[ix];
+			final int code = of(name);
+			int jx = ix - 1;
+			while(jx >= 0 && cx[jx] > code) {
+				cx[jx + 1] = cx[jx];
+				sorted[jx + 1] = sorted[jx];
+				jx--;
+			}
+			cx[jx + 1] = code;
+			sorted[jx + 1] = name;
+		}
+		codes = cx;
+		names = sorted;
+	}
+	private FourCC() { }
+	/**
+	 * Pack the type string into its int form.
+	 * Characters are taken as ISO-8859-1 bytes.
+	 * @param type box type; should be 4 characters.
+	 * @return packed value.
+	 */
+	public static int of(String type) {
+		int value = 0;
+		for(int ix = 0; ix < 4; ix++) {
+			value <<= Byte.SIZE;
+			if(ix < type.length()) {
+				value |= type.charAt(ix) & 0xFF;
+			}
+		}
+		return value;
+	}
+	/**
+	 * Return the String form of the packed type.
+	 * Known types return a shared instance; others are decoded.
+	 * @param fourcc packed type.
+	 * @return type string.
+	 */
+	public static String toString(int fourcc) {
+		final int ix = Arrays.binarySearch(codes, fourcc);
+		if(ix >= 0) return names[ix];
+		final char[] cx = new char[4];
+		for(int jx = 0; jx < cx.length; jx++) {
+			cx[jx] = (char)((fourcc >>> (Byte.SIZE * (3 - jx))) & 0xFF);
+		}
+		return new String(cx);
+	}
+	/**
+	 * Build a sorted lookup table for {@link #contains(int[], int)}.
+	 * @param types the types.
+	 * @return new sorted table.
+	 */
+	static int[] table(int... types) {
+		final int[] table = types.clone();
+		Arrays.sort(table);
+		return table;
+	}
+	/**
+	 * Look up a type in a sorted table.
+	 * @param table sorted table from {@link #table(int...)}.
+	 * @param fourcc packed type.
+	 * @return true: present; false: not present.
+	 */
+	static boolean contains(int[] table, int fourcc) {
+		return Arrays.binarySearch(table, fourcc) >= 0;
+	}
+}
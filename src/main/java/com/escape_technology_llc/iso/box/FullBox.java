@@ -15,8 +15,6 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.box;
 
-import java.util.HashSet;
-
 /**
  * ISO Full box with flags/version.
  * For purposes of this framework, the version/flags are considered part of the header!
@@ -38,27 +36,36 @@ import java.util.HashSet;
  *
  */
 public class FullBox extends Box {
-	static final HashSet<String> fulltags;
-	static {
-		fulltags = new HashSet<String>();
-		fulltags.add(Box.BXML);
-		fulltags.add(Box.DREF);
-		fulltags.add(Box.ELST);
-		fulltags.add(Box.HDLR);
-		fulltags.add(Box.ILOC);
-		fulltags.add(Box.MDHD);
-		fulltags.add(Box.META);
-		fulltags.add(Box.MVHD);
-		fulltags.add(Box.PDIN);
-		fulltags.add(Box.STCO);
-		fulltags.add(Box.STSC);
-		fulltags.add(Box.STSD);
-		fulltags.add(Box.STSS);
-		fulltags.add(Box.STSZ);
-		fulltags.add(Box.STTS);
-		fulltags.add(Box.TKHD);
-		fulltags.add(Box.XML);
-	}
+	static final int[] fulltags = FourCC.table(
+		FourCC.BXML,
+		FourCC.CO64,
+		FourCC.DREF,
+		FourCC.ELST,
+		FourCC.HDLR,
+		FourCC.ILOC,
+		FourCC.MDHD,
+		FourCC.MEHD,
+		FourCC.META,
+		FourCC.MFHD,
+		FourCC.MFRO,
+		FourCC.MVHD,
+		FourCC.PDIN,
+		FourCC.SIDX,
+		FourCC.STCO,
+		FourCC.STSC,
+		FourCC.STSD,
+		FourCC.STSS,
+		FourCC.STSZ,
+		FourCC.STTS,
+		FourCC.STZ2,
+		FourCC.TFDT,
+		FourCC.TFHD,
+		FourCC.TFRA,
+		FourCC.TKHD,
+		FourCC.TREX,
+		FourCC.TRUN,
+		FourCC.XML
+	);
 	// only low 8 bits populated
 	public final int version;
 	// only low 24 bits populated
@@ -77,6 +84,20 @@ public class FullBox extends Box {
 		this.version = (versionflags >> 24) & 0xff;
 		this.flags = (versionflags & 0x00ffffff);
 	}
+	/**
+	 * Ctor.
+	 * @param parent Parent box; may be NULL.
+	 * @param fourcc Box type code in packed format.
+	 * @param position Starting offset.
+	 * @param length Length of entire box.
+	 * @param hdrsize Length of header, including the version/flags.
+	 * @param versionflags The version/flags bits [8/24].
+	 */
+	public FullBox(Box parent, int fourcc, long position, long length, int hdrsize, int versionflags) {
+		super(parent, fourcc, position, length, hdrsize);
+		this.version = (versionflags >> 24) & 0xff;
+		this.flags = (versionflags & 0x00ffffff);
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append(type);
@@ -104,6 +125,14 @@ public class FullBox extends Box {
 	 * @return true: full box; false: not.
 	 */
 	public static boolean isFull(String type) {
-		return fulltags.contains(type);
+		return isFull(FourCC.of(type));
+	}
+	/**
+	 * Return whether the given type requires a full box.
+	 * @param fourcc box type in packed format.
+	 * @return true: full box; false: not.
+	 */
+	public static boolean isFull(int fourcc) {
+		return FourCC.contains(fulltags, fourcc);
 	}
 }
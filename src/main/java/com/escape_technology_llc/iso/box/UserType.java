@@ -28,6 +28,10 @@ public class UserType extends Box {
 		super(parent, type, position, length, hdrsize);
 		this.ext = ext;
 	}
+	public UserType(Box parent, int fourcc, long position, long length, int hdrsize, byte[] ext) {
+		super(parent, fourcc, position, length, hdrsize);
+		this.ext = ext;
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append(type);
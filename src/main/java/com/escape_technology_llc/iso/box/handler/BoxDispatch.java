@@ -0,0 +1,171 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box.handler;
+
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+
+/**
+ * Table of actions by box type, for handlers to dispatch each box with one lookup.
+ * Built-in handlers expose a copy of their default table, so callers can add or replace actions
+ * and pass the table back to the handler's constructor.
+ * Not thread-safe while being built; once handed to a handler, do not change it.
+ * @author escape-llc
+ *
+ * @param <H> handler type.
+ */
+public final class BoxDispatch<H> {
+	/**
+	 * Action to take for a box.
+	 * @author escape-llc
+	 *
+	 * @param <H> handler type.
+	 */
+	public interface Action<H> {
+		/**
+		 * Handle the box.
+		 * @param handler the handler being dispatched.
+		 * @param pc parse context.
+		 * @param box the box.
+		 * @throws Exception on errors.
+		 */
+		void box(H handler, ParseContext pc, Box box) throws Exception;
+	}
+	// open addressing; length is a power of 2; NULL action: empty slot
+	int[] keys;
+	Action<H>[] actions;
+	int size;
+	/**
+	 * Ctor.
+	 * Empty table.
+	 */
+	public BoxDispatch() {
+		keys = new int[16];
+		actions = allocate(16);
+	}
+	/**
+	 * Copy ctor.
+	 * @param source table to copy.
+	 */
+	public BoxDispatch(BoxDispatch<H> source) {
+		if(source == null)
+			throw new IllegalArgumentException("source");
+		keys = source.keys.clone();
+		actions = source.actions.clone();
+		size = source.size;
+	}
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	static <H> Action<H>[] allocate(int length) {
+		return (Action<H>[])new Action[length];
+	}
+	/**
+	 * Return the slot for the type, or the empty slot where it goes.
+	 * @param fourcc packed type.
+	 * @return slot index.
+	 */
+	int slot(int fourcc) {
+		final int mask = keys.length - 1;
+		int hx = fourcc*0x9e3779b9;
+		int ix = (hx ^ (hx >>> 16)) & mask;
+		while(actions[ix] != null && keys[ix] != fourcc) {
+			ix = (ix + 1) & mask;
+		}
+		return ix;
+	}
+	/**
+	 * Add or replace the action for the type.
+	 * @param fourcc packed type.
+	 * @param action the action; NULL to remove.
+	 * @return this instance.
+	 */
+	public BoxDispatch<H> put(int fourcc, Action<H> action) {
+		if(action == null) {
+			remove(fourcc);
+			return this;
+		}
+		int ix = slot(fourcc);
+		if(actions[ix] == null) {
+			if((size + 1)*2 > keys.length) {
+				grow();
+				ix = slot(fourcc);
+			}
+			size++;
+		}
+		keys[ix] = fourcc;
+		actions[ix] = action;
+		return this;
+	}
+	/**
+	 * Add or replace the action for the type.
+	 * @param type box type.
+	 * @param action the action; NULL to remove.
+	 * @return this instance.
+	 */
+	public BoxDispatch<H> put(String type, Action<H> action) {
+		if(type == null)
+			throw new IllegalArgumentException("type");
+		return put(FourCC.of(type), action);
+	}
+	/**
+	 * Return the action for the type.
+	 * @param fourcc packed type.
+	 * @return !NULL: action; NULL: none.
+	 */
+	public Action<H> get(int fourcc) {
+		return actions[slot(fourcc)];
+	}
+	/**
+	 * Number of types in the table.
+	 * @return number of types.
+	 */
+	public int size() { return size; }
+	/**
+	 * Remove the type, and re-insert the rest of its probe run.
+	 * @param fourcc packed type.
+	 */
+	void remove(int fourcc) {
+		final int mask = keys.length - 1;
+		int ix = slot(fourcc);
+		if(actions[ix] == null) return;
+		actions[ix] = null;
+		size--;
+		for(ix = (ix + 1) & mask; actions[ix] != null; ix = (ix + 1) & mask) {
+			final int kx = keys[ix];
+			final Action<H> ax = actions[ix];
+			actions[ix] = null;
+			final int jx = slot(kx);
+			keys[jx] = kx;
+			actions[jx] = ax;
+		}
+	}
+	/**
+	 * Double the table size.
+	 */
+	void grow() {
+		final int[] ok = keys;
+		final Action<H>[] oa = actions;
+		keys = new int[ok.length*2];
+		actions = allocate(ok.length*2);
+		for(int ix = 0; ix < ok.length; ix++) {
+			if(oa[ix] != null) {
+				final int jx = slot(ok[ix]);
+				keys[jx] = ok[ix];
+				actions[jx] = oa[ix];
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box.handler;
+
+import com.escape_technology_llc.iso.ParseCallback;
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+
+/**
+ * Compiled box path query.
+ * A path is a list of steps, each "/" (child) or "//" (descendant) followed by a box type or "*" (any type),
+ * optionally followed by "[n]" (only the n-th box of that type among its siblings, 1-relative) or "[*]" (all).
+ * E.g. "/moov/trak[*]/mdia/mdhd", "/moov/trak[2]/mdia/minf/stbl/stsz", "//ilst/*".
+ * Several paths compile into one state machine; a box matches if it matches any path.
+ * The parse only descends into containers (see {@link Box#hasBoxes(Box)}, plus ilst and its items) that can lead to a match;
+ * other boxes are skipped without reading their contents.
+ * Once no sibling can match (all remaining steps at a level are indexed and already seen), the rest of the level is skipped.
+ * Immutable; one query can drive any number of parses.
+ * @author escape-llc
+ *
+ */
+public final class BoxQuery {
+	// per-step: box type; ignored if any
+	final int[] type;
+	// per-step: matches any type
+	final boolean[] any;
+	// per-step: sibling index (1-relative); 0: all
+	final int[] index;
+	// per-step: matches at any depth below the previous step
+	final boolean[] descendant;
+	// per-step: last step of its path
+	final boolean[] last;
+	// first step of each path
+	final int[] first;
+	final String[] paths;
+	BoxQuery(String[] paths, int[] type, boolean[] any, int[] index, boolean[] descendant, boolean[] last, int[] first) {
+		this.paths = paths;
+		this.type = type;
+		this.any = any;
+		this.index = index;
+		this.descendant = descendant;
+		this.last = last;
+		this.first = first;
+	}
+	/**
+	 * Compile the given paths into one query.
+	 * @param paths one or more paths.
+	 * @return new instance.
+	 * @throws IllegalArgumentException on syntax errors.
+	 */
+	public static BoxQuery compile(String... paths) {
+		if(paths == null || paths.length == 0)
+			throw new IllegalArgumentException("paths");
+		int steps = 0;
+		for(final String path : paths) {
+			if(path == null)
+				throw new IllegalArgumentException("paths");
+			for(int ix = 0; ix < path.length(); ix++) {
+				if(path.charAt(ix) == '/') steps++;
+			}
+		}
+		// upper bound; "//" counts twice
+		final int[] type = new int[steps];
+		final boolean[] any = new boolean[steps];
+		final int[] index = new int[steps];
+		final boolean[] descendant = new boolean[steps];
+		final boolean[] last = new boolean[steps];
+		final int[] first = new int[paths.length];
+		int sx = 0;
+		for(int px = 0; px < paths.length; px++) {
+			final String path = paths[px];
+			first[px] = sx;
+			int pos = 0;
+			while(pos < path.length()) {
+				if(path.charAt(pos) != '/')
+					throw new IllegalArgumentException(String.format("expected '/' at %d of '%s'", pos, path));
+				pos++;
+				if(pos < path.length() && path.charAt(pos) == '/') {
+					descendant[sx] = true;
+					pos++;
+				}
+				final int start = pos;
+				while(pos < path.length() && path.charAt(pos) != '/' && path.charAt(pos) != '[') pos++;
+				final String name = path.substring(start, pos);
+				if("*".equals(name)) {
+					any[sx] = true;
+				}
+				else if(name.length() == 4) {
+					type[sx] = FourCC.of(name);
+				}
+				else
+					throw new IllegalArgumentException(String.format("invalid box type '%s' at %d of '%s'", name, start, path));
+				if(pos < path.length() && path.charAt(pos) == '[') {
+					final int close = path.indexOf(']', pos);
+					if(close < 0)
+						throw new IllegalArgumentException(String.format("missing ']' at %d of '%s'", pos, path));
+					final String ix = path.substring(pos + 1, close);
+					if(!"*".equals(ix)) {
+						try {
+							index[sx] = Integer.parseInt(ix);
+						}
+						catch(NumberFormatException ex) {
+							index[sx] = 0;
+						}
+						if(index[sx] < 1)
+							throw new IllegalArgumentException(String.format("invalid index '%s' at %d of '%s'", ix, pos, path));
+					}
+					pos = close + 1;
+				}
+				sx++;
+			}
+			if(sx == first[px])
+				throw new IllegalArgumentException(String.format("empty path '%s'", path));
+			last[sx - 1] = true;
+		}
+		return new BoxQuery(paths.clone(), type, any, index, descendant, last, first);
+	}
+	/**
+	 * Return a callback that walks the boxes and passes each matching box to the target.
+	 * Start and end are passed on to the target; use it as the top-level callback of a parse.
+	 * A matching box is passed to the target before the walk descends further into it, so the target can
+	 * decompose it; the walk only descends into it again if another step can match below it.
+	 * @param target receives the matching boxes.
+	 * @return new instance.
+	 */
+	public ParseCallback select(ParseCallback target) {
+		if(target == null)
+			throw new IllegalArgumentException("target");
+		return new Level(this, first.clone(), target, true);
+	}
+	/**
+	 * Return whether the step can match the box type.
+	 * @param step step index.
+	 * @param fourcc box type.
+	 * @return true: type matches; false: not.
+	 */
+	boolean accepts(int step, int fourcc) {
+		return any[step] || type[step] == fourcc;
+	}
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for(int ix = 0; ix < paths.length; ix++) {
+			if(ix > 0) sb.append("|");
+			sb.append(paths[ix]);
+		}
+		return sb.toString();
+	}
+	/**
+	 * The walk of one level; holds the steps that can match at this level.
+	 * @author escape-llc
+	 *
+	 */
+	static final class Level implements ParseCallback {
+		final BoxQuery query;
+		final int[] states;
+		// per-state: boxes seen whose type the step accepts
+		final int[] seen;
+		final ParseCallback target;
+		final boolean root;
+		Level(BoxQuery query, int[] states, ParseCallback target, boolean root) {
+			this.query = query;
+			this.states = states;
+			this.seen = new int[states.length];
+			this.target = target;
+			this.root = root;
+		}
+		public void start() {
+			if(root) target.start();
+		}
+		public void box(ParseContext pc, Box box) throws Exception {
+			final BoxQuery qx = query;
+			int[] next = null;
+			int nn = 0;
+			boolean match = false;
+			boolean done = true;
+			for(int ix = 0; ix < states.length; ix++) {
+				final int sx = states[ix];
+				if(qx.descendant[sx]) {
+					// can still match further down
+					if(next == null) next = new int[qx.type.length];
+					nn = add(next, nn, sx);
+				}
+				if(qx.accepts(sx, box.fourcc)) {
+					seen[ix]++;
+					if(qx.index[sx] == 0 || qx.index[sx] == seen[ix]) {
+						if(qx.last[sx]) {
+							match = true;
+						}
+						else {
+							if(next == null) next = new int[qx.type.length];
+							nn = add(next, nn, sx + 1);
+						}
+					}
+				}
+				if(qx.descendant[sx] || qx.index[sx] == 0 || seen[ix] < qx.index[sx]) {
+					done = false;
+				}
+			}
+			if(match) {
+				target.box(pc, box);
+			}
+			if(nn > 0 && container(box)) {
+				final int[] child = new int[nn];
+				System.arraycopy(next, 0, child, 0, nn);
+				pc.parseBox(box, new Level(qx, child, target, false));
+			}
+			if(done) {
+				// no sibling can match
+				pc.skipSiblings();
+			}
+		}
+		public void end(ParseContext pc) throws Exception {
+			if(root) target.end(pc);
+		}
+		/**
+		 * Return whether the walk can descend into the box.
+		 * Besides the usual containers, the metadata item list and its items hold boxes;
+		 * the item payloads (data, mean, name) are leaves.
+		 * @param box candidate box.
+		 * @return true: has child boxes; false: leaf.
+		 */
+		static boolean container(Box box) {
+			return Box.hasBoxes(box) || box.fourcc == FourCC.ILST || (box.parent != null && box.parent.fourcc == FourCC.ILST);
+		}
+		/**
+		 * Add the state to the set, unless already present.
+		 * @param set target set.
+		 * @param size number of states in the set.
+		 * @param state state to add.
+		 * @return new size.
+		 */
+		static int add(int[] set, int size, int state) {
+			for(int ix = 0; ix < size; ix++) {
+				if(set[ix] == state) return size;
+			}
+			set[size] = state;
+			return size + 1;
+		}
+	}
+}
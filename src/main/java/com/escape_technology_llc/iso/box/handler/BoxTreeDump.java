@@ -17,6 +17,7 @@ package com.escape_technology_llc.iso.box.handler;
 
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
 
 /**
@@ -26,7 +27,9 @@ import com.escape_technology_llc.iso.box.Box;
  */
 public class BoxTreeDump implements ParseCallback {
 	public void box(ParseContext pc, Box box) throws Exception {
-		pc.handler().message(String.format("%d %s %s", box.level(), box.path(), box));
+		if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+			pc.handler().message(String.format("%d %s %s", box.level(), box.path(), box));
+		}
 		if(Box.hasBoxes(box)) {
 			// decompose this box
 			pc.parseBox(box, this);
@@ -0,0 +1,167 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box.handler;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import com.escape_technology_llc.iso.ParseCallback;
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.data.FragmentIndex;
+import com.escape_technology_llc.iso.data.MovieFragmentHeader;
+import com.escape_technology_llc.iso.data.TrackExtends;
+import com.escape_technology_llc.iso.data.TrackFragmentDecodeTime;
+import com.escape_technology_llc.iso.data.TrackFragmentHeader;
+import com.escape_technology_llc.iso.data.TrackRun;
+
+/**
+ * Collects MVEX defaults and indexes the samples of every MOOF, per track.
+ * Hand it the MVEX and each MOOF as they are encountered; the indexes grow with each MOOF,
+ * and {@link #index(int)} may be queried between them.
+ * @author escape-llc
+ *
+ */
+public class FragmentHandler implements ParseCallback, RenderInstance<FragmentIndex[]> {
+	final HashMap<Integer, TrackExtends> trex = new HashMap<Integer, TrackExtends>();
+	final TreeMap<Integer, FragmentIndex> index = new TreeMap<Integer, FragmentIndex>();
+	// number of MOOFs seen
+	int fragments;
+	// last MFHD seen
+	MovieFragmentHeader mfhd;
+	// MOOF owning the current TRAF
+	Box moof;
+	// end of the previous TRAF's data in this MOOF; base for a TRAF without its own
+	long dataEnd;
+	// current TRAF
+	TrackFragmentHeader tfhd;
+	TrackExtends defaults;
+	FragmentIndex fx;
+	long base;
+	long next;
+	long time;
+	/**
+	 * Return the index of the track.
+	 * @param trackId track ID.
+	 * @return the index; NULL: no fragments for this track.
+	 */
+	public FragmentIndex index(int trackId) {
+		return index.get(trackId);
+	}
+	/**
+	 * Number of MOOFs seen so far.
+	 * @return count.
+	 */
+	public int fragments() { return fragments; }
+	/**
+	 * Produce the indexes, in track ID order.
+	 * @return new array.
+	 */
+	public FragmentIndex[] render() {
+		return index.values().toArray(new FragmentIndex[index.size()]);
+	}
+	public void start() {
+	}
+	public void box(ParseContext pc, Box box) throws Exception {
+		if(box.fourcc == FourCC.TREX) {
+			final TrackExtends tx = pc.create(box);
+			trex.put(tx.trackId, tx);
+		}
+		else if(box.fourcc == FourCC.MFHD) {
+			final MovieFragmentHeader hdr = pc.create(box);
+			if(mfhd != null && hdr.sequenceNumber <= mfhd.sequenceNumber && pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException(String.format("mfhd sequence %d follows %d: %s", hdr.sequenceNumber, mfhd.sequenceNumber, box.path())));
+			}
+			mfhd = hdr;
+			moof = box.parent;
+			dataEnd = moof.position;
+			fragments++;
+		}
+		else if(box.fourcc == FourCC.TRAF) {
+			if(box.parent != moof) {
+				// MOOF without MFHD
+				moof = box.parent;
+				dataEnd = moof.position;
+				fragments++;
+			}
+			tfhd = null;
+			pc.parseBox(box, this);
+			if(tfhd != null) {
+				dataEnd = next;
+			}
+		}
+		else if(box.fourcc == FourCC.TFHD) {
+			tfhd = pc.create(box);
+			defaults = trex.get(tfhd.trackId);
+			fx = index.get(tfhd.trackId);
+			if(fx == null) {
+				fx = new FragmentIndex(tfhd.trackId);
+				index.put(tfhd.trackId, fx);
+			}
+			if(tfhd.hasBaseDataOffset()) {
+				base = tfhd.baseDataOffset;
+			}
+			else if(tfhd.isDefaultBaseMoof()) {
+				base = box.parent.parent.position;
+			}
+			else {
+				base = dataEnd;
+			}
+			next = base;
+			time = fx.endTime();
+		}
+		else if(box.fourcc == FourCC.TFDT) {
+			final TrackFragmentDecodeTime tfdt = pc.create(box);
+			time = tfdt.baseMediaDecodeTime;
+		}
+		else if(box.fourcc == FourCC.TRUN) {
+			if(tfhd == null) {
+				if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+					pc.handler().warning(new IllegalArgumentException("trun without tfhd: " + box.path()));
+				}
+				return;
+			}
+			final TrackRun trun = pc.create(box);
+			final long offset = trun.hasDataOffset() ? base + trun.dataOffset : next;
+			final int sdi = tfhd.hasSampleDescriptionIndex() ? tfhd.sampleDescriptionIndex
+					: defaults != null ? defaults.defaultSampleDescriptionIndex : 1;
+			final int duration = tfhd.hasDefaultSampleDuration() ? tfhd.defaultSampleDuration
+					: defaults != null ? defaults.defaultSampleDuration : 0;
+			final int size = tfhd.hasDefaultSampleSize() ? tfhd.defaultSampleSize
+					: defaults != null ? defaults.defaultSampleSize : 0;
+			final int sflags = tfhd.hasDefaultSampleFlags() ? tfhd.defaultSampleFlags
+					: defaults != null ? defaults.defaultSampleFlags : 0;
+			next = fx.add(trun, offset, time, sdi, duration, size, sflags);
+			time = fx.endTime();
+		}
+		else if(box.fourcc == FourCC.MEHD || box.fourcc == FourCC.FREE || box.fourcc == FourCC.SKIP) {
+			// no action
+		}
+		else if(!Box.hasBoxes(box)) {
+			if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException("moof unhandled box: " + box.path()));
+			}
+		}
+		else {
+			// decompose this box
+			pc.parseBox(box, this);
+		}
+	}
+	public void end(ParseContext pc) throws Exception {
+	}
+}
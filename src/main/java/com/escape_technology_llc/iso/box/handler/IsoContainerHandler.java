@@ -19,9 +19,12 @@ import java.util.ArrayList;
 
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
 import com.escape_technology_llc.iso.box.handler.TrackHandler.Selector;
 import com.escape_technology_llc.iso.data.FileType;
+import com.escape_technology_llc.iso.data.FragmentIndex;
 import com.escape_technology_llc.iso.data.IsoMediaContainer;
 import com.escape_technology_llc.iso.data.Meta;
 import com.escape_technology_llc.iso.data.MovieHeader;
@@ -29,25 +32,110 @@ import com.escape_technology_llc.iso.data.Track;
 
 /**
  * General-purpose handler that collects FTYP, MVHD, META (optional), and TRAKs (optional/filtered).
+ * Samples in movie fragments are indexed as each MOOF is encountered, and attached to their selected TRAK.
  * @author escape-llc
  *
  */
 public class IsoContainerHandler implements ParseCallback, RenderInstance<IsoMediaContainer> {
+	static final BoxDispatch<IsoContainerHandler> DEFAULT = new BoxDispatch<IsoContainerHandler>();
+	static {
+		DEFAULT.put(FourCC.FTYP, new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				// extract the data
+				ih.ftyp = pc.create(box);
+				if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+					pc.handler().message("FTYP " + ih.ftyp);
+				}
+			}
+		});
+		DEFAULT.put(FourCC.MVHD, new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				ih.mvhd = pc.create(box);
+				if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+					pc.handler().message("MVHD " + ih.mvhd);
+				}
+			}
+		});
+		DEFAULT.put(FourCC.TRAK, new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				if(!ih.flags[IDX_TRAK]) {
+					ih.otherwise(pc, box);
+					return;
+				}
+				final TrackHandler tkh = new TrackHandler(ih.ps, ih.trakTable, ih.stblTable);
+				tkh.start();
+				pc.parseBox(box, tkh);
+				tkh.end(pc);
+				final Track trak = tkh.render();
+				ih.traks.add(trak);
+				if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+					pc.handler().message("TRAK\n" + trak);
+				}
+			}
+		});
+		final BoxDispatch.Action<IsoContainerHandler> fragment = new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				if(ih.flags[IDX_TRAK]) {
+					pc.parseBox(box, ih.fragments);
+				}
+				else {
+					ih.otherwise(pc, box);
+				}
+			}
+		};
+		DEFAULT.put(FourCC.MOOF, fragment);
+		DEFAULT.put(FourCC.MVEX, fragment);
+		DEFAULT.put(FourCC.META, new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				if(!box.isPath(PATH_META) || !ih.flags[IDX_META]) {
+					ih.otherwise(pc, box);
+					return;
+				}
+				final MetadataHandler ss = new MetadataHandler();
+				ss.start();
+				pc.parseBox(box, ss);
+				ss.end(pc);
+				ih.meta = ss.render();
+				if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+					pc.handler().message(String.format("META %d boxes %s", ih.meta.map.size(), ih.meta));
+				}
+			}
+		});
+		final BoxDispatch.Action<IsoContainerHandler> none = new BoxDispatch.Action<IsoContainerHandler>() {
+			public void box(IsoContainerHandler ih, ParseContext pc, Box box) throws Exception {
+				// no action
+			}
+		};
+		DEFAULT.put(FourCC.FREE, none);
+		DEFAULT.put(FourCC.SKIP, none);
+		DEFAULT.put(FourCC.WIDE, none);
+		DEFAULT.put(FourCC.MDAT, none);
+		// seek index; see RandomAccessHandler
+		DEFAULT.put(FourCC.MFRA, none);
+		// segment index; see SegmentIndexHandler
+		DEFAULT.put(FourCC.SIDX, none);
+		DEFAULT.put(FourCC.STYP, none);
+	}
 	FileType ftyp;
 	MovieHeader mvhd;
 	ArrayList<Track> traks = new ArrayList<Track>();
 	Meta meta;
+	final FragmentHandler fragments = new FragmentHandler();
 	static final int IDX_TRAK = 0;
 	static final int IDX_META = 1;
+	static final int[] PATH_META = { FourCC.MOOV, FourCC.UDTA, FourCC.META };
 	final boolean flags[] = { true, true };
 	final Selector ps;
+	final BoxDispatch<IsoContainerHandler> table;
+	final BoxDispatch<TrackHandler> trakTable;
+	final BoxDispatch<SoundTableHandler> stblTable;
 	/**
 	 * Default ctor.
 	 * All collection flags are TRUE.
 	 * All track data is collected.
 	 */
 	public IsoContainerHandler() {
-		this.ps = null;
+		this(true, true, null);
 	}
 	/**
 	 * Default ctor.
@@ -56,7 +144,7 @@ public class IsoContainerHandler implements ParseCallback, RenderInstance<IsoMed
 	 * @param ps the selector.
 	 */
 	public IsoContainerHandler(Selector ps) {
-		this.ps = ps;
+		this(true, true, ps);
 	}
 	/**
 	 * Ctor.
@@ -66,48 +154,70 @@ public class IsoContainerHandler implements ParseCallback, RenderInstance<IsoMed
 	 * @param ps the selector.
 	 */
 	public IsoContainerHandler(boolean trak, boolean meta, Selector ps) {
+		this(trak, meta, ps, null, null, null);
+	}
+	/**
+	 * Ctor.
+	 * Set collection flags and dispatch tables.
+	 * @param trak true: collect tracks.
+	 * @param meta true: collect top-level metadata.
+	 * @param ps the selector.
+	 * @param table !NULL: dispatch table, see {@link #dispatch()}; NULL: default.
+	 * @param trakTable !NULL: dispatch table for tracks, see {@link TrackHandler#dispatch()}; NULL: default.
+	 * @param stblTable !NULL: dispatch table for sample tables, see {@link SoundTableHandler#dispatch()}; NULL: default.
+	 */
+	public IsoContainerHandler(boolean trak, boolean meta, Selector ps, BoxDispatch<IsoContainerHandler> table, BoxDispatch<TrackHandler> trakTable, BoxDispatch<SoundTableHandler> stblTable) {
 		flags[IDX_TRAK] = trak;
 		flags[IDX_META] = meta;
 		this.ps = ps;
+		this.table = table != null ? table : DEFAULT;
+		this.trakTable = trakTable != null ? trakTable : TrackHandler.DEFAULT;
+		this.stblTable = stblTable != null ? stblTable : SoundTableHandler.DEFAULT;
+	}
+	/**
+	 * Return a copy of the default dispatch table, to extend.
+	 * @return new instance.
+	 */
+	public static BoxDispatch<IsoContainerHandler> dispatch() {
+		return new BoxDispatch<IsoContainerHandler>(DEFAULT);
 	}
 	public IsoMediaContainer render() {
-		return new IsoMediaContainer(ftyp, mvhd, traks.toArray(new Track[traks.size()]), meta);
+		final Track[] tracks = traks.toArray(new Track[traks.size()]);
+		for(int ix = 0; ix < tracks.length; ix++) {
+			final Track tk = tracks[ix];
+			if(tk.tkhd == null || tk.stbl == null) continue;
+			final FragmentIndex fx = fragments.index(tk.tkhd.trackId);
+			if(fx != null) {
+				tracks[ix] = new Track(tk.tkhd, tk.mdhd, tk.mhdlr, tk.dhdlr, tk.elst, tk.tref, tk.dref, tk.stbl, fx);
+			}
+		}
+		return new IsoMediaContainer(ftyp, mvhd, tracks, meta);
 	}
 	public void start() {
 	}
 	public void box(ParseContext pc, Box box) throws Exception {
-		pc.handler().message(String.format("%d %s %s", box.level(), box.path(), box));
-		if(box.type.equals(Box.FTYP)) {
-			// extract the data
-			ftyp = pc.create(box);
-			pc.handler().message("FTYP " + ftyp);
-		}
-		else if(box.type.equals(Box.MVHD)) {
-			mvhd = pc.create(box);
-			pc.handler().message("MVHD " + mvhd);
-		}
-		else if(box.type.equals(Box.TRAK) && flags[IDX_TRAK]) {
-			final TrackHandler tkh = new TrackHandler(ps);
-			tkh.start();
-			pc.parseBox(box, tkh);
-			tkh.end(pc);
-			final Track trak = tkh.render();
-			traks.add(trak);
-			pc.handler().message("TRAK\n" + trak);
+		if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+			pc.handler().message(String.format("%d %s %s", box.level(), box.path(), box));
 		}
-		else if(Box.META.equals(box.type) && "/moov/udta/meta".equals(box.path()) && flags[IDX_META]) {
-			final MetadataHandler ss = new MetadataHandler();
-			ss.start();
-			pc.parseBox(box, ss);
-			ss.end(pc);
-			meta = ss.render();
-			pc.handler().message(String.format("META %d boxes %s", meta.map.size(), meta));
+		final BoxDispatch.Action<IsoContainerHandler> ax = table.get(box.fourcc);
+		if(ax != null) {
+			ax.box(this, pc, box);
 		}
-		else if(box.type.equals(Box.FREE) || box.type.equals(Box.SKIP) || box.type.equals(Box.WIDE) || box.type.equals(Box.MDAT)) {
-			// no action
+		else {
+			otherwise(pc, box);
 		}
-		else if(!Box.hasBoxes(box)) {
-			pc.handler().warning(new IllegalArgumentException("ISO unhandled box: " + box.path()));
+	}
+	/**
+	 * Handle a box with no action: decompose containers, warn about the rest.
+	 * @param pc parse context.
+	 * @param box the box.
+	 * @throws Exception on errors.
+	 */
+	void otherwise(ParseContext pc, Box box) throws Exception {
+		if(!Box.hasBoxes(box)) {
+			if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException("ISO unhandled box: " + box.path()));
+			}
 		}
 		else {
 			// decompose this box
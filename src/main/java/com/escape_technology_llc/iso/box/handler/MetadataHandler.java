@@ -16,7 +16,10 @@ limitations under the License.
 package com.escape_technology_llc.iso.box.handler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
@@ -28,6 +31,25 @@ import com.escape_technology_llc.iso.data.MetadataValue;
 public class MetadataHandler implements ParseCallback, RenderInstance<Meta> {
 	Handler_V0 hdlr;
 	HashMap<String, ArrayList<MetadataValue>> meta = new HashMap<String, ArrayList<MetadataValue>>();
+	// NULL: all items; otherwise item walk ends once these are found
+	final Set<String> wanted;
+	/**
+	 * Ctor.
+	 * Collects all items.
+	 */
+	public MetadataHandler() {
+		this.wanted = null;
+	}
+	/**
+	 * Ctor.
+	 * Stops walking the items once all the given types are found; later items are not collected.
+	 * @param wanted item types, e.g. "trkn".
+	 */
+	public MetadataHandler(String... wanted) {
+		if(wanted == null || wanted.length == 0)
+			throw new IllegalArgumentException("wanted");
+		this.wanted = new HashSet<String>(Arrays.asList(wanted));
+	}
 	public Meta render() {
 		return new Meta(hdlr, meta);
 	}
@@ -69,6 +91,9 @@ public class MetadataHandler implements ParseCallback, RenderInstance<Meta> {
 				// saw it but couldn't parse
 				put(box.type, new MetadataValue.Unknown(-1, -1, box));
 			}
+			if(wanted != null && meta.keySet().containsAll(wanted)) {
+				pc.skipSiblings();
+			}
 		}
 	}
 	public void end(ParseContext pc) throws Exception {
@@ -0,0 +1,76 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box.handler;
+
+import java.util.ArrayList;
+
+import com.escape_technology_llc.iso.ParseCallback;
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.data.TrackFragmentRandomAccess;
+
+/**
+ * Collects the TFRA seek tables of an MFRA.
+ * Pair with {@link com.escape_technology_llc.iso.ISOParser#parseRandomAccess(java.io.File, ParseHandler, ParseCallback)}
+ * to seek fragmented files without visiting the fragments.
+ * @author escape-llc
+ *
+ */
+public class RandomAccessHandler implements ParseCallback, RenderInstance<TrackFragmentRandomAccess[]> {
+	final ArrayList<TrackFragmentRandomAccess> tfra = new ArrayList<TrackFragmentRandomAccess>();
+	/**
+	 * Return the seek table of the track.
+	 * @param trackId track ID.
+	 * @return the table; NULL: none for this track.
+	 */
+	public TrackFragmentRandomAccess track(int trackId) {
+		for(final TrackFragmentRandomAccess tx : tfra) {
+			if(tx.trackId == trackId) return tx;
+		}
+		return null;
+	}
+	/**
+	 * Produce the seek tables, in file order.
+	 * @return new array.
+	 */
+	public TrackFragmentRandomAccess[] render() {
+		return tfra.toArray(new TrackFragmentRandomAccess[tfra.size()]);
+	}
+	public void start() {
+	}
+	public void box(ParseContext pc, Box box) throws Exception {
+		if(box.fourcc == FourCC.TFRA) {
+			final TrackFragmentRandomAccess tx = pc.create(box);
+			tfra.add(tx);
+		}
+		else if(box.fourcc == FourCC.MFRO || box.fourcc == FourCC.FREE || box.fourcc == FourCC.SKIP) {
+			// no action
+		}
+		else if(!Box.hasBoxes(box)) {
+			if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException("mfra unhandled box: " + box.path()));
+			}
+		}
+		else {
+			// decompose this box
+			pc.parseBox(box, this);
+		}
+	}
+	public void end(ParseContext pc) throws Exception {
+	}
+}
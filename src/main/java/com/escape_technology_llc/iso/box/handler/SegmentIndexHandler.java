@@ -0,0 +1,70 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.box.handler;
+
+import java.util.ArrayList;
+
+import com.escape_technology_llc.iso.ParseCallback;
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.data.SegmentIndex;
+import com.escape_technology_llc.iso.data.SegmentTable;
+
+/**
+ * Collects the top-level SIDX of a file and flattens them into one {@link SegmentTable} per stream.
+ * Other boxes are passed over without reading their contents, so fragments are never parsed.
+ * @author escape-llc
+ *
+ */
+public class SegmentIndexHandler implements ParseCallback, RenderInstance<SegmentTable[]> {
+	final ArrayList<SegmentIndex> sidx = new ArrayList<SegmentIndex>();
+	/**
+	 * Return the SIDX collected so far, in file order.
+	 * @return new array.
+	 */
+	public SegmentIndex[] boxes() {
+		return sidx.toArray(new SegmentIndex[sidx.size()]);
+	}
+	/**
+	 * Produce the flattened table of the stream.
+	 * @param referenceId stream (usually the track ID).
+	 * @return new instance; NULL: no SIDX for this stream.
+	 */
+	public SegmentTable track(int referenceId) {
+		for(final SegmentIndex si : sidx) {
+			if(si.referenceId == referenceId) return SegmentTable.flatten(boxes(), referenceId);
+		}
+		return null;
+	}
+	/**
+	 * Produce the flattened tables, one per stream.
+	 * @return new array, in order of first SIDX; NULL: no SIDX.
+	 */
+	public SegmentTable[] render() {
+		return sidx.isEmpty() ? null : SegmentTable.flattenAll(boxes());
+	}
+	public void start() {
+	}
+	public void box(ParseContext pc, Box box) throws Exception {
+		if(box.fourcc == FourCC.SIDX) {
+			final SegmentIndex si = pc.create(box);
+			sidx.add(si);
+		}
+	}
+	public void end(ParseContext pc) throws Exception {
+	}
+}
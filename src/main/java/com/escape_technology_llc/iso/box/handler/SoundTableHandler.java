@@ -17,7 +17,9 @@ package com.escape_technology_llc.iso.box.handler;
 
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
 import com.escape_technology_llc.iso.data.ChunkOffset;
 import com.escape_technology_llc.iso.data.SampleDescription;
 import com.escape_technology_llc.iso.data.SampleSize;
@@ -27,12 +29,73 @@ import com.escape_technology_llc.iso.data.SyncSample;
 import com.escape_technology_llc.iso.data.TimeToSample;
 
 public class SoundTableHandler implements ParseCallback, RenderInstance<SoundTable> {
+	static final BoxDispatch<SoundTableHandler> DEFAULT = new BoxDispatch<SoundTableHandler>();
+	static {
+		DEFAULT.put(FourCC.STSC, new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stsc = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.STSD, new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stsd = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.STSS, new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stss = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.STTS, new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stts = pc.create(box);
+			}
+		});
+		final BoxDispatch.Action<SoundTableHandler> stsz = new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stsz = pc.create(box);
+			}
+		};
+		DEFAULT.put(FourCC.STSZ, stsz);
+		DEFAULT.put(FourCC.STZ2, stsz);
+		final BoxDispatch.Action<SoundTableHandler> stco = new BoxDispatch.Action<SoundTableHandler>() {
+			public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+				sh.stco = pc.create(box);
+			}
+		};
+		DEFAULT.put(FourCC.STCO, stco);
+		DEFAULT.put(FourCC.CO64, stco);
+	}
 	SampleDescription stsd;
 	SampleToChunk stsc;
 	TimeToSample stts;
 	SyncSample stss;
 	SampleSize stsz;
 	ChunkOffset stco;
+	final BoxDispatch<SoundTableHandler> table;
+	/**
+	 * Ctor.
+	 * Uses the default dispatch table.
+	 */
+	public SoundTableHandler() {
+		this.table = DEFAULT;
+	}
+	/**
+	 * Ctor.
+	 * @param table dispatch table; see {@link #dispatch()}.
+	 */
+	public SoundTableHandler(BoxDispatch<SoundTableHandler> table) {
+		if(table == null)
+			throw new IllegalArgumentException("table");
+		this.table = table;
+	}
+	/**
+	 * Return a copy of the default dispatch table, to extend.
+	 * @return new instance.
+	 */
+	public static BoxDispatch<SoundTableHandler> dispatch() {
+		return new BoxDispatch<SoundTableHandler>(DEFAULT);
+	}
 	/**
 	 * Produce the domain object for this handler.
 	 * @return new instance.
@@ -43,26 +106,14 @@ public class SoundTableHandler implements ParseCallback, RenderInstance<SoundTab
 	public void start() {
 	}
 	public void box(ParseContext pc, Box box) throws Exception {
-		if(box.type.equals(Box.STSC)) {
-			stsc = pc.create(box);
-		}
-		else if(box.type.equals(Box.STSD)) {
-			stsd = pc.create(box);
-		}
-		else if(box.type.equals(Box.STSS)) {
-			stss = pc.create(box);
-		}
-		else if(box.type.equals(Box.STTS)) {
-			stts = pc.create(box);
-		}
-		else if(box.type.equals(Box.STSZ)) {
-			stsz = pc.create(box);
-		}
-		else if(box.type.equals(Box.STCO)) {
-			stco = pc.create(box);
+		final BoxDispatch.Action<SoundTableHandler> ax = table.get(box.fourcc);
+		if(ax != null) {
+			ax.box(this, pc, box);
 		}
 		else {
-			pc.handler().warning(new IllegalArgumentException("stbl unhandled box: " + box.path()));
+			if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException("stbl unhandled box: " + box.path()));
+			}
 		}
 	}
 	public void end(ParseContext pc) throws Exception {
@@ -17,7 +17,9 @@ package com.escape_technology_llc.iso.box.handler;
 
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
 import com.escape_technology_llc.iso.data.DataRef;
 import com.escape_technology_llc.iso.data.EditList_V0;
 import com.escape_technology_llc.iso.data.Handler_V0;
@@ -42,6 +44,65 @@ public class TrackHandler implements ParseCallback, RenderInstance<Track> {
 		 */
 		boolean stbl(Handler_V0 mhdlr, Handler_V0 dhdlr);
 	}
+	static final BoxDispatch<TrackHandler> DEFAULT = new BoxDispatch<TrackHandler>();
+	static {
+		DEFAULT.put(FourCC.TKHD, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				th.tkhd = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.HDLR, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				if(box.parent.fourcc == FourCC.MDIA) {
+					th.mhdlr = pc.create(box);
+				}
+				else if(box.parent.fourcc == FourCC.MINF) {
+					th.dhdlr = pc.create(box);
+				}
+			}
+		});
+		DEFAULT.put(FourCC.TREF, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				th.tref = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.DREF, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				th.dref = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.ELST, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				th.elst = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.MDHD, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				th.mdhd = pc.create(box);
+			}
+		});
+		DEFAULT.put(FourCC.STBL, new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				if(th.ps == null || th.ps.stbl(th.mhdlr, th.dhdlr)) {
+					final SoundTableHandler ss = new SoundTableHandler(th.stblTable);
+					ss.start();
+					pc.parseBox(box, ss);
+					ss.end(pc);
+					th.stbl = ss.render();
+				}
+				else {
+					th.otherwise(pc, box);
+				}
+			}
+		});
+		final BoxDispatch.Action<TrackHandler> none = new BoxDispatch.Action<TrackHandler>() {
+			public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+				// no action
+			}
+		};
+		DEFAULT.put(FourCC.FREE, none);
+		DEFAULT.put(FourCC.SKIP, none);
+	}
 	TrackHeader tkhd;
 	MediaHeader mdhd;
 	Handler_V0 mhdlr;
@@ -51,19 +112,39 @@ public class TrackHandler implements ParseCallback, RenderInstance<Track> {
 	DataRef dref;
 	SoundTable stbl;
 	final Selector ps;
+	final BoxDispatch<TrackHandler> table;
+	final BoxDispatch<SoundTableHandler> stblTable;
 	/**
 	 * Ctor.
 	 * No stbl predicate; collects everything.
 	 */
 	public TrackHandler() {
-		ps = null;
+		this(null, null, null);
 	}
 	/**
 	 * Ctor.
 	 * @param ps !NULL: sample table predicate.
 	 */
 	public TrackHandler(Selector ps) {
+		this(ps, null, null);
+	}
+	/**
+	 * Ctor.
+	 * @param ps !NULL: sample table predicate.
+	 * @param table !NULL: dispatch table, see {@link #dispatch()}; NULL: default.
+	 * @param stblTable !NULL: dispatch table for the sample table, see {@link SoundTableHandler#dispatch()}; NULL: default.
+	 */
+	public TrackHandler(Selector ps, BoxDispatch<TrackHandler> table, BoxDispatch<SoundTableHandler> stblTable) {
 		this.ps = ps;
+		this.table = table != null ? table : DEFAULT;
+		this.stblTable = stblTable != null ? stblTable : SoundTableHandler.DEFAULT;
+	}
+	/**
+	 * Return a copy of the default dispatch table, to extend.
+	 * @return new instance.
+	 */
+	public static BoxDispatch<TrackHandler> dispatch() {
+		return new BoxDispatch<TrackHandler>(DEFAULT);
 	}
 	public Track render() {
 		return new Track(tkhd, mdhd, mhdlr, dhdlr, elst, tref, dref, stbl);
@@ -71,42 +152,28 @@ public class TrackHandler implements ParseCallback, RenderInstance<Track> {
 	public void start() {
 	}
 	public void box(ParseContext pc, Box box) throws Exception {
-		pc.handler().message(String.format("\t%d %s %s", box.level(), box.path(), box));
-		if(box.type.equals(Box.TKHD)) {
-			tkhd = pc.create(box);
-		}
-		else if(box.type.equals(Box.HDLR)) {
-			if(box.parent.type.equals(Box.MDIA)) {
-				mhdlr = pc.create(box);
-			}
-			else if(box.parent.type.equals(Box.MINF)) {
-				dhdlr = pc.create(box);
-			}
-		}
-		else if(box.type.equals(Box.TREF)) {
-			tref = pc.create(box);
-		}
-		else if(box.type.equals(Box.DREF)) {
-			dref = pc.create(box);
+		if(pc.handler().isEnabled(ParseHandler.MESSAGE)) {
+			pc.handler().message(String.format("\t%d %s %s", box.level(), box.path(), box));
 		}
-		else if(box.type.equals(Box.ELST)) {
-			elst = pc.create(box);
+		final BoxDispatch.Action<TrackHandler> ax = table.get(box.fourcc);
+		if(ax != null) {
+			ax.box(this, pc, box);
 		}
-		else if(box.type.equals(Box.MDHD)) {
-			mdhd = pc.create(box);
-		}
-		else if(box.type.equals(Box.STBL) && (ps == null || ps.stbl(mhdlr, dhdlr))) {
-			final SoundTableHandler ss = new SoundTableHandler();
-			ss.start();
-			pc.parseBox(box, ss);
-			ss.end(pc);
-			stbl = ss.render();
-		}
-		else if(box.type.equals(Box.FREE) || box.type.equals(Box.SKIP)) {
-			// no action
+		else {
+			otherwise(pc, box);
 		}
-		else if(!Box.hasBoxes(box)) {
-			pc.handler().warning(new IllegalArgumentException("trak unhandled box: " + box.path()));
+	}
+	/**
+	 * Handle a box with no action: decompose containers, warn about the rest.
+	 * @param pc parse context.
+	 * @param box the box.
+	 * @throws Exception on errors.
+	 */
+	void otherwise(ParseContext pc, Box box) throws Exception {
+		if(!Box.hasBoxes(box)) {
+			if(pc.handler().isEnabled(ParseHandler.WARNING)) {
+				pc.handler().warning(new IllegalArgumentException("trak unhandled box: " + box.path()));
+			}
 		}
 		else {
 			// decompose this box
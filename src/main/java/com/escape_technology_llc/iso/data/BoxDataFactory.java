@@ -16,21 +16,28 @@ limitations under the License.
 package com.escape_technology_llc.iso.data;
 
 import java.io.RandomAccessFile;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
+import com.escape_technology_llc.iso.NullHandler;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
 import com.escape_technology_llc.iso.box.FullBox;
 import com.escape_technology_llc.iso.box.UserType;
 
 /**
  * Facility for converting box contents into domain objects.
+ * Unmarshalers keep no state between calls; all scratch space belongs to the caller
+ * (see ParseContext), so any number of threads may unmarshal concurrently.
  * @author escape-llc
  *
  */
 public class BoxDataFactory {
-	static final int V0 = 20;
-	static final int V1 = 32;
 	static final int I32 = 4;
 	static final int I64 = 8;
 	static final int OFS_0 = 0*4;
@@ -41,13 +48,109 @@ public class BoxDataFactory {
 	static final int OFS_5 = 5*4;
 	/**
 	 * Ability to unmarshal a box into a domain object.
+	 * The data buffer is big-endian, index zero is the first byte after the box header, and the limit is the end of the box.
+	 * The buffer may be a view of a shared or mapped region; do not retain it.
 	 * @author escape-llc
 	 *
 	 */
 	public interface BoxUnmarshaler {
-		Object unmarshal(Box box, RandomAccessFile raf) throws Exception;
+		Object unmarshal(Box box, ByteBuffer data) throws Exception;
 	}
-	static final HashMap<String, BoxUnmarshaler> createmap;
+	/**
+	 * Source of unmarshalers, discovered with {@link ServiceLoader}.
+	 * List implementations in META-INF/services/com.escape_technology_llc.iso.data.BoxDataFactory$Provider;
+	 * they are registered after the built-in unmarshalers, so can replace them.
+	 * @author escape-llc
+	 *
+	 */
+	public interface Provider {
+		/**
+		 * Register unmarshalers with {@link BoxDataFactory#register(String, BoxUnmarshaler)}
+		 * or {@link BoxDataFactory#register(String, String, BoxUnmarshaler)}.
+		 */
+		void register();
+	}
+	/**
+	 * Immutable lookup table of unmarshalers.
+	 * Keys are the packed box type, in the low 32 bits, and the packed parent type, in the high 32 bits (zero: any parent).
+	 * Open addressing; length is a power of 2; NULL value: empty slot.
+	 * @author escape-llc
+	 *
+	 */
+	static final class Table {
+		final long[] keys;
+		final BoxUnmarshaler[] values;
+		// only changes while building
+		int size;
+		Table(int capacity) {
+			int length = 16;
+			while(length < capacity*2) length <<= 1;
+			keys = new long[length];
+			values = new BoxUnmarshaler[length];
+		}
+		/**
+		 * Copy the source table, with the entry added or replaced.
+		 * @param source source table.
+		 * @param key lookup key.
+		 * @param bu the unmarshaler.
+		 */
+		Table(Table source, long key, BoxUnmarshaler bu) {
+			this(source.size + 1);
+			for(int ix = 0; ix < source.keys.length; ix++) {
+				if(source.values[ix] != null) {
+					insert(source.keys[ix], source.values[ix]);
+				}
+			}
+			insert(key, bu);
+		}
+		/**
+		 * Copy the source table, without the entry.
+		 * @param source source table.
+		 * @param key lookup key to leave out.
+		 */
+		Table(Table source, long key) {
+			this(source.size);
+			for(int ix = 0; ix < source.keys.length; ix++) {
+				if(source.values[ix] != null && source.keys[ix] != key) {
+					insert(source.keys[ix], source.values[ix]);
+				}
+			}
+		}
+		int slot(long key) {
+			final int mask = keys.length - 1;
+			final long hx = key*0x9e3779b97f4a7c15L;
+			int ix = (int)(hx >>> 32) & mask;
+			while(values[ix] != null && keys[ix] != key) {
+				ix = (ix + 1) & mask;
+			}
+			return ix;
+		}
+		/**
+		 * Add or replace the entry; only while building.
+		 * @param key lookup key.
+		 * @param bu the unmarshaler.
+		 */
+		void insert(long key, BoxUnmarshaler bu) {
+			final int ix = slot(key);
+			if(values[ix] == null) size++;
+			keys[ix] = key;
+			values[ix] = bu;
+		}
+		BoxUnmarshaler get(long key) {
+			return values[slot(key)];
+		}
+	}
+	/**
+	 * Build the lookup key.
+	 * @param parent packed parent type; zero: any parent.
+	 * @param fourcc packed box type.
+	 * @return key.
+	 */
+	static long key(int parent, int fourcc) {
+		return ((long)parent << 32) | (fourcc & 0xffffffffL);
+	}
+	// replaced as a whole on registration, so lookups need no locking
+	static volatile Table registry;
 	/**
 	 * Allocate a buffer to hold the box data.
 	 * @param box Source box.
@@ -57,17 +160,51 @@ public class BoxDataFactory {
 		final int lg = (int) box.dataLength();
 		return new byte[lg];
 	}
+	/**
+	 * Get a view of the table portion of the box data as int values.
+	 * @param data box data.
+	 * @param offset starting offset of the table.
+	 * @return new instance.
+	 */
+	static IntBuffer ints(ByteBuffer data, int offset) {
+		final ByteBuffer dup = data.duplicate();
+		dup.position(offset);
+		return dup.asIntBuffer();
+	}
+	/**
+	 * Get a view of the table portion of the box data as long values.
+	 * @param data box data.
+	 * @param offset starting offset of the table.
+	 * @return new instance.
+	 */
+	static LongBuffer longs(ByteBuffer data, int offset) {
+		final ByteBuffer dup = data.duplicate();
+		dup.position(offset);
+		return dup.asLongBuffer();
+	}
+	/**
+	 * Read a big-endian unsigned value of 1 to 4 bytes.
+	 * @param data box data.
+	 * @param offset starting offset.
+	 * @param size number of bytes.
+	 * @return the value.
+	 */
+	static int uint(ByteBuffer data, int offset, int size) {
+		int value = 0;
+		for(int ix = 0; ix < size; ix++) {
+			value = (value << 8) | (data.get(offset + ix) & 0xff);
+		}
+		return value;
+	}
 	static final BoxUnmarshaler fileType = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final String brand = Unmarshal.getType(buf, OFS_0);
-			final int mv = Unmarshal.getInt32(buf, OFS_1);
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final String brand = Unmarshal.getType(data, OFS_0);
+			final int mv = data.getInt(OFS_1);
 			// get the list of compatible brands
-			final int cbsz = (buf.length - I64)/I32;
+			final int cbsz = (data.limit() - I64)/I32;
 			final String[] cbs = new String[cbsz];
-			for(int ix = OFS_2, ct = 0; ix < buf.length; ix += I32, ct++) {
-				final String cb = Unmarshal.getType(buf, ix);
+			for(int ix = OFS_2, ct = 0; ct < cbsz; ix += I32, ct++) {
+				final String cb = Unmarshal.getType(data, ix);
 				cbs[ct] = cb;
 			}
 			final FileType ft = new FileType(brand, mv, cbs);
@@ -75,27 +212,23 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler movieHeader = new BoxUnmarshaler() {
-		final byte[] bufv0 = new byte[V0];
-		final byte[] bufv1 = new byte[V1];
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
 			switch(fb.version) {
 			case 0:
-				raf.readFully(bufv0);
-				final int creation = Unmarshal.getInt32(bufv0, OFS_0);
-				final int modification = Unmarshal.getInt32(bufv0, OFS_1);
-				final int timescale = Unmarshal.getInt32(bufv0, OFS_2);
-				final int duration = Unmarshal.getInt32(bufv0, OFS_3);
-				final int rate = Unmarshal.getInt32(bufv0, OFS_4);
+				final int creation = data.getInt(OFS_0);
+				final int modification = data.getInt(OFS_1);
+				final int timescale = data.getInt(OFS_2);
+				final int duration = data.getInt(OFS_3);
+				final int rate = data.getInt(OFS_4);
 				final MovieHeader mh = new MovieHeader.V0(fb.flags, creation, modification, timescale, duration, rate, 0, 0);
 				return mh;
 			case 1:
-				raf.readFully(bufv1);
-				final long creation1 = Unmarshal.getInt64(bufv0, 0);
-				final long modification1 = Unmarshal.getInt64(bufv0, 8);
-				final int timescale1 = Unmarshal.getInt32(bufv0, 16);
-				final long duration1 = Unmarshal.getInt64(bufv0, 20);
-				final int rate1 = Unmarshal.getInt32(bufv0, 28);
+				final long creation1 = data.getLong(0);
+				final long modification1 = data.getLong(8);
+				final int timescale1 = data.getInt(16);
+				final long duration1 = data.getLong(20);
+				final int rate1 = data.getInt(28);
 				final MovieHeader mh1 = new MovieHeader.V1(fb.flags, creation1, modification1, timescale1, duration1, rate1, 0, 0);
 				return mh1;
 			}
@@ -103,27 +236,23 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler mdhd = new BoxUnmarshaler() {
-		final byte[] bufv0 = new byte[V0];
-		final byte[] bufv1 = new byte[V1];
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
 			switch(fb.version) {
 			case 0:
-				raf.readFully(bufv0);
-				final int creation = Unmarshal.getInt32(bufv0, OFS_0);
-				final int modification = Unmarshal.getInt32(bufv0, OFS_1);
-				final int timescale = Unmarshal.getInt32(bufv0, OFS_2);
-				final int duration = Unmarshal.getInt32(bufv0, OFS_3);
-				final int lang = Unmarshal.getInt16(bufv0, OFS_4);
+				final int creation = data.getInt(OFS_0);
+				final int modification = data.getInt(OFS_1);
+				final int timescale = data.getInt(OFS_2);
+				final int duration = data.getInt(OFS_3);
+				final int lang = data.getShort(OFS_4);
 				final MediaHeader mh = new MediaHeader.V0(fb.flags, creation, modification, timescale, duration, lang);
 				return mh;
 			case 1:
-				raf.readFully(bufv1);
-				final long creation1 = Unmarshal.getInt64(bufv0, 0);
-				final long modification1 = Unmarshal.getInt64(bufv0, 8);
-				final int timescale1 = Unmarshal.getInt32(bufv0, 16);
-				final long duration1 = Unmarshal.getInt64(bufv0, 20);
-				final int lang1 = Unmarshal.getInt16(bufv0, 28);
+				final long creation1 = data.getLong(0);
+				final long modification1 = data.getLong(8);
+				final int timescale1 = data.getInt(16);
+				final long duration1 = data.getLong(20);
+				final int lang1 = data.getShort(28);
 				final MediaHeader mh1 = new MediaHeader.V1(fb.flags, creation1, modification1, timescale1, duration1, lang1);
 				return mh1;
 			}
@@ -131,27 +260,23 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler trakHeader = new BoxUnmarshaler() {
-		final byte[] bufv0 = new byte[V0];
-		final byte[] bufv1 = new byte[V1];
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
 			switch(fb.version) {
 			case 0:
-				raf.readFully(bufv0);
-				final int creation = Unmarshal.getInt32(bufv0, OFS_0);
-				final int modification = Unmarshal.getInt32(bufv0, OFS_1);
-				final int trackid = Unmarshal.getInt32(bufv0, OFS_2);
+				final int creation = data.getInt(OFS_0);
+				final int modification = data.getInt(OFS_1);
+				final int trackid = data.getInt(OFS_2);
 				// reserved int32 (12)
-				final int duration = Unmarshal.getInt32(bufv0, OFS_4);
+				final int duration = data.getInt(OFS_4);
 				final TrackHeader mh = new TrackHeader.V0(fb.flags, creation, modification, trackid, duration);
 				return mh;
 			case 1:
-				raf.readFully(bufv1);
-				final long creation1 = Unmarshal.getInt64(bufv0, 0);
-				final long modification1 = Unmarshal.getInt64(bufv0, 8);
-				final int trackid1 = Unmarshal.getInt32(bufv0, 16);
+				final long creation1 = data.getLong(0);
+				final long modification1 = data.getLong(8);
+				final int trackid1 = data.getInt(16);
 				// reserved int32 (20)
-				final long duration1 = Unmarshal.getInt64(bufv0, 24);
+				final long duration1 = data.getLong(24);
 				final TrackHeader mh1 = new TrackHeader.V1(fb.flags, creation1, modification1, trackid1, duration1);
 				return mh1;
 			}
@@ -159,21 +284,18 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler handler =  new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
 			switch(fb.version) {
 			case 0:
-				final byte[] buf = allocate(box);
-				raf.readFully(buf);
-				final int ck_htype = Unmarshal.getInt32(buf, OFS_0);
-				//final String htype = ck_htype == 0 ? null : Unmarshal.getType(buf, OFS_0);
-				final String type = Unmarshal.getType(buf, OFS_1);
+				final int ck_htype = data.getInt(OFS_0);
+				final String type = Unmarshal.getType(data, OFS_1);
 				if(ck_htype != 0) {
-					final String name = Unmarshal.getPascalString(buf, 20);
+					final String name = Unmarshal.getPascalString(data, 20);
 					return new Handler_V0(fb.flags, type, name);
 				}
 				else {
-					final String name = Unmarshal.getString(buf, 20);
+					final String name = Unmarshal.getString(data, 20);
 					return new Handler_V0(fb.flags, type, name);
 				}
 			}
@@ -181,52 +303,47 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler editList = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
 			switch(fb.version) {
 			case 0:
-				final byte[] buf = allocate(box);
-				raf.readFully(buf);
-				final int ct = Unmarshal.getInt32(buf,  OFS_0);
-				final EditList_V0.Entry[] edts = new EditList_V0.Entry[ct];
-				for(int ix = 0, ofs = OFS_1; ix < ct; ix++, ofs += 12) {
-					// get the entry
-					edts[ix] = new EditList_V0.Entry(Unmarshal.getInt32(buf, ofs), Unmarshal.getInt32(buf, ofs + I32), Unmarshal.getInt32(buf, ofs + I64));
+				final int ct = data.getInt(OFS_0);
+				final IntBuffer ib = ints(data, OFS_1);
+				final int[] td = new int[ct];
+				final int[] mt = new int[ct];
+				final int[] mr = new int[ct];
+				for(int ix = 0; ix < ct; ix++) {
+					td[ix] = ib.get();
+					mt[ix] = ib.get();
+					mr[ix] = ib.get();
 				}
-				return new EditList_V0(fb.flags, edts);
+				return new EditList_V0(fb.flags, td, mt, mr);
 			}
 			return null;
 		}
 	};
 	static final BoxUnmarshaler tref = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			// the reference is in a box
-			final Box ref = extractBox(box, box.dataPosition(), raf);
-			final byte[] buf = allocate(ref);
-			raf.readFully(buf);
+			final ByteBuffer dup = data.duplicate();
+			final Box ref = extractBox(box, box.dataPosition(), dup);
 			// get the list of Track IDs
-			final int cbsz = buf.length/I32;
-			final int[] cbs = new int[cbsz];
-			for(int ix = 0, ct = 0; ix < buf.length; ix += I32, ct++) {
-				final int cb = Unmarshal.getInt32(buf, ix);
-				cbs[ct] = cb;
-			}
+			final int[] cbs = new int[(int)ref.dataLength()/I32];
+			dup.asIntBuffer().get(cbs);
 			return new TrackRef(ref.type, cbs);
 		}
 	};
 	static final BoxUnmarshaler dref = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
 			final FullBox fb = (FullBox)box;
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int ct = Unmarshal.getInt32(buf,  OFS_0);
+			final int ct = data.getInt(OFS_0);
 			final DataRef.Entry[] entries = new DataRef.Entry[ct];
 			int offset = I32;
 			for(int ix = 0; ix < ct; ix++) {
 				// accumulate
-				final int ileng = Unmarshal.getInt32(buf, offset);
-				final String itype = Unmarshal.getType(buf, offset + I32);
-				final int iflags = Unmarshal.getInt32(buf,  offset + I64);
+				final int ileng = data.getInt(offset);
+				final String itype = Unmarshal.getType(data, offset + I32);
+				final int iflags = data.getInt(offset + I64);
 				String location = null;
 				// if $self then entry is terminated, else ILENG-12 bytes follow
 				if((iflags & DataRef.FLAG_SELFREFERENCE) == 0) {
@@ -245,55 +362,53 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler ilst = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			//final int leng = Unmarshal.getInt32(buf, OFS_0);
-			final String type = Unmarshal.getType(buf,  OFS_1);
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			//final int leng = data.getInt(OFS_0);
+			final String type = Unmarshal.getType(data, OFS_1);
 			if("data".equals(type)) {
 				// for now assume UTF-8; check data type stuff
-				final int dtype = Unmarshal.getInt32(buf, OFS_2);
-				final int dlocale = Unmarshal.getInt32(buf, OFS_3);
+				final int dtype = data.getInt(OFS_2);
+				final int dlocale = data.getInt(OFS_3);
+				final int ileng = data.limit() - OFS_4;
 				switch(dtype) {
 				case 1: // UTF-8
-					final String value = new String(buf, OFS_4, buf.length - OFS_4);
+					final String value = new String(Unmarshal.getBytes(data, OFS_4, ileng));
 					return new MetadataValue.StringValue(box.type, dtype, dlocale, value);
 				case 21: // BE signed int
 				case 22: // BE unsigned int
-					final int ileng = buf.length - OFS_4;
 					int value3 = Integer.MIN_VALUE;
 					switch(ileng) {
 					case 1:
-						value3 = (int)buf[OFS_4];
+						value3 = (int)data.get(OFS_4);
 						break;
 					case 2:
-						value3 = Unmarshal.getInt16(buf, OFS_4);
+						value3 = data.getShort(OFS_4);
 						break;
 					case 3:
-						value3 = Unmarshal.getInt24(buf, OFS_4);
+						value3 = Unmarshal.getInt24(data, OFS_4);
 						break;
 					case 4:
-						value3 = Unmarshal.getInt32(buf, OFS_4);
+						value3 = data.getInt(OFS_4);
 						break;
 					}
 					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, value3);
 				case 13: // JPEG
 				case 14: // PNG
 				case 27: // BMP
-					final byte[] value2 = Arrays.copyOfRange(buf, OFS_4, buf.length - OFS_4);
+					final byte[] value2 = Unmarshal.getBytes(data, OFS_4, ileng);
 					return new MetadataValue.BinaryValue(box.type, dtype, dlocale, value2);
 				case 65: // 8-bit
 				case 75: // 8-bit unsigned
-					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, (int)buf[OFS_4]);
+					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, (int)data.get(OFS_4));
 				case 66: // BE 16-bit
 				case 76: // BE unsigned 16-bit
-					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, Unmarshal.getInt16(buf, OFS_4));
+					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, data.getShort(OFS_4));
 				case 67: // BE 32-bit
 				case 77: // BE unsigned 32-bit
-					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, Unmarshal.getInt32(buf, OFS_4));
+					return new MetadataValue.IntegerValue(box.type, dtype, dlocale, data.getInt(OFS_4));
 				case 74: // BE 64-bit
 				case 78: // BE unsigned 64-bit
-					return new MetadataValue.LongValue(box.type, dtype, dlocale, Unmarshal.getInt64(buf, OFS_4));
+					return new MetadataValue.LongValue(box.type, dtype, dlocale, data.getLong(OFS_4));
 				default:
 					return new MetadataValue.Unknown(dtype, dlocale, box);
 				}
@@ -302,124 +417,444 @@ public class BoxDataFactory {
 		}
 	};
 	static final BoxUnmarshaler stts = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int count = Unmarshal.getInt32(buf, OFS_0);
-			final TimeToSample.Entry[] ttss = new TimeToSample.Entry[count];
-			for(int ix = 0, ofs = OFS_1; ix < count; ix ++) {
-				ttss[ix] = new TimeToSample.Entry(Unmarshal.getInt32(buf, ofs), Unmarshal.getInt32(buf, ofs + I32));
-				ofs += I64;
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
+			final IntBuffer ib = ints(data, OFS_1);
+			final int[] ct = new int[count];
+			final int[] dur = new int[count];
+			for(int ix = 0; ix < count; ix ++) {
+				ct[ix] = ib.get();
+				dur[ix] = ib.get();
 			}
-			return new TimeToSample(ttss);
+			return new TimeToSample(ct, dur);
 		}
 	};
 	static final BoxUnmarshaler stsc = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int count = Unmarshal.getInt32(buf, OFS_0);
-			final SampleToChunk.Entry[] ttss = new SampleToChunk.Entry[count];
-			for(int ix = 0, ofs = OFS_1; ix < count; ix ++) {
-				ttss[ix] = new SampleToChunk.Entry(Unmarshal.getInt32(buf, ofs), Unmarshal.getInt32(buf, ofs + I32), Unmarshal.getInt32(buf, ofs + I64));
-				ofs += 12;
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
+			final IntBuffer ib = ints(data, OFS_1);
+			final int[] fc = new int[count];
+			final int[] spc = new int[count];
+			final int[] sdi = new int[count];
+			for(int ix = 0; ix < count; ix ++) {
+				fc[ix] = ib.get();
+				spc[ix] = ib.get();
+				sdi[ix] = ib.get();
 			}
-			return new SampleToChunk(ttss);
+			return new SampleToChunk(fc, spc, sdi);
 		}
 	};
 	static final BoxUnmarshaler stsz = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int ss = Unmarshal.getInt32(buf,  OFS_0);
-			final int count = Unmarshal.getInt32(buf, OFS_1);
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int ss = data.getInt(OFS_0);
+			final int count = data.getInt(OFS_1);
 			final int[] ttss = ss == 0 ? new int[count] : null;
 			if(ttss != null) {
-				for(int ix = 0, ofs = OFS_2; ix < count; ix ++) {
-					ttss[ix] = Unmarshal.getInt32(buf, ofs);
-					ofs += I32;
+				ints(data, OFS_2).get(ttss);
+			}
+			return new SampleSize(ss, count, ttss);
+		}
+	};
+	static final BoxUnmarshaler stz2 = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int fieldSize = data.getInt(OFS_0) & 0xff;
+			final int count = data.getInt(OFS_1);
+			switch(fieldSize) {
+			case 4: {
+				// two per byte, high nibble first
+				final byte[] ttss = new byte[count];
+				for(int ix = 0; ix < count; ix++) {
+					final int bx = data.get(OFS_2 + (ix >> 1));
+					ttss[ix] = (byte)((ix & 1) == 0 ? (bx >> 4) & 0xf : bx & 0xf);
 				}
+				return new SampleSize(ttss);
+			}
+			case 8: {
+				final byte[] ttss = new byte[count];
+				final ByteBuffer dup = data.duplicate();
+				dup.position(OFS_2);
+				dup.get(ttss);
+				return new SampleSize(ttss);
+			}
+			case 16: {
+				final short[] ttss = new short[count];
+				final ByteBuffer dup = data.duplicate();
+				dup.position(OFS_2);
+				dup.asShortBuffer().get(ttss);
+				return new SampleSize(ttss);
+			}
+			default:
+				throw new IllegalArgumentException(String.format("stz2 field size %d", fieldSize));
 			}
-			return new SampleSize(ss, ttss);
 		}
 	};
 	static final BoxUnmarshaler stco = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int count = Unmarshal.getInt32(buf, OFS_0);
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
 			final int[] ttss = new int[count];
-				for(int ix = 0, ofs = OFS_1; ix < count; ix ++) {
-					ttss[ix] = Unmarshal.getInt32(buf, ofs);
-					ofs += I32;
-				}
+			ints(data, OFS_1).get(ttss);
 			return new ChunkOffset(ttss);
 		}
 	};
+	static final BoxUnmarshaler co64 = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
+			final long[] ttss = new long[count];
+			longs(data, OFS_1).get(ttss);
+			return new ChunkOffset(ttss);
+		}
+	};
+	static final BoxUnmarshaler trex = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			return new TrackExtends(data.getInt(OFS_0), data.getInt(OFS_1), data.getInt(OFS_2), data.getInt(OFS_3), data.getInt(OFS_4));
+		}
+	};
+	static final BoxUnmarshaler mfhd = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			return new MovieFragmentHeader(data.getInt(OFS_0));
+		}
+	};
+	static final BoxUnmarshaler tfhd = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final FullBox fb = (FullBox)box;
+			final int trackId = data.getInt(OFS_0);
+			// optional fields follow in flag order
+			int offset = OFS_1;
+			long base = 0;
+			if((fb.flags & TrackFragmentHeader.FLAGS_BASE_DATA_OFFSET) != 0) {
+				base = data.getLong(offset);
+				offset += 8;
+			}
+			int sdi = 0;
+			if((fb.flags & TrackFragmentHeader.FLAGS_SAMPLE_DESCRIPTION_INDEX) != 0) {
+				sdi = data.getInt(offset);
+				offset += 4;
+			}
+			int duration = 0;
+			if((fb.flags & TrackFragmentHeader.FLAGS_DEFAULT_SAMPLE_DURATION) != 0) {
+				duration = data.getInt(offset);
+				offset += 4;
+			}
+			int size = 0;
+			if((fb.flags & TrackFragmentHeader.FLAGS_DEFAULT_SAMPLE_SIZE) != 0) {
+				size = data.getInt(offset);
+				offset += 4;
+			}
+			int sflags = 0;
+			if((fb.flags & TrackFragmentHeader.FLAGS_DEFAULT_SAMPLE_FLAGS) != 0) {
+				sflags = data.getInt(offset);
+			}
+			return new TrackFragmentHeader(fb.flags, trackId, base, sdi, duration, size, sflags);
+		}
+	};
+	static final BoxUnmarshaler tfdt = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final FullBox fb = (FullBox)box;
+			switch(fb.version) {
+			case 0:
+				return new TrackFragmentDecodeTime(data.getInt(OFS_0) & 0xffffffffL);
+			case 1:
+				return new TrackFragmentDecodeTime(data.getLong(OFS_0));
+			}
+			throw new IllegalArgumentException("Could not create track fragment decode time");
+		}
+	};
+	static final BoxUnmarshaler trun = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final FullBox fb = (FullBox)box;
+			final int count = data.getInt(OFS_0);
+			int offset = OFS_1;
+			int dataOffset = 0;
+			if((fb.flags & TrackRun.FLAGS_DATA_OFFSET) != 0) {
+				dataOffset = data.getInt(offset);
+				offset += 4;
+			}
+			int firstSampleFlags = 0;
+			if((fb.flags & TrackRun.FLAGS_FIRST_SAMPLE_FLAGS) != 0) {
+				firstSampleFlags = data.getInt(offset);
+				offset += 4;
+			}
+			final int[] duration = (fb.flags & TrackRun.FLAGS_SAMPLE_DURATION) != 0 ? new int[count] : null;
+			final int[] size = (fb.flags & TrackRun.FLAGS_SAMPLE_SIZE) != 0 ? new int[count] : null;
+			final int[] sflags = (fb.flags & TrackRun.FLAGS_SAMPLE_FLAGS) != 0 ? new int[count] : null;
+			// version 1 offsets are signed; the int column holds either
+			final int[] cto = (fb.flags & TrackRun.FLAGS_SAMPLE_COMPOSITION_TIME_OFFSET) != 0 ? new int[count] : null;
+			final IntBuffer ib = ints(data, offset);
+			for(int ix = 0; ix < count; ix++) {
+				if(duration != null) duration[ix] = ib.get();
+				if(size != null) size[ix] = ib.get();
+				if(sflags != null) sflags[ix] = ib.get();
+				if(cto != null) cto[ix] = ib.get();
+			}
+			return new TrackRun(fb.flags, count, dataOffset, firstSampleFlags, duration, size, sflags, cto);
+		}
+	};
+	static final BoxUnmarshaler tfra = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final FullBox fb = (FullBox)box;
+			final int trackId = data.getInt(OFS_0);
+			// 2 bits each: byte count - 1 of traf, trun, sample numbers
+			final int sizes = data.getInt(OFS_1);
+			final int trafsize = ((sizes >> 4) & 3) + 1;
+			final int trunsize = ((sizes >> 2) & 3) + 1;
+			final int samplesize = (sizes & 3) + 1;
+			final int count = data.getInt(OFS_2);
+			final long[] time = new long[count];
+			final long[] moof = new long[count];
+			final int[] traf = new int[count];
+			final int[] trun = new int[count];
+			final int[] sample = new int[count];
+			int offset = OFS_3;
+			for(int ix = 0; ix < count; ix++) {
+				if(fb.version == 1) {
+					time[ix] = data.getLong(offset);
+					moof[ix] = data.getLong(offset + 8);
+					offset += 16;
+				}
+				else {
+					time[ix] = data.getInt(offset) & 0xffffffffL;
+					moof[ix] = data.getInt(offset + 4) & 0xffffffffL;
+					offset += 8;
+				}
+				traf[ix] = uint(data, offset, trafsize);
+				offset += trafsize;
+				trun[ix] = uint(data, offset, trunsize);
+				offset += trunsize;
+				sample[ix] = uint(data, offset, samplesize);
+				offset += samplesize;
+			}
+			return new TrackFragmentRandomAccess(trackId, time, moof, traf, trun, sample);
+		}
+	};
+	static final BoxUnmarshaler mfro = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			return new MovieFragmentRandomAccessOffset(data.getInt(OFS_0) & 0xffffffffL);
+		}
+	};
+	static final BoxUnmarshaler sidx = new BoxUnmarshaler() {
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final FullBox fb = (FullBox)box;
+			final int referenceId = data.getInt(OFS_0);
+			final int timescale = data.getInt(OFS_1);
+			final long ept;
+			final long first;
+			int offset;
+			if(fb.version == 0) {
+				ept = data.getInt(OFS_2) & 0xffffffffL;
+				first = data.getInt(OFS_3) & 0xffffffffL;
+				offset = OFS_4;
+			}
+			else {
+				ept = data.getLong(OFS_2);
+				first = data.getLong(OFS_4);
+				offset = OFS_4 + 8;
+			}
+			// reserved 16 bits, then reference count
+			final int count = data.getShort(offset + 2) & 0xffff;
+			final int[] type = new int[count];
+			final int[] size = new int[count];
+			final int[] duration = new int[count];
+			final int[] sap = new int[count];
+			final IntBuffer ib = ints(data, offset + 4);
+			for(int ix = 0; ix < count; ix++) {
+				final int ref = ib.get();
+				type[ix] = ref >>> 31;
+				size[ix] = ref & 0x7fffffff;
+				duration[ix] = ib.get();
+				sap[ix] = ib.get();
+			}
+			return new SegmentIndex(box.position, box.position + box.length, referenceId, timescale, ept, first, type, size, duration, sap);
+		}
+	};
 	static final BoxUnmarshaler stsd = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int count = Unmarshal.getInt32(buf, OFS_0);
-			final SampleDescription.Entry[] ttss = new SampleDescription.Entry[count];
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
+			final String[] fmt = new String[count];
+			final int[] dri = new int[count];
 				for(int ix = 0, ofs = OFS_1; ix < count; ix ++) {
-					final int esize = Unmarshal.getInt32(buf, ofs);
-					final String dformat = Unmarshal.getType(buf, ofs + I32);
+					final int esize = data.getInt(ofs);
+					final String dformat = Unmarshal.getType(data, ofs + I32);
 					// mbz (8..13)
-					final int drindex = Unmarshal.getInt16(buf,  ofs + 14);
+					final int drindex = data.getShort(ofs + 14);
 					// TODO dformat determines format of extra bytes [16..esize] and the entry class
-					ttss[ix] = new SampleDescription.Entry(dformat, drindex);
+					fmt[ix] = dformat;
+					dri[ix] = drindex;
 					ofs += esize;
 				}
-			return new SampleDescription(ttss);
+			return new SampleDescription(fmt, dri);
 		}
 	};
 	static final BoxUnmarshaler stss = new BoxUnmarshaler() {
-		public Object unmarshal(Box box, RandomAccessFile raf) throws Exception {
-			final byte[] buf = allocate(box);
-			raf.readFully(buf);
-			final int count = Unmarshal.getInt32(buf, OFS_0);
+		public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+			final int count = data.getInt(OFS_0);
 			final int[] ttss = new int[count];
-				for(int ix = 0, ofs = OFS_1; ix < count; ix ++) {
-					ttss[ix] = Unmarshal.getInt32(buf, ofs);
-					ofs += I32;
-				}
+			ints(data, OFS_1).get(ttss);
 			return new SyncSample(ttss);
 		}
 	};
 	static {
-		createmap = new HashMap<String, BoxUnmarshaler>();
-		createmap.put(Box.DREF, dref);
-		createmap.put(Box.ELST, editList);
-		createmap.put(Box.FTYP, fileType);
-		createmap.put(Box.HDLR, handler);
-		createmap.put(Box.MVHD, movieHeader);
-		createmap.put(Box.MDHD, mdhd);
-		createmap.put(Box.STCO, stco);
-		createmap.put(Box.STSC, stsc);
-		createmap.put(Box.STSD, stsd);
-		createmap.put(Box.STSS, stss);
-		createmap.put(Box.STSZ, stsz);
-		createmap.put(Box.STTS, stts);
-		createmap.put(Box.TKHD, trakHeader);
-		createmap.put(Box.TREF, tref);
-		createmap.put("ilst/aART", ilst);
-		createmap.put("ilst/covr", ilst);
-		createmap.put("ilst/cprt", ilst);
-		createmap.put("ilst/desc", ilst);
-		createmap.put("ilst/ldes", ilst);
-		createmap.put("ilst/purl", ilst);
-		createmap.put("ilst/stik", ilst);
-		createmap.put("ilst/trkn", ilst);
-		createmap.put("ilst/�alb", ilst);
-		createmap.put("ilst/�art", ilst);
-		createmap.put("ilst/�cmt", ilst);
-		createmap.put("ilst/�day", ilst);
-		createmap.put("ilst/�gen", ilst);
-		createmap.put("ilst/�lyr", ilst);
-		createmap.put("ilst/�nam", ilst);
-		createmap.put("ilst/�too", ilst);
-		createmap.put("ilst/�ART", ilst);
+		final Table tx = new Table(42);
+		tx.insert(key(0, FourCC.CO64), co64);
+		tx.insert(key(0, FourCC.DREF), dref);
+		tx.insert(key(0, FourCC.ELST), editList);
+		tx.insert(key(0, FourCC.FTYP), fileType);
+		tx.insert(key(0, FourCC.SIDX), sidx);
+		tx.insert(key(0, FourCC.HDLR), handler);
+		tx.insert(key(0, FourCC.MVHD), movieHeader);
+		tx.insert(key(0, FourCC.MDHD), mdhd);
+		tx.insert(key(0, FourCC.MFHD), mfhd);
+		tx.insert(key(0, FourCC.MFRO), mfro);
+		tx.insert(key(0, FourCC.STCO), stco);
+		tx.insert(key(0, FourCC.STSC), stsc);
+		tx.insert(key(0, FourCC.STSD), stsd);
+		tx.insert(key(0, FourCC.STSS), stss);
+		tx.insert(key(0, FourCC.STSZ), stsz);
+		tx.insert(key(0, FourCC.STTS), stts);
+		tx.insert(key(0, FourCC.STYP), fileType);
+		tx.insert(key(0, FourCC.STZ2), stz2);
+		tx.insert(key(0, FourCC.TFDT), tfdt);
+		tx.insert(key(0, FourCC.TFHD), tfhd);
+		tx.insert(key(0, FourCC.TFRA), tfra);
+		tx.insert(key(0, FourCC.TKHD), trakHeader);
+		tx.insert(key(0, FourCC.TREF), tref);
+		tx.insert(key(0, FourCC.TREX), trex);
+		tx.insert(key(0, FourCC.TRUN), trun);
+		tx.insert(key(FourCC.ILST, FourCC.of("aART")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("covr")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("cprt")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("desc")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("ldes")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("purl")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("stik")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("trkn")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9alb")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9art")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9cmt")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9day")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9gen")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9lyr")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9nam")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9too")), ilst);
+		tx.insert(key(FourCC.ILST, FourCC.of("\u00a9ART")), ilst);
+		registry = tx;
+		// a failing provider must not fail class initialization; there is no caller to report to yet
+		load(null, new NullHandler());
+	}
+	/**
+	 * Register providers found by {@link ServiceLoader}.
+	 * Built-in unmarshalers and providers on the class path are registered when this class loads,
+	 * and their failures are discarded; call this again with a handler to see them
+	 * (registering a provider twice is harmless), or for providers only visible to another class loader.
+	 * @param cl class loader to search; NULL: the thread context class loader.
+	 * @param eh receives an error for each provider that cannot be loaded or fails to register; it is skipped.
+	 */
+	public static void load(ClassLoader cl, ParseHandler eh) {
+		if(eh == null)
+			throw new IllegalArgumentException("eh");
+		final Iterator<Provider> it = (cl == null ? ServiceLoader.load(Provider.class) : ServiceLoader.load(Provider.class, cl)).iterator();
+		while(true) {
+			Provider px = null;
+			try {
+				if(!it.hasNext()) break;
+				px = it.next();
+				px.register();
+			}
+			catch(ServiceConfigurationError ex) {
+				eh.error(new IllegalStateException(String.format("provider not loaded: %s", ex.getMessage()), ex));
+			}
+			catch(RuntimeException ex) {
+				eh.error(new IllegalStateException(String.format("provider %s failed: %s", px == null ? "?" : px.getClass().getName(), ex), ex));
+			}
+		}
+	}
+	/**
+	 * Register the unmarshaler for the box type, under any parent.
+	 * Replaces any previous registration for the type.
+	 * @param type box type.
+	 * @param bu the unmarshaler.
+	 */
+	public static void register(String type, BoxUnmarshaler bu) {
+		if(type == null || type.length() != 4)
+			throw new IllegalArgumentException("type");
+		if(bu == null)
+			throw new IllegalArgumentException("bu");
+		put(key(0, FourCC.of(type)), bu);
+	}
+	/**
+	 * Register the unmarshaler for the box type, only under the given parent type.
+	 * These take precedence over registrations under any parent.
+	 * Replaces any previous registration for the pair.
+	 * @param parent parent box type.
+	 * @param type box type.
+	 * @param bu the unmarshaler.
+	 */
+	public static void register(String parent, String type, BoxUnmarshaler bu) {
+		if(parent == null || parent.length() != 4)
+			throw new IllegalArgumentException("parent");
+		if(type == null || type.length() != 4)
+			throw new IllegalArgumentException("type");
+		if(bu == null)
+			throw new IllegalArgumentException("bu");
+		put(key(FourCC.of(parent), FourCC.of(type)), bu);
+	}
+	/**
+	 * Remove the registration for the box type under any parent.
+	 * Registrations under a specific parent are not affected.
+	 * Built-in unmarshalers can be removed too; register them again to restore them.
+	 * @param type box type.
+	 * @return the unmarshaler removed; NULL: none was registered.
+	 */
+	public static BoxUnmarshaler unregister(String type) {
+		if(type == null || type.length() != 4)
+			throw new IllegalArgumentException("type");
+		return remove(key(0, FourCC.of(type)));
+	}
+	/**
+	 * Remove the registration for the box type under the given parent type.
+	 * @param parent parent box type.
+	 * @param type box type.
+	 * @return the unmarshaler removed; NULL: none was registered.
+	 */
+	public static BoxUnmarshaler unregister(String parent, String type) {
+		if(parent == null || parent.length() != 4)
+			throw new IllegalArgumentException("parent");
+		if(type == null || type.length() != 4)
+			throw new IllegalArgumentException("type");
+		return remove(key(FourCC.of(parent), FourCC.of(type)));
+	}
+	/**
+	 * Publish a new table with the entry added.
+	 * @param key lookup key.
+	 * @param bu the unmarshaler.
+	 */
+	static synchronized void put(long key, BoxUnmarshaler bu) {
+		registry = new Table(registry, key, bu);
+	}
+	/**
+	 * Publish a new table with the entry removed.
+	 * @param key lookup key.
+	 * @return the unmarshaler removed; NULL: none.
+	 */
+	static synchronized BoxUnmarshaler remove(long key) {
+		final BoxUnmarshaler bu = registry.get(key);
+		if(bu != null) {
+			registry = new Table(registry, key);
+		}
+		return bu;
+	}
+	/**
+	 * Look up the unmarshaler for the given box.
+	 * An unmarshaler registered under the parent type is preferred over one registered under any parent.
+	 * @param box Box to unmarshal.
+	 * @return !NULL: unmarshaler; NULL: nothing registered.
+	 */
+	public static BoxUnmarshaler find(Box box) {
+		final Table tx = registry;
+		if(box.parent != null) {
+			final BoxUnmarshaler bu = tx.get(key(box.parent.fourcc, box.fourcc));
+			if(bu != null) return bu;
+		}
+		return tx.get(key(0, box.fourcc));
 	}
 	/**
 	 * Factory method to unmarshal boxes.
@@ -430,16 +865,25 @@ public class BoxDataFactory {
 	 * @throws Exception on errors.
 	 */
 	public static Object create(Box box, RandomAccessFile raf) throws Exception {
-		String key = box.type;
-		if(box.parent != null && "ilst".equals(box.parent.type)) {
-			key = new StringBuilder(box.parent.type).append("/").append(box.type).toString();
-		}
-		if(createmap.containsKey(key)) {
-			raf.seek(box.position + box.hdrsize);
-			final BoxUnmarshaler dfb = createmap.get(key);
-			return dfb.unmarshal(box, raf);
-		}
-		return null;
+		final BoxUnmarshaler dfb = find(box);
+		if(dfb == null) return null;
+		raf.seek(box.dataPosition());
+		final byte[] buf = allocate(box);
+		raf.readFully(buf);
+		return dfb.unmarshal(box, ByteBuffer.wrap(buf));
+	}
+	/**
+	 * Factory method to unmarshal boxes from a buffer holding the box data.
+	 * Does not move the buffer position.
+	 * @param box  Box to unmarshal.
+	 * @param data Source of bytes; positioned at first data byte, limit at end of box.
+	 * @return !NULL: unmarshalled; NULL: nothing registered.
+	 * @throws Exception on errors.
+	 */
+	public static Object create(Box box, ByteBuffer data) throws Exception {
+		final BoxUnmarshaler dfb = find(box);
+		if(dfb == null) return null;
+		return dfb.unmarshal(box, data.slice());
 	}
 	/**
 	 * Extract the box information from given starting position.
@@ -456,10 +900,10 @@ public class BoxDataFactory {
 		final byte[] lengthandtype = new byte[8];
 		raf.readFully(lengthandtype);
 		final int length = Unmarshal.getInt32(lengthandtype, OFS_0);
-		final String type = Unmarshal.getType(lengthandtype, OFS_1);
+		final int type = Unmarshal.getInt32(lengthandtype, OFS_1);
 		int hdrsize = lengthandtype.length;
 		// if length == 1 get extended length
-		long full = (long)length;
+		long full = length & 0xffffffffL;
 		if(length == 1) {
 			final byte[] buf64 = new byte[I64];
 			raf.readFully(buf64);
@@ -467,7 +911,7 @@ public class BoxDataFactory {
 			hdrsize += buf64.length;
 		}
 		byte[] uuid = null;
-		if(Box.UUID.equals(type)) {
+		if(type == FourCC.UUID) {
 			// extended UUID 16 bytes
 			uuid = new byte[16];
 			raf.readFully(uuid);
@@ -490,4 +934,46 @@ public class BoxDataFactory {
 		}
 		return box;
 	}
+	/**
+	 * Extract the box information from the buffer's current position.
+	 * This is used when boxes contain data fields that are themselves boxes, but not part of the box hierarchy.
+	 * Advances the buffer position past all header bytes.
+	 * @param parent parent box.
+	 * @param boxpos position of this box.
+	 * @param data source of bytes.
+	 * @return new instance.
+	 * @throws Exception on errors.
+	 */
+	public static Box extractBox(Box parent, long boxpos, ByteBuffer data) throws Exception {
+		final int length = data.getInt();
+		final int type = data.getInt();
+		int hdrsize = I64;
+		// if length == 1 get extended length
+		long full = length & 0xffffffffL;
+		if(length == 1) {
+			full = data.getLong();
+			hdrsize += I64;
+		}
+		byte[] uuid = null;
+		if(type == FourCC.UUID) {
+			// extended UUID 16 bytes
+			uuid = new byte[16];
+			data.get(uuid);
+			hdrsize += uuid.length;
+		}
+		Box box = null;
+		if(FullBox.isFull(type)) {
+			// it's a full box get the version+flags
+			final int vf = data.getInt();
+			hdrsize += I32;
+			box = new FullBox(parent, type, boxpos, full, hdrsize, vf);
+		}
+		else if (uuid != null) {
+			box = new UserType(parent, type, boxpos, full, hdrsize, uuid);
+		}
+		else {
+			box = new Box(parent, type, boxpos, full, hdrsize);
+		}
+		return box;
+	}
 }
\ No newline at end of file
@@ -15,24 +15,83 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Chunk offset table (stco or co64).
+ * Offsets that all fit in 32 bits are kept as unsigned ints, whichever box they came from;
+ * otherwise they are kept as longs. Use {@link #get(int)} to read either form.
+ * @author escape-llc
+ *
+ */
 public class ChunkOffset {
+	// unsigned 32-bit offsets; NULL if wide is used
 	public final int[] table;
+	// 64-bit offsets; NULL if table is used
+	public final long[] wide;
+	/**
+	 * Ctor.
+	 * @param entries unsigned 32-bit offsets (stco).
+	 */
 	public ChunkOffset(int[] entries) {
+		if(entries == null)
+			throw new IllegalArgumentException("entries");
 		this.table = entries;
+		this.wide = null;
+	}
+	/**
+	 * Ctor.
+	 * The compact form is used if every offset fits in 32 bits.
+	 * @param entries 64-bit offsets (co64).
+	 */
+	public ChunkOffset(long[] entries) {
+		if(entries == null)
+			throw new IllegalArgumentException("entries");
+		boolean narrow = true;
+		for(int ix = 0; ix < entries.length; ix++) {
+			if((entries[ix] & 0xffffffff00000000L) != 0) {
+				narrow = false;
+				break;
+			}
+		}
+		if(narrow) {
+			final int[] tx = new int[entries.length];
+			for(int ix = 0; ix < entries.length; ix++) {
+				tx[ix] = (int)entries[ix];
+			}
+			this.table = tx;
+			this.wide = null;
+		}
+		else {
+			this.table = null;
+			this.wide = entries;
+		}
+	}
+	/**
+	 * Number of chunks.
+	 * @return chunk count.
+	 */
+	public int size() {
+		return table != null ? table.length : wide.length;
+	}
+	/**
+	 * Return the offset of the chunk.
+	 * @param idx Requested index.
+	 * @return offset from beginning of file.
+	 */
+	public long get(int idx) {
+		return table != null ? table[idx] & 0xffffffffL : wide[idx];
 	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
+		final int size = size();
 		sb.append("[");
-		sb.append(table.length);
+		sb.append(size);
 		sb.append("] ");
-		if(table != null) {
-			for(int ix = 0; ix < table.length; ix++) {
-				if(ix > 0) sb.append(", ");
-				sb.append(table[ix]);
-				if(table.length > 10 && ix == 10) {
-					sb.append("...");
-					break;
-				}
+		for(int ix = 0; ix < size; ix++) {
+			if(ix > 0) sb.append(", ");
+			sb.append(get(ix));
+			if(size > 10 && ix == 10) {
+				sb.append("...");
+				break;
 			}
 		}
 		return sb.toString();
@@ -15,6 +15,13 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Edit list (elst) version 0.
+ * Usually one or two edits; a media time of -1 marks an empty edit, a delay before the media starts.
+ * The edits are kept as decoded; sample lookups in {@link SoundTable} do not apply them.
+ * @author escape-llc
+ *
+ */
 public class EditList_V0 {
 	public static class Entry {
 		public final int trackDuration;
@@ -27,24 +34,80 @@ public class EditList_V0 {
 		}
 	}
 	public final int flags;
-	public final Entry[] table;
-	public EditList_V0(int flags, Entry[] table) {
+	// edit duration, in movie timescale units
+	public final int[] trackDuration;
+	// starting media time; -1: empty edit
+	public final int[] mediaTime;
+	// media rate, 16.16 fixed point
+	public final int[] mediaRate;
+	// see table()
+	volatile Entry[] table;
+	/**
+	 * Ctor.
+	 * @param flags box flags.
+	 * @param trackDuration track duration column.
+	 * @param mediaTime media time column; same length as trackDuration.
+	 * @param mediaRate media rate column; same length as trackDuration.
+	 */
+	public EditList_V0(int flags, int[] trackDuration, int[] mediaTime, int[] mediaRate) {
+		if(trackDuration == null)
+			throw new IllegalArgumentException("trackDuration");
+		if(mediaTime == null || mediaTime.length != trackDuration.length)
+			throw new IllegalArgumentException("mediaTime");
+		if(mediaRate == null || mediaRate.length != trackDuration.length)
+			throw new IllegalArgumentException("mediaRate");
 		this.flags = flags;
+		this.trackDuration = trackDuration;
+		this.mediaTime = mediaTime;
+		this.mediaRate = mediaRate;
+	}
+	/**
+	 * Ctor.
+	 * @param flags box flags.
+	 * @param table source entries.
+	 */
+	public EditList_V0(int flags, Entry[] table) {
+		this(flags, new int[table.length], new int[table.length], new int[table.length]);
+		for(int ix = 0; ix < table.length; ix++) {
+			trackDuration[ix] = table[ix].trackDuration;
+			mediaTime[ix] = table[ix].mediaTime;
+			mediaRate[ix] = table[ix].mediaRate;
+		}
 		this.table = table;
 	}
+	/**
+	 * Number of entries.
+	 * @return entry count.
+	 */
+	public int size() { return trackDuration.length; }
+	/**
+	 * Return the entries as objects, building them on first use.
+	 * @return entries.
+	 */
+	public Entry[] table() {
+		Entry[] tx = table;
+		if(tx == null) {
+			tx = new Entry[trackDuration.length];
+			for(int ix = 0; ix < tx.length; ix++) {
+				tx[ix] = new Entry(trackDuration[ix], mediaTime[ix], mediaRate[ix]);
+			}
+			table = tx;
+		}
+		return tx;
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		sb.append(table.length);
+		sb.append(trackDuration.length);
 		sb.append("] ");
-		for(int ix = 0; ix < table.length; ix++) {
+		for(int ix = 0; ix < trackDuration.length; ix++) {
 			if(ix > 0) sb.append(", ");
 			sb.append("{dur=");
-			sb.append(table[ix].trackDuration);
+			sb.append(trackDuration[ix]);
 			sb.append(",mt=");
-			sb.append(table[ix].mediaTime);
+			sb.append(mediaTime[ix]);
 			sb.append(",rate=");
-			sb.append(Integer.toString(table[ix].mediaRate, 16));
+			sb.append(Integer.toString(mediaRate[ix], 16));
 			sb.append("}");
 		}
 		return sb.toString();
@@ -0,0 +1,246 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Sample index of one track across all of its movie fragments.
+ * Grows as each track run is added, so it can be queried while fragments are still arriving.
+ * Samples are numbered from 1 across all fragments, in the order added.
+ * Offsets and times are found by locating the run, then summing within the run.
+ * Not thread-safe while growing.
+ * @author escape-llc
+ *
+ */
+public class FragmentIndex {
+	public final int trackId;
+	// number of runs
+	int runs;
+	// first sample (1-relative) of each run
+	int[] runFirst = new int[16];
+	// file offset of each run
+	long[] runOffset = new long[16];
+	// decode time of the first sample of each run
+	long[] runTime = new long[16];
+	// sample description (1-relative) of each run
+	int[] runDesc = new int[16];
+	// number of samples
+	int count;
+	int[] size = new int[256];
+	int[] duration = new int[256];
+	// set for samples that are not sync samples
+	final BitSet nonSync = new BitSet();
+	// decode time at end of last sample
+	long end;
+	/**
+	 * Ctor.
+	 * @param trackId owning track.
+	 */
+	public FragmentIndex(int trackId) {
+		this.trackId = trackId;
+	}
+	/**
+	 * Number of samples.
+	 * @return sample count.
+	 */
+	public int count() { return count; }
+	/**
+	 * Number of track runs.
+	 * @return run count.
+	 */
+	public int runs() { return runs; }
+	/**
+	 * Decode time at the end of the last sample.
+	 * @return time in media timescale units.
+	 */
+	public long endTime() { return end; }
+	/**
+	 * Append the samples of a track run.
+	 * Fields missing from the run come from the given defaults (track fragment, else track extends).
+	 * @param trun source run.
+	 * @param offset absolute file offset of the first sample.
+	 * @param time decode time of the first sample.
+	 * @param sdi sample description (1-relative).
+	 * @param defDuration default sample duration.
+	 * @param defSize default sample size.
+	 * @param defFlags default sample flags.
+	 * @return file offset just past the last sample of the run.
+	 */
+	public long add(TrackRun trun, long offset, long time, int sdi, int defDuration, int defSize, int defFlags) {
+		if(trun == null)
+			throw new IllegalArgumentException("trun");
+		if(runs == runFirst.length) {
+			final int grow = runs*2;
+			runFirst = Arrays.copyOf(runFirst, grow);
+			runOffset = Arrays.copyOf(runOffset, grow);
+			runTime = Arrays.copyOf(runTime, grow);
+			runDesc = Arrays.copyOf(runDesc, grow);
+		}
+		if(count + trun.count > size.length) {
+			final int grow = Math.max(size.length*2, count + trun.count);
+			size = Arrays.copyOf(size, grow);
+			duration = Arrays.copyOf(duration, grow);
+		}
+		runFirst[runs] = count + 1;
+		runOffset[runs] = offset;
+		runTime[runs] = time;
+		runDesc[runs] = sdi;
+		runs++;
+		long ofs = offset;
+		long tx = time;
+		for(int ix = 0; ix < trun.count; ix++) {
+			final int sz = trun.size != null ? trun.size[ix] : defSize;
+			final int dur = trun.duration != null ? trun.duration[ix] : defDuration;
+			final int sf = trun.sampleFlags != null ? trun.sampleFlags[ix]
+					: ix == 0 && trun.hasFirstSampleFlags() ? trun.firstSampleFlags : defFlags;
+			size[count] = sz;
+			duration[count] = dur;
+			if((sf & TrackRun.SAMPLE_IS_NON_SYNC) != 0) {
+				nonSync.set(count);
+			}
+			count++;
+			ofs += sz & 0xffffffffL;
+			tx += dur & 0xffffffffL;
+		}
+		end = tx;
+		return ofs;
+	}
+	/**
+	 * Return the index of the run containing the sample.
+	 * @param sample sample (1-relative).
+	 * @return run index.
+	 */
+	int runForSample(int sample) {
+		if(sample < 1 || sample > count)
+			throw new IllegalArgumentException("sample");
+		int lo = 0;
+		int hi = runs - 1;
+		while(lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if(runFirst[mid] <= sample) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+	/**
+	 * Compute the media coordinate of the sample.
+	 * @param sample sample (1-relative).
+	 * @return new instance.
+	 */
+	public SoundTable.MediaCoordinate resolve(int sample) {
+		final int rx = runForSample(sample);
+		long ofs = runOffset[rx];
+		for(int ix = runFirst[rx] - 1; ix < sample - 1; ix++) {
+			ofs += size[ix] & 0xffffffffL;
+		}
+		return new SoundTable.MediaCoordinate(ofs, size[sample - 1], runDesc[rx]);
+	}
+	/**
+	 * Return the decode time of the given sample.
+	 * @param sample sample (1-relative).
+	 * @return time in media timescale units.
+	 */
+	public long sampleTime(int sample) {
+		final int rx = runForSample(sample);
+		long tx = runTime[rx];
+		for(int ix = runFirst[rx] - 1; ix < sample - 1; ix++) {
+			tx += duration[ix] & 0xffffffffL;
+		}
+		return tx;
+	}
+	/**
+	 * Return the sample playing at the given media time.
+	 * @param mediaTime time in media timescale units.
+	 * @return sample (1-relative); times before the first run give the first sample, at or past the end give the last.
+	 */
+	public int sampleAtTime(long mediaTime) {
+		if(count == 0)
+			throw new IllegalStateException("count");
+		if(mediaTime >= end)
+			return count;
+		int lo = 0;
+		int hi = runs - 1;
+		while(lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if(runTime[mid] <= mediaTime) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		final int last = lo + 1 < runs ? runFirst[lo + 1] - 1 : count;
+		long tx = runTime[lo];
+		int sample = runFirst[lo];
+		while(sample < last) {
+			tx += duration[sample - 1] & 0xffffffffL;
+			if(tx > mediaTime) break;
+			sample++;
+		}
+		return sample;
+	}
+	/**
+	 * Return the size of the sample.
+	 * @param sample sample (1-relative).
+	 * @return number of bytes.
+	 */
+	public int size(int sample) {
+		if(sample < 1 || sample > count)
+			throw new IllegalArgumentException("sample");
+		return size[sample - 1];
+	}
+	/**
+	 * Return whether the sample is a sync sample.
+	 * @param sample sample (1-relative).
+	 * @return true: sync; false: not.
+	 */
+	public boolean isSync(int sample) {
+		if(sample < 1 || sample > count)
+			throw new IllegalArgumentException("sample");
+		return !nonSync.get(sample - 1);
+	}
+	/**
+	 * Return the nearest sync sample at or before the given sample.
+	 * @param sample sample (1-relative).
+	 * @return sync sample (1-relative); 0: no sync sample at or before the sample.
+	 */
+	public int syncSampleBefore(int sample) {
+		if(sample < 1 || sample > count)
+			throw new IllegalArgumentException("sample");
+		for(int ix = sample - 1; ix >= 0; ix--) {
+			if(!nonSync.get(ix)) return ix + 1;
+		}
+		return 0;
+	}
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("track: ");
+		sb.append(trackId);
+		sb.append(",samples: ");
+		sb.append(count);
+		sb.append(",runs: ");
+		sb.append(runs);
+		sb.append(",end: ");
+		sb.append(end);
+		return sb.toString();
+	}
+}
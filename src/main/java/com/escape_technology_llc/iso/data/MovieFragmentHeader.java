@@ -0,0 +1,32 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Movie fragment header (mfhd).
+ * @author escape-llc
+ *
+ */
+public class MovieFragmentHeader {
+	// increases by one with each fragment, starting at 1
+	public final int sequenceNumber;
+	public MovieFragmentHeader(int sequenceNumber) {
+		this.sequenceNumber = sequenceNumber;
+	}
+	@Override public String toString() {
+		return "seq: " + sequenceNumber;
+	}
+}
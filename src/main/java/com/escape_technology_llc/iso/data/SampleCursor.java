@@ -0,0 +1,262 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Forward cursor over the samples of a sound table.
+ * Chunk, time, size and sync state advance incrementally; stepping does not allocate.
+ * Starts before the first sample; call {@link #next()} to move onto it.
+ * Not thread-safe; use one cursor per thread.
+ * @author escape-llc
+ *
+ */
+public class SampleCursor {
+	final SoundTable st;
+	final int count;
+	// current sample (1-relative); 0: before first
+	int sample;
+	// current chunk (1-relative), and samples left in it after the current one
+	int chunk;
+	int chunkLeft;
+	// STSC entry governing the current chunk
+	int scix;
+	int spc;
+	int sdid;
+	// file offset and size of the current sample
+	long offset;
+	int size;
+	// STTS entry of the current sample, and samples left in it after the current one
+	int ttix;
+	int ttLeft;
+	long time;
+	int duration;
+	// next STSS index to compare against
+	int ssix;
+	boolean sync;
+	/**
+	 * Ctor.
+	 * @param st source table; requires STSC, STTS, STSZ, STCO.
+	 */
+	public SampleCursor(SoundTable st) {
+		if(st == null)
+			throw new IllegalArgumentException("st");
+		if(st.stsc == null || st.stsc.size() == 0)
+			throw new IllegalArgumentException("st.stsc");
+		if(st.stts == null || st.stts.size() == 0)
+			throw new IllegalArgumentException("st.stts");
+		if(st.stsz == null)
+			throw new IllegalArgumentException("st.stsz");
+		if(st.stco == null)
+			throw new IllegalArgumentException("st.stco");
+		this.st = st;
+		if(!st.stsz.isConstant() || st.stsz.count > 0) {
+			count = st.stsz.count;
+		}
+		else {
+			// constant size built without a sample count
+			final SoundTable.TimeIndex tx = st.times();
+			final int last = tx.first.length - 1;
+			count = tx.first[last] + st.stts.count[last] - 1;
+		}
+	}
+	/**
+	 * Number of samples in the track.
+	 * @return sample count.
+	 */
+	public int count() { return count; }
+	/**
+	 * Current sample.
+	 * @return sample (1-relative); 0: before first.
+	 */
+	public int sample() { return sample; }
+	/**
+	 * Current chunk.
+	 * @return chunk (1-relative).
+	 */
+	public int chunk() { return chunk; }
+	/**
+	 * File offset of the current sample.
+	 * @return offset from beginning of file.
+	 */
+	public long offset() { return offset; }
+	/**
+	 * Size of the current sample.
+	 * @return number of bytes.
+	 */
+	public int size() { return size; }
+	/**
+	 * Decode time of the current sample.
+	 * @return time in media timescale units.
+	 */
+	public long time() { return time; }
+	/**
+	 * Duration of the current sample.
+	 * @return duration in media timescale units.
+	 */
+	public long duration() { return duration & 0xffffffffL; }
+	/**
+	 * Whether the current sample is a sync sample.
+	 * @return true: sync; false: not.
+	 */
+	public boolean isSync() { return sync; }
+	/**
+	 * Sample description of the current sample.
+	 * @return sample description (1-relative).
+	 */
+	public int sampleDesc() { return sdid; }
+	/**
+	 * Move to the next sample.
+	 * @return true: on a sample; false: no more samples.
+	 */
+	public boolean next() {
+		if(sample >= count) return false;
+		sample++;
+		if(sample == 1) {
+			start();
+		}
+		else {
+			if(chunkLeft == 0) {
+				nextChunk();
+			}
+			else {
+				chunkLeft--;
+				offset += size;
+			}
+			time += duration & 0xffffffffL;
+			if(ttLeft > 0) {
+				ttLeft--;
+			}
+			else if(ttix + 1 < st.stts.size()) {
+				ttix++;
+				skipEmpty();
+			}
+		}
+		size = st.stsz.get(sample - 1);
+		sync = isSync(sample);
+		return true;
+	}
+	/**
+	 * Position on the given sample.
+	 * Costs a lookup per table; use {@link #next()} for sequential access.
+	 * @param target sample (1-relative).
+	 */
+	public void seek(int target) {
+		if(target < 1 || target > count)
+			throw new IllegalArgumentException("target");
+		final SoundTable.SampleCoordinate sc = st.chunkForSample(target);
+		sample = target;
+		chunk = sc.chunk;
+		scix = entryForChunk(chunk);
+		spc = st.stsc.samplesPerChunk[scix];
+		sdid = st.stsc.sampleDescID[scix];
+		chunkLeft = sc.firstSampleInChunk + spc - 1 - target;
+		offset = st.resolve(sc).position;
+		final SoundTable.TimeIndex tx = st.times();
+		ttix = tx.entryForSample(target);
+		ttLeft = tx.first[ttix] + st.stts.count[ttix] - 1 - target;
+		time = st.sampleTime(target);
+		duration = st.stts.duration[ttix];
+		ssix = 0;
+		if(st.stss != null && st.stss.table != null) {
+			final int[] table = st.stss.table;
+			int lo = 0;
+			int hi = table.length;
+			while(lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if(table[mid] < target) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			ssix = lo;
+		}
+		size = st.stsz.get(target - 1);
+		sync = isSync(target);
+	}
+	/**
+	 * Set up state for the first sample.
+	 */
+	void start() {
+		scix = 0;
+		chunk = st.stsc.firstChunk[0] - 1;
+		nextChunk();
+		ttix = 0;
+		time = 0;
+		skipEmpty();
+		ssix = 0;
+	}
+	/**
+	 * Move to the first sample of the next chunk.
+	 */
+	void nextChunk() {
+		chunk++;
+		final int[] fc = st.stsc.firstChunk;
+		while(scix + 1 < fc.length && fc[scix + 1] <= chunk) {
+			scix++;
+		}
+		spc = st.stsc.samplesPerChunk[scix];
+		sdid = st.stsc.sampleDescID[scix];
+		chunkLeft = spc - 1;
+		offset = st.stco.get(chunk - 1);
+	}
+	/**
+	 * Settle on the first STTS entry at or after ttix that has samples.
+	 */
+	void skipEmpty() {
+		final int[] count = st.stts.count;
+		while(ttix + 1 < count.length && count[ttix] == 0) {
+			ttix++;
+		}
+		ttLeft = count[ttix] - 1;
+		duration = st.stts.duration[ttix];
+	}
+	/**
+	 * Return the index of the STSC entry governing the given chunk.
+	 * @param target chunk (1-relative).
+	 * @return entry index.
+	 */
+	int entryForChunk(int target) {
+		final int[] fc = st.stsc.firstChunk;
+		int lo = 0;
+		int hi = fc.length - 1;
+		while(lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if(fc[mid] <= target) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+	/**
+	 * Return whether the sample is a sync sample, advancing the STSS index.
+	 * Samples must be presented in increasing order.
+	 * @param target sample (1-relative).
+	 * @return true: sync; false: not.
+	 */
+	boolean isSync(int target) {
+		if(st.stss == null || st.stss.table == null) return true;
+		final int[] table = st.stss.table;
+		while(ssix < table.length && table[ssix] < target) {
+			ssix++;
+		}
+		return ssix < table.length && table[ssix] == target;
+	}
+}
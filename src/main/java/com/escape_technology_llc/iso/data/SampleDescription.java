@@ -15,6 +15,13 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Sample description table (stsd).
+ * Indexed by the 1-relative sample description ID from stsc; only format and data reference are kept,
+ * the codec-specific payload of each entry is skipped.
+ * @author escape-llc
+ *
+ */
 public class SampleDescription {
 	public static class Entry {
 		public final String format;
@@ -24,27 +31,72 @@ public class SampleDescription {
 			this.dataReferenceIndex = dri;
 		}
 	}
-	public Entry[] table;
+	// sample entry format code
+	public final String[] format;
+	// data reference (1-relative)
+	public final int[] dataReferenceIndex;
+	// see table()
+	volatile Entry[] table;
+	/**
+	 * Ctor.
+	 * @param format format column.
+	 * @param dataReferenceIndex data reference column; same length as format.
+	 */
+	public SampleDescription(String[] format, int[] dataReferenceIndex) {
+		if(format == null)
+			throw new IllegalArgumentException("format");
+		if(dataReferenceIndex == null || dataReferenceIndex.length != format.length)
+			throw new IllegalArgumentException("dataReferenceIndex");
+		this.format = format;
+		this.dataReferenceIndex = dataReferenceIndex;
+	}
+	/**
+	 * Ctor.
+	 * @param table source entries.
+	 */
 	public SampleDescription(Entry[] table) {
+		this(new String[table.length], new int[table.length]);
+		for(int ix = 0; ix < table.length; ix++) {
+			format[ix] = table[ix].format;
+			dataReferenceIndex[ix] = table[ix].dataReferenceIndex;
+		}
 		this.table = table;
 	}
+	/**
+	 * Number of entries.
+	 * @return entry count.
+	 */
+	public int size() { return format.length; }
+	/**
+	 * Return the entries as objects, building them on first use.
+	 * @return entries.
+	 */
+	public Entry[] table() {
+		Entry[] tx = table;
+		if(tx == null) {
+			tx = new Entry[format.length];
+			for(int ix = 0; ix < tx.length; ix++) {
+				tx[ix] = new Entry(format[ix], dataReferenceIndex[ix]);
+			}
+			table = tx;
+		}
+		return tx;
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		sb.append(table.length);
+		sb.append(format.length);
 		sb.append("] ");
-		if(table != null) {
-			for(int ix = 0; ix < table.length; ix++) {
-				if(ix > 0) sb.append(", ");
-				sb.append("{fmt=");
-				sb.append(table[ix].format);
-				sb.append(",dref=");
-				sb.append(table[ix].dataReferenceIndex);
-				sb.append("}");
-				if(table.length > 10 && ix == 10) {
-					sb.append("...");
-					break;
-				}
+		for(int ix = 0; ix < format.length; ix++) {
+			if(ix > 0) sb.append(", ");
+			sb.append("{fmt=");
+			sb.append(format[ix]);
+			sb.append(",dref=");
+			sb.append(dataReferenceIndex[ix]);
+			sb.append("}");
+			if(format.length > 10 && ix == 10) {
+				sb.append("...");
+				break;
 			}
 		}
 		return sb.toString();
@@ -15,39 +15,202 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Sample size table (stsz or stz2).
+ * Per-sample sizes are kept in the narrowest of byte, short or int that holds the largest size;
+ * use {@link #get(int)} to read them.
+ * @author escape-llc
+ *
+ */
 public class SampleSize {
+	// if not zero, every sample has this size and there is no table
 	public final int sampleSize;
-	// if table == null use sampleSize instead
-	public final int[] table;
+	// number of samples (sample_count of the box), with or without a table
+	public final int count;
+	// samples between checkpoints; see marks()
+	static final int MARK_SHIFT = 5;
+	static final int MARK_STRIDE = 1 << MARK_SHIFT;
+	// exactly one of these is set if there is a table; values are unsigned
+	final byte[] bytes;
+	final short[] shorts;
+	final int[] ints;
+	// see marks()
+	volatile long[] marks;
+	/**
+	 * Ctor.
+	 * The sample count is taken from the table; with a constant size and no table it is zero.
+	 * @param ss constant sample size; zero: use the table.
+	 * @param entries per-sample sizes; may be NULL if ss is not zero.
+	 */
 	public SampleSize(int ss, int[] entries) {
-		this.sampleSize = ss;
+		this(ss, entries == null ? 0 : entries.length, entries);
+	}
+	/**
+	 * Ctor.
+	 * The table is narrowed to the smallest width that fits.
+	 * @param ss constant sample size; zero: use the table.
+	 * @param count number of samples.
+	 * @param entries per-sample sizes, count long; may be NULL if ss is not zero.
+	 */
+	public SampleSize(int ss, int count, int[] entries) {
 		if(ss == 0 && entries == null)
 			throw new IllegalArgumentException("ss == 0 requires the ss table");
-		this.table = entries;
+		if(count < 0 || (entries != null && entries.length != count))
+			throw new IllegalArgumentException("count");
+		this.sampleSize = ss;
+		this.count = count;
+		if(entries == null) {
+			this.bytes = null;
+			this.shorts = null;
+			this.ints = null;
+			return;
+		}
+		int max = 0;
+		for(int ix = 0; ix < entries.length; ix++) {
+			max |= entries[ix];
+		}
+		if((max & ~0xff) == 0) {
+			final byte[] bx = new byte[entries.length];
+			for(int ix = 0; ix < entries.length; ix++) {
+				bx[ix] = (byte)entries[ix];
+			}
+			this.bytes = bx;
+			this.shorts = null;
+			this.ints = null;
+		}
+		else if((max & ~0xffff) == 0) {
+			final short[] sx = new short[entries.length];
+			for(int ix = 0; ix < entries.length; ix++) {
+				sx[ix] = (short)entries[ix];
+			}
+			this.bytes = null;
+			this.shorts = sx;
+			this.ints = null;
+		}
+		else {
+			this.bytes = null;
+			this.shorts = null;
+			this.ints = entries;
+		}
+	}
+	/**
+	 * Ctor.
+	 * @param entries per-sample sizes, unsigned 8-bit; caller gives up ownership.
+	 */
+	public SampleSize(byte[] entries) {
+		if(entries == null)
+			throw new IllegalArgumentException("entries");
+		this.sampleSize = 0;
+		this.count = entries.length;
+		this.bytes = entries;
+		this.shorts = null;
+		this.ints = null;
+	}
+	/**
+	 * Ctor.
+	 * @param entries per-sample sizes, unsigned 16-bit; caller gives up ownership.
+	 */
+	public SampleSize(short[] entries) {
+		if(entries == null)
+			throw new IllegalArgumentException("entries");
+		this.sampleSize = 0;
+		this.count = entries.length;
+		this.bytes = null;
+		this.shorts = entries;
+		this.ints = null;
+	}
+	/**
+	 * Whether every sample has the same size.
+	 * @return true: use sampleSize; false: use the table.
+	 */
+	public boolean isConstant() {
+		return bytes == null && shorts == null && ints == null;
 	}
 	/**
-	 * Return either the value from TABLE or SampleSize if TABLE is NULL.
+	 * Return either the value from the table or SampleSize if there is no table.
 	 * @param idx Requested index.
 	 * @return sample size for index.
 	 */
 	public int get(int idx) {
-		return table == null ? sampleSize : table[idx];
+		if(bytes != null) return bytes[idx] & 0xff;
+		if(shorts != null) return shorts[idx] & 0xffff;
+		if(ints != null) return ints[idx];
+		return sampleSize;
+	}
+	/**
+	 * Return the cumulative size before every {@link #MARK_STRIDE}-th sample, building it on first use.
+	 * One long per stride; the samples between checkpoints are summed from the narrowed table.
+	 * @return checkpoints; index k is the total size of samples [0, k*MARK_STRIDE).
+	 */
+	long[] marks() {
+		long[] mx = marks;
+		if(mx == null) {
+			mx = new long[(count >> MARK_SHIFT) + 1];
+			long total = 0;
+			for(int ix = 0, from = 0; ix < mx.length; ix++, from += MARK_STRIDE) {
+				mx[ix] = total;
+				total += span(from, Math.min(from + MARK_STRIDE, count));
+			}
+			marks = mx;
+		}
+		return mx;
+	}
+	/**
+	 * Return the total size of the samples before the given one.
+	 * Cost is bounded by {@link #MARK_STRIDE} table reads.
+	 * @param idx index (0-relative); up to count.
+	 * @return sum of sizes of samples [0, idx).
+	 */
+	public long offset(int idx) {
+		if(isConstant()) return (long)idx*sampleSize;
+		final int mark = idx >> MARK_SHIFT;
+		return marks()[mark] + span(mark << MARK_SHIFT, idx);
+	}
+	/**
+	 * Return the total size of a range of samples.
+	 * Cost is bounded by twice {@link #MARK_STRIDE} table reads, whatever the length of the range.
+	 * @param from first index (inclusive).
+	 * @param to last index (exclusive).
+	 * @return sum of sizes.
+	 */
+	public long sum(int from, int to) {
+		if(isConstant()) return (long)(to - from)*sampleSize;
+		if(to - from <= MARK_STRIDE) return span(from, to);
+		return offset(to) - offset(from);
+	}
+	/**
+	 * Sum the table entries of a range directly; requires a table.
+	 * @param from first index (inclusive).
+	 * @param to last index (exclusive).
+	 * @return sum of sizes.
+	 */
+	long span(int from, int to) {
+		long total = 0;
+		if(bytes != null) {
+			for(int ix = from; ix < to; ix++) total += bytes[ix] & 0xff;
+		}
+		else if(shorts != null) {
+			for(int ix = from; ix < to; ix++) total += shorts[ix] & 0xffff;
+		}
+		else if(ints != null) {
+			for(int ix = from; ix < to; ix++) total += ints[ix] & 0xffffffffL;
+		}
+		return total;
 	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		if(table != null) {
-			sb.append(table.length);
-		}
-		else {
+		sb.append(count);
+		sb.append("] ");
+		if(isConstant()) {
+			sb.append("all ");
 			sb.append(sampleSize);
 		}
-		sb.append("] ");
-		if(table != null) {
-			for(int ix = 0; ix < table.length; ix++) {
+		else {
+			for(int ix = 0; ix < count; ix++) {
 				if(ix > 0) sb.append(", ");
-				sb.append(table[ix]);
-				if(table.length > 10 && ix == 10) {
+				sb.append(get(ix));
+				if(count > 10 && ix == 10) {
 					sb.append("...");
 					break;
 				}
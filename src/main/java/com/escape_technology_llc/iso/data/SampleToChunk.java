@@ -15,6 +15,13 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Sample-to-chunk table (stsc).
+ * Each row starts at its first chunk and covers chunks up to the next row's first chunk;
+ * {@link SoundTable} derives the first sample of each row from these columns once, and binary-searches that.
+ * @author escape-llc
+ *
+ */
 public class SampleToChunk {
 	public static class Entry {
 		final int firstChunk;
@@ -26,25 +33,79 @@ public class SampleToChunk {
 			this.sampleDescID = sdi;
 		}
 	}
-	public final Entry[] table;
+	// first chunk (1-relative) of each run
+	public final int[] firstChunk;
+	// samples in each chunk of the run
+	public final int[] samplesPerChunk;
+	// sample description (1-relative) of the run
+	public final int[] sampleDescID;
+	// see table()
+	volatile Entry[] table;
+	/**
+	 * Ctor.
+	 * @param firstChunk first chunk column.
+	 * @param samplesPerChunk samples per chunk column; same length as firstChunk.
+	 * @param sampleDescID sample description column; same length as firstChunk.
+	 */
+	public SampleToChunk(int[] firstChunk, int[] samplesPerChunk, int[] sampleDescID) {
+		if(firstChunk == null)
+			throw new IllegalArgumentException("firstChunk");
+		if(samplesPerChunk == null || samplesPerChunk.length != firstChunk.length)
+			throw new IllegalArgumentException("samplesPerChunk");
+		if(sampleDescID == null || sampleDescID.length != firstChunk.length)
+			throw new IllegalArgumentException("sampleDescID");
+		this.firstChunk = firstChunk;
+		this.samplesPerChunk = samplesPerChunk;
+		this.sampleDescID = sampleDescID;
+	}
+	/**
+	 * Ctor.
+	 * @param entries source entries.
+	 */
 	public SampleToChunk(Entry[] entries) {
+		this(new int[entries.length], new int[entries.length], new int[entries.length]);
+		for(int ix = 0; ix < entries.length; ix++) {
+			firstChunk[ix] = entries[ix].firstChunk;
+			samplesPerChunk[ix] = entries[ix].samplesPerChunk;
+			sampleDescID[ix] = entries[ix].sampleDescID;
+		}
 		this.table = entries;
 	}
+	/**
+	 * Number of entries.
+	 * @return entry count.
+	 */
+	public int size() { return firstChunk.length; }
+	/**
+	 * Return the entries as objects, building them on first use.
+	 * @return entries.
+	 */
+	public Entry[] table() {
+		Entry[] tx = table;
+		if(tx == null) {
+			tx = new Entry[firstChunk.length];
+			for(int ix = 0; ix < tx.length; ix++) {
+				tx[ix] = new Entry(firstChunk[ix], samplesPerChunk[ix], sampleDescID[ix]);
+			}
+			table = tx;
+		}
+		return tx;
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		sb.append(table.length);
+		sb.append(firstChunk.length);
 		sb.append("] ");
-		for(int ix = 0; ix < table.length; ix++) {
+		for(int ix = 0; ix < firstChunk.length; ix++) {
 			if(ix > 0) sb.append(", ");
 			sb.append("{fc=");
-			sb.append(table[ix].firstChunk);
+			sb.append(firstChunk[ix]);
 			sb.append(",spc=");
-			sb.append(table[ix].samplesPerChunk);
+			sb.append(samplesPerChunk[ix]);
 			sb.append(",stsd=");
-			sb.append(table[ix].sampleDescID);
+			sb.append(sampleDescID[ix]);
 			sb.append("}");
-			if(table.length > 10 && ix == 10) {
+			if(firstChunk.length > 10 && ix == 10) {
 				sb.append("...");
 				break;
 			}
@@ -0,0 +1,118 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Segment index (sidx).
+ * References are stored as parallel columns; each one is either a media subsegment or another SIDX.
+ * @author escape-llc
+ *
+ */
+public class SegmentIndex {
+	// referenceType values
+	public static final int REFERENCE_MEDIA = 0;
+	public static final int REFERENCE_INDEX = 1;
+	// absolute file offset of this SIDX
+	public final long position;
+	// absolute file offset of the first byte after this SIDX; referenced offsets are relative to it
+	public final long anchor;
+	public final int referenceId;
+	// units/sec
+	public final int timescale;
+	// in timescale units
+	public final long earliestPresentationTime;
+	// from anchor to the first referenced byte
+	public final long firstOffset;
+	// REFERENCE_MEDIA or REFERENCE_INDEX
+	public final int[] referenceType;
+	// bytes referenced, up to 31 bits
+	public final int[] referencedSize;
+	// in timescale units
+	public final int[] subsegmentDuration;
+	// starts_with_SAP (bit 31), SAP_type (bits 28-30), SAP_delta_time (bits 0-27)
+	public final int[] sap;
+	/**
+	 * Ctor.
+	 * @param position file offset of the box.
+	 * @param anchor file offset of the first byte after the box.
+	 * @param referenceId track ID.
+	 * @param timescale timescale.
+	 * @param ept earliest presentation time.
+	 * @param firstOffset offset from anchor to the first reference.
+	 * @param referenceType type column.
+	 * @param referencedSize size column; same length as referenceType.
+	 * @param subsegmentDuration duration column; same length as referenceType.
+	 * @param sap SAP column; same length as referenceType.
+	 */
+	public SegmentIndex(long position, long anchor, int referenceId, int timescale, long ept, long firstOffset,
+			int[] referenceType, int[] referencedSize, int[] subsegmentDuration, int[] sap) {
+		if(referenceType == null)
+			throw new IllegalArgumentException("referenceType");
+		if(referencedSize == null || referencedSize.length != referenceType.length)
+			throw new IllegalArgumentException("referencedSize");
+		if(subsegmentDuration == null || subsegmentDuration.length != referenceType.length)
+			throw new IllegalArgumentException("subsegmentDuration");
+		if(sap == null || sap.length != referenceType.length)
+			throw new IllegalArgumentException("sap");
+		this.position = position;
+		this.anchor = anchor;
+		this.referenceId = referenceId;
+		this.timescale = timescale;
+		this.earliestPresentationTime = ept;
+		this.firstOffset = firstOffset;
+		this.referenceType = referenceType;
+		this.referencedSize = referencedSize;
+		this.subsegmentDuration = subsegmentDuration;
+		this.sap = sap;
+	}
+	/**
+	 * Number of references.
+	 * @return reference count.
+	 */
+	public int size() { return referenceType.length; }
+	/**
+	 * Return whether the reference starts with a stream access point.
+	 * @param idx reference index.
+	 * @return true: starts with SAP.
+	 */
+	public boolean startsWithSap(int idx) {
+		return sap[idx] < 0;
+	}
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("ref: ");
+		sb.append(referenceId);
+		sb.append(",ts: ");
+		sb.append(timescale);
+		sb.append(",ept: ");
+		sb.append(earliestPresentationTime);
+		sb.append(" [");
+		sb.append(referenceType.length);
+		sb.append("] ");
+		for(int ix = 0; ix < referenceType.length; ix++) {
+			if(ix > 0) sb.append(", ");
+			sb.append(referenceType[ix] == REFERENCE_INDEX ? "sidx:" : "");
+			sb.append(referencedSize[ix]);
+			sb.append("/");
+			sb.append(subsegmentDuration[ix]);
+			if(referenceType.length > 10 && ix == 10) {
+				sb.append("...");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+}
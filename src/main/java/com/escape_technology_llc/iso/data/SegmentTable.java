@@ -0,0 +1,205 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Flat time to byte-range table of the media subsegments of one stream, built from one or more SIDX.
+ * SIDX references to other SIDX are followed, so hierarchical and daisy-chained indexes give one table.
+ * Each stream (SIDX reference ID) gets its own table, since streams differ in timescale and times interleave.
+ * Entries are in presentation order; look them up with {@link #entryForTime(long)}.
+ * @author escape-llc
+ *
+ */
+public class SegmentTable {
+	// stream the SIDX describe (SegmentIndex.referenceId)
+	public final int referenceId;
+	// units/sec of all times
+	public final int timescale;
+	// presentation time of each subsegment
+	public final long[] time;
+	// absolute file offset of each subsegment
+	public final long[] offset;
+	// bytes in each subsegment
+	public final int[] size;
+	// duration of each subsegment
+	public final int[] duration;
+	// SAP column, as in SegmentIndex
+	public final int[] sap;
+	public SegmentTable(int referenceId, int timescale, long[] time, long[] offset, int[] size, int[] duration, int[] sap) {
+		if(time == null)
+			throw new IllegalArgumentException("time");
+		if(offset == null || offset.length != time.length)
+			throw new IllegalArgumentException("offset");
+		if(size == null || size.length != time.length)
+			throw new IllegalArgumentException("size");
+		if(duration == null || duration.length != time.length)
+			throw new IllegalArgumentException("duration");
+		if(sap == null || sap.length != time.length)
+			throw new IllegalArgumentException("sap");
+		this.referenceId = referenceId;
+		this.timescale = timescale;
+		this.time = time;
+		this.offset = offset;
+		this.size = size;
+		this.duration = duration;
+		this.sap = sap;
+	}
+	/**
+	 * Number of subsegments.
+	 * @return entry count.
+	 */
+	public int size() { return time.length; }
+	/**
+	 * Return the index of the subsegment playing at the given time.
+	 * @param presentationTime time in timescale units.
+	 * @return entry index; -1: before the first subsegment.
+	 */
+	public int entryForTime(long presentationTime) {
+		int lo = 0;
+		int hi = time.length - 1;
+		int found = -1;
+		while(lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if(time[mid] <= presentationTime) {
+				found = mid;
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+	/**
+	 * Flatten the SIDX of each stream into its own table.
+	 * @param boxes all SIDX of the file, in file order.
+	 * @return new array; one table per reference ID, in order of first appearance.
+	 * @throws IllegalArgumentException see {@link #flatten(SegmentIndex[], int)}.
+	 */
+	public static SegmentTable[] flattenAll(SegmentIndex[] boxes) {
+		if(boxes == null || boxes.length == 0)
+			throw new IllegalArgumentException("boxes");
+		final ArrayList<SegmentTable> tables = new ArrayList<SegmentTable>();
+		final HashSet<Integer> seen = new HashSet<Integer>();
+		for(final SegmentIndex si : boxes) {
+			if(seen.add(si.referenceId)) {
+				tables.add(flatten(boxes, si.referenceId));
+			}
+		}
+		return tables.toArray(new SegmentTable[tables.size()]);
+	}
+	/**
+	 * Flatten the SIDX of the given stream into one table.
+	 * Boxes not referenced by another SIDX are roots, and are expanded in the order given.
+	 * @param boxes all SIDX of the file, in file order; those of other streams are ignored.
+	 * @param referenceId stream to flatten.
+	 * @return new instance.
+	 * @throws IllegalArgumentException if the stream has no SIDX, a referenced SIDX is missing, or timescales differ.
+	 */
+	public static SegmentTable flatten(SegmentIndex[] boxes, int referenceId) {
+		if(boxes == null)
+			throw new IllegalArgumentException("boxes");
+		final HashMap<Long, SegmentIndex> byposition = new HashMap<Long, SegmentIndex>();
+		final HashSet<Long> referenced = new HashSet<Long>();
+		SegmentIndex first = null;
+		int capacity = 0;
+		for(final SegmentIndex si : boxes) {
+			if(si.referenceId != referenceId) continue;
+			if(first == null) first = si;
+			byposition.put(si.position, si);
+			capacity += si.size();
+			long ofs = si.anchor + si.firstOffset;
+			for(int ix = 0; ix < si.size(); ix++) {
+				if(si.referenceType[ix] == SegmentIndex.REFERENCE_INDEX) {
+					referenced.add(ofs);
+				}
+				ofs += si.referencedSize[ix];
+			}
+		}
+		if(first == null)
+			throw new IllegalArgumentException(String.format("no sidx for reference ID %d", referenceId));
+		final Flattener fx = new Flattener(referenceId, first.timescale, capacity, byposition);
+		for(final SegmentIndex si : boxes) {
+			if(si.referenceId == referenceId && !referenced.contains(si.position)) {
+				fx.expand(si, si.earliestPresentationTime, 0);
+			}
+		}
+		return fx.render();
+	}
+	/**
+	 * Accumulates subsegments during flatten().
+	 */
+	static final class Flattener {
+		final int referenceId;
+		final int timescale;
+		final HashMap<Long, SegmentIndex> byposition;
+		final long[] time;
+		final long[] offset;
+		final int[] size;
+		final int[] duration;
+		final int[] sap;
+		int count;
+		Flattener(int referenceId, int timescale, int capacity, HashMap<Long, SegmentIndex> byposition) {
+			this.referenceId = referenceId;
+			this.timescale = timescale;
+			this.byposition = byposition;
+			this.time = new long[capacity];
+			this.offset = new long[capacity];
+			this.size = new int[capacity];
+			this.duration = new int[capacity];
+			this.sap = new int[capacity];
+		}
+		void expand(SegmentIndex si, long start, int depth) {
+			if(si.timescale != timescale)
+				throw new IllegalArgumentException(String.format("sidx @%d timescale %d differs from %d", si.position, si.timescale, timescale));
+			// each level is a distinct box, so a cycle exceeds the box count
+			if(depth > byposition.size())
+				throw new IllegalArgumentException(String.format("sidx @%d references loop", si.position));
+			long ofs = si.anchor + si.firstOffset;
+			long tx = start;
+			for(int ix = 0; ix < si.size(); ix++) {
+				if(si.referenceType[ix] == SegmentIndex.REFERENCE_INDEX) {
+					// only boxes of this stream were collected
+					final SegmentIndex child = byposition.get(ofs);
+					if(child == null)
+						throw new IllegalArgumentException(String.format("sidx @%d not found", ofs));
+					expand(child, tx, depth + 1);
+				}
+				else {
+					if(count == time.length)
+						throw new IllegalArgumentException(String.format("sidx @%d referenced more than once", si.position));
+					time[count] = tx;
+					offset[count] = ofs;
+					size[count] = si.referencedSize[ix];
+					duration[count] = si.subsegmentDuration[ix];
+					sap[count] = si.sap[ix];
+					count++;
+				}
+				tx += si.subsegmentDuration[ix] & 0xffffffffL;
+				ofs += si.referencedSize[ix];
+			}
+		}
+		SegmentTable render() {
+			return new SegmentTable(referenceId, timescale, Arrays.copyOf(time, count), Arrays.copyOf(offset, count), Arrays.copyOf(size, count),
+					Arrays.copyOf(duration, count), Arrays.copyOf(sap, count));
+		}
+	}
+}
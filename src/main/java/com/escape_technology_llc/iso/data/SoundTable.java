@@ -17,6 +17,12 @@ package com.escape_technology_llc.iso.data;
 
 import com.escape_technology_llc.iso.box.Box;
 
+/**
+ * Sample table of a track, with sample lookup.
+ * Lookup indexes are built on first use and are safe to share between threads.
+ * @author escape-llc
+ *
+ */
 public class SoundTable {
 	/**
 	 * Information needed to resolve a sample into its chunk location.
@@ -94,12 +100,74 @@ public class SoundTable {
 			return sb.toString();
 		}
 	}
+	/**
+	 * Start of each time-to-sample entry, in samples and media time.
+	 * @author escape-llc
+	 *
+	 */
+	static final class TimeIndex {
+		// first sample (1-relative) of each entry
+		final int[] first;
+		// media time of the first sample of each entry
+		final long[] start;
+		// media time at end of the last sample
+		final long end;
+		TimeIndex(int[] first, long[] start, long end) {
+			this.first = first;
+			this.start = start;
+			this.end = end;
+		}
+		/**
+		 * Return the index of the last entry starting at or before the given sample.
+		 * @param sample sample (1-relative).
+		 * @return entry index.
+		 */
+		int entryForSample(int sample) {
+			int lo = 0;
+			int hi = first.length - 1;
+			while(lo < hi) {
+				final int mid = (lo + hi + 1) >>> 1;
+				if(first[mid] <= sample) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			return lo;
+		}
+		/**
+		 * Return the index of the last entry starting at or before the given time.
+		 * Entries with no samples, or samples of zero duration, share their start with the next entry, so are never chosen
+		 * for a time before the end.
+		 * @param time media time.
+		 * @return entry index.
+		 */
+		int entryForTime(long time) {
+			int lo = 0;
+			int hi = start.length - 1;
+			while(lo < hi) {
+				final int mid = (lo + hi + 1) >>> 1;
+				if(start[mid] <= time) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			return lo;
+		}
+	}
 	public final SampleDescription stsd;
 	public final SampleToChunk stsc;
 	public final TimeToSample stts;
 	public final SyncSample stss;
 	public final SampleSize stsz;
 	public final ChunkOffset stco;
+	// see runs()
+	volatile int[] runs;
+	// see times()
+	volatile TimeIndex times;
 	public SoundTable(SampleDescription stsd, SampleToChunk stsc, TimeToSample stts, SyncSample stss, SampleSize stsz, ChunkOffset stco) {
 		this.stsd = stsd;
 		this.stsc = stsc;
@@ -109,7 +177,110 @@ public class SoundTable {
 		this.stco = stco;
 	}
 	/**
-	 * Scan the sample-to-chunk table for the chunk matching given sample.
+	 * Return the first sample of each sample-to-chunk entry, building it on first use.
+	 * @return first sample (1-relative) of each STSC entry.
+	 */
+	int[] runs() {
+		int[] rx = runs;
+		if(rx == null) {
+			final int[] fc = stsc.firstChunk;
+			rx = new int[fc.length];
+			int samp = 1;
+			for(int ix = 0; ix < fc.length; ix++) {
+				rx[ix] = samp;
+				if(ix + 1 < fc.length) {
+					samp += (fc[ix + 1] - fc[ix])*stsc.samplesPerChunk[ix];
+				}
+			}
+			runs = rx;
+		}
+		return rx;
+	}
+	/**
+	 * Return the time-to-sample index, building it on first use.
+	 * @return the index.
+	 */
+	TimeIndex times() {
+		TimeIndex tx = times;
+		if(tx == null) {
+			if(stts == null)
+				throw new IllegalStateException("stts");
+			if(stts.size() == 0)
+				throw new IllegalStateException("stts.size");
+			final int[] count = stts.count;
+			final int[] first = new int[count.length];
+			final long[] start = new long[count.length];
+			int samp = 1;
+			long time = 0;
+			for(int ix = 0; ix < count.length; ix++) {
+				first[ix] = samp;
+				start[ix] = time;
+				samp += count[ix];
+				time += (long)count[ix]*(stts.duration[ix] & 0xffffffffL);
+			}
+			tx = new TimeIndex(first, start, time);
+			times = tx;
+		}
+		return tx;
+	}
+	/**
+	 * Return the sample playing at the given media time.
+	 * @param mediaTime time in media timescale units (see MediaHeader).
+	 * @return sample (1-relative) whose duration covers the time; times at or past the end give the last sample.
+	 */
+	public int sampleAtTime(long mediaTime) {
+		if(mediaTime < 0)
+			throw new IllegalArgumentException("mediaTime");
+		final TimeIndex tx = times();
+		if(mediaTime >= tx.end) {
+			final int last = tx.first.length - 1;
+			return tx.first[last] + stts.count[last] - 1;
+		}
+		// the entry found always has samples of non-zero duration; see entryForTime
+		final int eix = tx.entryForTime(mediaTime);
+		return tx.first[eix] + (int)((mediaTime - tx.start[eix])/(stts.duration[eix] & 0xffffffffL));
+	}
+	/**
+	 * Return the decode time of the given sample.
+	 * @param sample sample (1-relative).
+	 * @return time in media timescale units.
+	 */
+	public long sampleTime(int sample) {
+		if(sample < 1)
+			throw new IllegalArgumentException("sample");
+		final TimeIndex tx = times();
+		final int eix = tx.entryForSample(sample);
+		return tx.start[eix] + (long)(sample - tx.first[eix])*(stts.duration[eix] & 0xffffffffL);
+	}
+	/**
+	 * Return the nearest sync sample at or before the given sample.
+	 * Without a sync sample table, every sample is a sync sample.
+	 * @param sample sample (1-relative).
+	 * @return sync sample (1-relative); 0: no sync sample at or before the sample.
+	 */
+	public int syncSampleBefore(int sample) {
+		if(sample < 1)
+			throw new IllegalArgumentException("sample");
+		if(stss == null || stss.table == null)
+			return sample;
+		final int[] table = stss.table;
+		int lo = 0;
+		int hi = table.length - 1;
+		int found = 0;
+		while(lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if(table[mid] <= sample) {
+				found = table[mid];
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+	/**
+	 * Binary search the sample-to-chunk table for the chunk matching given sample.
 	 * @param sample sample number (1-relative)
 	 * @return Sample coordinate.
 	 */
@@ -118,47 +289,24 @@ public class SoundTable {
 			throw new IllegalArgumentException ("sample");
 		if(stsc == null)
 			throw new IllegalStateException("stsc");
-		if(stsc.table == null || stsc.table.length == 0)
-			throw new IllegalStateException("stsc.table");
-		if(stsc.table.length == 1) {
-			// all chunks are the same size; shortcut
-			final int spc = stsc.table[0].samplesPerChunk;
-			final int chunk = (sample - 1)/spc;
-			return new SampleCoordinate(chunk + stsc.table[0].firstChunk, (chunk*spc) + 1, sample, stsc.table[0].sampleDescID);
-		}
-		if(sample == 1) {
-			// another shortcut
-			return new SampleCoordinate(stsc.table[0].firstChunk, 1, 1, stsc.table[0].sampleDescID);
-		}
-		int samp = 1;
-		int cidx = 0;
-		int chunk = stsc.table[cidx].firstChunk;
-		int spc = stsc.table[cidx].samplesPerChunk;
-		int sdid = stsc.table[cidx].sampleDescID;
-		int chunk_bpt = stsc.table[cidx + 1].firstChunk;
-		// look ahead to see if we can skip entire range of chunks
-		int spe = (chunk_bpt - chunk)*spc;
-		while(samp + spe < sample) {
-			// advance to the next table entry
-			samp += spe;
-			chunk = chunk_bpt;
-			if(cidx + 1 < stsc.table.length) {
-				cidx++;
-				spc = stsc.table[cidx].samplesPerChunk;
-				sdid = stsc.table[cidx].sampleDescID;
-				if(cidx + 1 < stsc.table.length) {
-					chunk_bpt = stsc.table[cidx + 1].firstChunk;
-					spe = (chunk_bpt - chunk)*spc;
-				}
-				else {
-					// all chunks here on out are the current size
-					break;
-				}
+		if(stsc.size() == 0)
+			throw new IllegalStateException("stsc.size");
+		final int[] rx = runs();
+		// last entry starting at or before sample
+		int lo = 0;
+		int hi = rx.length - 1;
+		while(lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if(rx[mid] <= sample) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
 			}
 		}
-		// at this point chunk == table[cidx].firstChunk && spc == table[cidx].samplesPerChunk
-		final int achunks = (sample - samp)/spc;
-		return new SampleCoordinate(chunk + achunks, samp + achunks*spc, sample, sdid);
+		final int spc = stsc.samplesPerChunk[lo];
+		final int achunks = (sample - rx[lo])/spc;
+		return new SampleCoordinate(stsc.firstChunk[lo] + achunks, rx[lo] + achunks*spc, sample, stsc.sampleDescID[lo]);
 	}
 	/**
 	 * Take the sample coordinate and compute the media coordinate.
@@ -170,11 +318,16 @@ public class SoundTable {
 			throw new IllegalArgumentException("stco");
 		if(stsz == null)
 			throw new IllegalArgumentException("stsz");
-		int cofs = 0;
-		for(int ix = sc.firstSampleInChunk; ix < sc.sample; ix++) {
-			cofs += stsz.get(ix - 1);
-		}
-		return new MediaCoordinate(stco.table[sc.chunk - 1] + cofs, stsz.get(sc.sample - 1), sc.sampleDesc);
+		// the chunk offset locates the chunk; the size checkpoints bound the sum within it
+		final long cofs = stsz.sum(sc.firstSampleInChunk - 1, sc.sample - 1);
+		return new MediaCoordinate(stco.get(sc.chunk - 1) + cofs, stsz.get(sc.sample - 1), sc.sampleDesc);
+	}
+	/**
+	 * Return a new cursor positioned before the first sample.
+	 * @return new instance.
+	 */
+	public SampleCursor cursor() {
+		return new SampleCursor(this);
 	}
 	/**
 	 * Convenience method to go from sample to media coordinate.
@@ -15,6 +15,13 @@ limitations under the License.
 */
 package com.escape_technology_llc.iso.data;
 
+/**
+ * Time-to-sample table (stts).
+ * Each row is a run of samples sharing one duration; {@link SoundTable} reads the count and duration
+ * columns directly for sample/time conversion.
+ * @author escape-llc
+ *
+ */
 public class TimeToSample {
 	public static class Entry {
 		public final int count;
@@ -24,23 +31,70 @@ public class TimeToSample {
 			this.duration = duration;
 		}
 	}
-	public final Entry[] table;
+	// number of consecutive samples with the same duration
+	public final int[] count;
+	// sample duration, in media timescale units
+	public final int[] duration;
+	// see table()
+	volatile Entry[] table;
+	/**
+	 * Ctor.
+	 * @param count sample count column.
+	 * @param duration sample duration column; same length as count.
+	 */
+	public TimeToSample(int[] count, int[] duration) {
+		if(count == null)
+			throw new IllegalArgumentException("count");
+		if(duration == null || duration.length != count.length)
+			throw new IllegalArgumentException("duration");
+		this.count = count;
+		this.duration = duration;
+	}
+	/**
+	 * Ctor.
+	 * @param entries source entries.
+	 */
 	public TimeToSample(Entry[] entries) {
+		this(new int[entries.length], new int[entries.length]);
+		for(int ix = 0; ix < entries.length; ix++) {
+			count[ix] = entries[ix].count;
+			duration[ix] = entries[ix].duration;
+		}
 		this.table = entries;
 	}
+	/**
+	 * Number of entries.
+	 * @return entry count.
+	 */
+	public int size() { return count.length; }
+	/**
+	 * Return the entries as objects, building them on first use.
+	 * @return entries.
+	 */
+	public Entry[] table() {
+		Entry[] tx = table;
+		if(tx == null) {
+			tx = new Entry[count.length];
+			for(int ix = 0; ix < tx.length; ix++) {
+				tx[ix] = new Entry(count[ix], duration[ix]);
+			}
+			table = tx;
+		}
+		return tx;
+	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		sb.append(table.length);
+		sb.append(count.length);
 		sb.append("] ");
-		for(int ix = 0; ix < table.length; ix++) {
+		for(int ix = 0; ix < count.length; ix++) {
 			if(ix > 0) sb.append(", ");
 			sb.append("{ct=");
-			sb.append(table[ix].count);
+			sb.append(count[ix]);
 			sb.append(",dur=");
-			sb.append(table[ix].duration);
+			sb.append(duration[ix]);
 			sb.append("}");
-			if(table.length > 10 && ix == 10) {
+			if(count.length > 10 && ix == 10) {
 				sb.append("...");
 				break;
 			}
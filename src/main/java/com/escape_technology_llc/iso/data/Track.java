@@ -24,7 +24,12 @@ public class Track {
 	public final TrackRef tref;
 	public final DataRef dref;
 	public final SoundTable stbl;
+	// samples in movie fragments; NULL if none
+	public final FragmentIndex fragments;
 	public Track(TrackHeader thdr, MediaHeader mdhd, Handler_V0 mhdlr, Handler_V0 dhdlr, EditList_V0 elst, TrackRef tref, DataRef dref, SoundTable stbl) {
+		this(thdr, mdhd, mhdlr, dhdlr, elst, tref, dref, stbl, null);
+	}
+	public Track(TrackHeader thdr, MediaHeader mdhd, Handler_V0 mhdlr, Handler_V0 dhdlr, EditList_V0 elst, TrackRef tref, DataRef dref, SoundTable stbl, FragmentIndex fragments) {
 		this.tkhd = thdr;
 		this.mdhd = mdhd;
 		this.mhdlr = mhdlr;
@@ -33,6 +38,7 @@ public class Track {
 		this.tref = tref;
 		this.dref = dref;
 		this.stbl = stbl;
+		this.fragments = fragments;
 	}
 	@Override public String toString() {
 		final StringBuilder sb = new StringBuilder();
@@ -52,6 +58,10 @@ public class Track {
 		sb.append(elst);
 		sb.append("\nSTBL\n");
 		sb.append(stbl);
+		if(fragments != null) {
+			sb.append("\nFRAG ");
+			sb.append(fragments);
+		}
 		return sb.toString();
 	}
 }
@@ -0,0 +1,53 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Track extends (trex); per-track defaults for movie fragments.
+ * @author escape-llc
+ *
+ */
+public class TrackExtends {
+	public final int trackId;
+	// sample description (1-relative)
+	public final int defaultSampleDescriptionIndex;
+	// in media timescale units
+	public final int defaultSampleDuration;
+	public final int defaultSampleSize;
+	// see TrackRun.SAMPLE_IS_NON_SYNC
+	public final int defaultSampleFlags;
+	public TrackExtends(int trackId, int sdi, int duration, int size, int flags) {
+		this.trackId = trackId;
+		this.defaultSampleDescriptionIndex = sdi;
+		this.defaultSampleDuration = duration;
+		this.defaultSampleSize = size;
+		this.defaultSampleFlags = flags;
+	}
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("track: ");
+		sb.append(trackId);
+		sb.append(",sd: ");
+		sb.append(defaultSampleDescriptionIndex);
+		sb.append(",duration: ");
+		sb.append(defaultSampleDuration);
+		sb.append(",size: ");
+		sb.append(defaultSampleSize);
+		sb.append(",flags: ");
+		sb.append(Integer.toHexString(defaultSampleFlags));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Track fragment header (tfhd).
+ * Optional fields are only meaningful if their flag is set; use the has methods.
+ * @author escape-llc
+ *
+ */
+public class TrackFragmentHeader {
+	public static final int FLAGS_BASE_DATA_OFFSET = 0x000001;
+	public static final int FLAGS_SAMPLE_DESCRIPTION_INDEX = 0x000002;
+	public static final int FLAGS_DEFAULT_SAMPLE_DURATION = 0x000008;
+	public static final int FLAGS_DEFAULT_SAMPLE_SIZE = 0x000010;
+	public static final int FLAGS_DEFAULT_SAMPLE_FLAGS = 0x000020;
+	public static final int FLAGS_DURATION_IS_EMPTY = 0x010000;
+	public static final int FLAGS_DEFAULT_BASE_IS_MOOF = 0x020000;
+	public final int flags;
+	public final int trackId;
+	// absolute file offset
+	public final long baseDataOffset;
+	// sample description (1-relative)
+	public final int sampleDescriptionIndex;
+	public final int defaultSampleDuration;
+	public final int defaultSampleSize;
+	public final int defaultSampleFlags;
+	public TrackFragmentHeader(int flags, int trackId, long baseDataOffset, int sdi, int duration, int size, int sflags) {
+		this.flags = flags;
+		this.trackId = trackId;
+		this.baseDataOffset = baseDataOffset;
+		this.sampleDescriptionIndex = sdi;
+		this.defaultSampleDuration = duration;
+		this.defaultSampleSize = size;
+		this.defaultSampleFlags = sflags;
+	}
+	public boolean hasBaseDataOffset() { return (flags & FLAGS_BASE_DATA_OFFSET) != 0; }
+	public boolean hasSampleDescriptionIndex() { return (flags & FLAGS_SAMPLE_DESCRIPTION_INDEX) != 0; }
+	public boolean hasDefaultSampleDuration() { return (flags & FLAGS_DEFAULT_SAMPLE_DURATION) != 0; }
+	public boolean hasDefaultSampleSize() { return (flags & FLAGS_DEFAULT_SAMPLE_SIZE) != 0; }
+	public boolean hasDefaultSampleFlags() { return (flags & FLAGS_DEFAULT_SAMPLE_FLAGS) != 0; }
+	public boolean isDefaultBaseMoof() { return (flags & FLAGS_DEFAULT_BASE_IS_MOOF) != 0; }
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("track: ");
+		sb.append(trackId);
+		sb.append(",flags: ");
+		sb.append(Integer.toHexString(flags));
+		if(hasBaseDataOffset()) {
+			sb.append(",base: ");
+			sb.append(baseDataOffset);
+		}
+		if(hasDefaultSampleDuration()) {
+			sb.append(",duration: ");
+			sb.append(defaultSampleDuration);
+		}
+		if(hasDefaultSampleSize()) {
+			sb.append(",size: ");
+			sb.append(defaultSampleSize);
+		}
+		return sb.toString();
+	}
+}
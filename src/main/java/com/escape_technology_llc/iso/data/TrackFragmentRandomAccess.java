@@ -0,0 +1,117 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Track fragment random access (tfra); seek table from media time to MOOF.
+ * Entries are stored as parallel columns in increasing time order.
+ * @author escape-llc
+ *
+ */
+public class TrackFragmentRandomAccess {
+	public final int trackId;
+	// presentation time of the sync sample, in media timescale units
+	public final long[] time;
+	// absolute file offset of the MOOF holding the sync sample
+	public final long[] moofOffset;
+	// TRAF (1-relative) within the MOOF
+	public final int[] trafNumber;
+	// TRUN (1-relative) within the TRAF
+	public final int[] trunNumber;
+	// sample (1-relative) within the TRUN
+	public final int[] sampleNumber;
+	/**
+	 * Ctor.
+	 * @param trackId owning track.
+	 * @param time time column.
+	 * @param moofOffset MOOF offset column; same length as time.
+	 * @param trafNumber TRAF column; same length as time.
+	 * @param trunNumber TRUN column; same length as time.
+	 * @param sampleNumber sample column; same length as time.
+	 */
+	public TrackFragmentRandomAccess(int trackId, long[] time, long[] moofOffset, int[] trafNumber, int[] trunNumber, int[] sampleNumber) {
+		if(time == null)
+			throw new IllegalArgumentException("time");
+		if(moofOffset == null || moofOffset.length != time.length)
+			throw new IllegalArgumentException("moofOffset");
+		if(trafNumber == null || trafNumber.length != time.length)
+			throw new IllegalArgumentException("trafNumber");
+		if(trunNumber == null || trunNumber.length != time.length)
+			throw new IllegalArgumentException("trunNumber");
+		if(sampleNumber == null || sampleNumber.length != time.length)
+			throw new IllegalArgumentException("sampleNumber");
+		this.trackId = trackId;
+		this.time = time;
+		this.moofOffset = moofOffset;
+		this.trafNumber = trafNumber;
+		this.trunNumber = trunNumber;
+		this.sampleNumber = sampleNumber;
+	}
+	/**
+	 * Number of entries.
+	 * @return entry count.
+	 */
+	public int size() { return time.length; }
+	/**
+	 * Return the index of the last entry at or before the given time.
+	 * @param mediaTime time in media timescale units.
+	 * @return entry index; -1: no entry at or before the time.
+	 */
+	public int entryForTime(long mediaTime) {
+		int lo = 0;
+		int hi = time.length - 1;
+		int found = -1;
+		while(lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if(time[mid] <= mediaTime) {
+				found = mid;
+				lo = mid + 1;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+	/**
+	 * Return the offset of the MOOF to start decoding from for the given time.
+	 * @param mediaTime time in media timescale units.
+	 * @return absolute file offset; -1: no entry at or before the time.
+	 */
+	public long moofForTime(long mediaTime) {
+		final int ix = entryForTime(mediaTime);
+		return ix < 0 ? -1L : moofOffset[ix];
+	}
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("track: ");
+		sb.append(trackId);
+		sb.append(" [");
+		sb.append(time.length);
+		sb.append("] ");
+		for(int ix = 0; ix < time.length; ix++) {
+			if(ix > 0) sb.append(", ");
+			sb.append(time[ix]);
+			sb.append("@");
+			sb.append(moofOffset[ix]);
+			if(time.length > 10 && ix == 10) {
+				sb.append("...");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc.iso.data;
+
+/**
+ * Track fragment run (trun).
+ * Per-sample fields are parallel columns; a column is NULL if the run does not carry it,
+ * in which case the track fragment or track extends default applies.
+ * @author escape-llc
+ *
+ */
+public class TrackRun {
+	public static final int FLAGS_DATA_OFFSET = 0x000001;
+	public static final int FLAGS_FIRST_SAMPLE_FLAGS = 0x000004;
+	public static final int FLAGS_SAMPLE_DURATION = 0x000100;
+	public static final int FLAGS_SAMPLE_SIZE = 0x000200;
+	public static final int FLAGS_SAMPLE_FLAGS = 0x000400;
+	public static final int FLAGS_SAMPLE_COMPOSITION_TIME_OFFSET = 0x000800;
+	// sample flags bit: not a sync sample
+	public static final int SAMPLE_IS_NON_SYNC = 0x00010000;
+	public final int flags;
+	public final int count;
+	// relative to the base data offset
+	public final int dataOffset;
+	public final int firstSampleFlags;
+	public final int[] duration;
+	public final int[] size;
+	public final int[] sampleFlags;
+	public final int[] compositionOffset;
+	public TrackRun(int flags, int count, int dataOffset, int firstSampleFlags, int[] duration, int[] size, int[] sampleFlags, int[] compositionOffset) {
+		if(count < 0)
+			throw new IllegalArgumentException("count");
+		this.flags = flags;
+		this.count = count;
+		this.dataOffset = dataOffset;
+		this.firstSampleFlags = firstSampleFlags;
+		this.duration = duration;
+		this.size = size;
+		this.sampleFlags = sampleFlags;
+		this.compositionOffset = compositionOffset;
+	}
+	public boolean hasDataOffset() { return (flags & FLAGS_DATA_OFFSET) != 0; }
+	public boolean hasFirstSampleFlags() { return (flags & FLAGS_FIRST_SAMPLE_FLAGS) != 0; }
+	@Override public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		sb.append(count);
+		sb.append("] flags: ");
+		sb.append(Integer.toHexString(flags));
+		if(hasDataOffset()) {
+			sb.append(",offset: ");
+			sb.append(dataOffset);
+		}
+		return sb.toString();
+	}
+}
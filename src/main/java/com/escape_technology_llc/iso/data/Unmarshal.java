@@ -16,6 +16,7 @@ limitations under the License.
 package com.escape_technology_llc.iso.data;
 
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 public final class Unmarshal {
 	// important to use this encoding, otherwise the meta tags will not parse correctly, due to using the copyright character!
@@ -114,6 +115,75 @@ public final class Unmarshal {
 			throw new IndexOutOfBoundsException("getString ran out of buffer, no NUL detected");
 		return new String(buf, offset + 1, lg, ENCODING);
 	}
+	/**
+	 * extract big-endian Int24 value from buffer.
+	 * @param buf source buffer.
+	 * @param offset absolute buffer index.
+	 * @return value.
+	 */
+	public static int getInt24(ByteBuffer buf, int offset) {
+	    int value = buf.get(offset) << Byte.SIZE * 2;
+	    value ^= (buf.get(offset + 1) & 0xFF) << Byte.SIZE * 1;
+	    value ^= (buf.get(offset + 2) & 0xFF) << Byte.SIZE * 0;
+	    return value;
+	}
+	/**
+	 * Extract bytes in network order to String[4].
+	 * @param buf input buffer.
+	 * @param offset absolute buffer index.
+	 * @return new instance.
+	 */
+	public static String getType(ByteBuffer buf, int offset) {
+		// ISO-8859-1 maps each byte directly to the same code point
+		final char[] cx = new char[4];
+		for(int ix = 0; ix < cx.length; ix++) {
+			cx[ix] = (char)(buf.get(offset + ix) & 0xFF);
+		}
+		return new String(cx);
+	}
+	/**
+	 * NUL-terminated string ala C.
+	 * String ends at NUL or the buffer limit.
+	 * @param buf input buffer.
+	 * @param offset absolute buffer index.
+	 * @return new instance.
+	 * @throws Exception on errors.
+	 */
+	public static String getString(ByteBuffer buf, int offset) throws Exception {
+		int ix = offset;
+		for(; ix < buf.limit(); ix++) {
+			if(buf.get(ix) == '\0') break;
+		}
+		return new String(getBytes(buf, offset, ix - offset), ENCODING);
+	}
+	/**
+	 * Length-prefixed string ala Pascal.
+	 * @param buf input buffer.
+	 * @param offset absolute buffer index.
+	 * @return new instance.
+	 * @throws Exception on errors.
+	 */
+	public static String getPascalString(ByteBuffer buf, int offset) throws Exception {
+		final int lg = buf.get(offset) & 0xFF;
+		if(offset + 1 + lg > buf.limit())
+			throw new IndexOutOfBoundsException("getPascalString ran out of buffer");
+		return new String(getBytes(buf, offset + 1, lg), ENCODING);
+	}
+	/**
+	 * Copy a range of bytes out of the buffer.
+	 * Does not move the buffer position.
+	 * @param buf input buffer.
+	 * @param offset absolute buffer index.
+	 * @param length number of bytes.
+	 * @return new instance.
+	 */
+	public static byte[] getBytes(ByteBuffer buf, int offset, int length) {
+		final byte[] value = new byte[length];
+		final ByteBuffer dup = buf.duplicate();
+		dup.position(offset);
+		dup.get(value);
+		return value;
+	}
 	/**
 	 * Extract bytes in network order to String[4].
 	 * @param raf source file.
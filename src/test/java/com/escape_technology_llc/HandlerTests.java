@@ -9,7 +9,12 @@ import org.junit.Test;
 
 import com.escape_technology_llc.iso.ISOParser;
 import com.escape_technology_llc.iso.NullHandler;
+import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.box.handler.BoxDispatch;
 import com.escape_technology_llc.iso.box.handler.IsoContainerHandler;
+import com.escape_technology_llc.iso.box.handler.SoundTableHandler;
 import com.escape_technology_llc.iso.box.handler.TrackHandler;
 import com.escape_technology_llc.iso.data.Handler_V0;
 import com.escape_technology_llc.iso.data.IsoMediaContainer;
@@ -120,4 +125,57 @@ public class HandlerTests {
 			assertNotNull("tracks[1].stbl failed", imc.tracks[1].stbl);
 		}
 	}
+	@Test
+	public void isoContainerHandler_Dispatch() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 500;
+			gen.write(fx);
+			final int[] seen = new int[2];
+			// add a box type to the track table
+			final BoxDispatch<TrackHandler> trak = TrackHandler.dispatch();
+			trak.put("smhd", new BoxDispatch.Action<TrackHandler>() {
+				public void box(TrackHandler th, ParseContext pc, Box box) throws Exception {
+					seen[0]++;
+				}
+			});
+			// wrap a built-in action of the sample table
+			final BoxDispatch<SoundTableHandler> stbl = SoundTableHandler.dispatch();
+			final BoxDispatch.Action<SoundTableHandler> stts = stbl.get(FourCC.STTS);
+			assertNotNull("get failed", stts);
+			stbl.put(FourCC.STTS, new BoxDispatch.Action<SoundTableHandler>() {
+				public void box(SoundTableHandler sh, ParseContext pc, Box box) throws Exception {
+					seen[1]++;
+					stts.box(sh, pc, box);
+				}
+			});
+			final IsoContainerHandler tx = new IsoContainerHandler(true, true, null, null, trak, stbl);
+			ISOParser.parse(fx, new NullHandler(), tx);
+			final IsoMediaContainer imc = tx.render();
+			assertEquals("smhd failed", 2, seen[0]);
+			assertEquals("stts failed", 2, seen[1]);
+			assertEquals("tracks.length failed", 2, imc.tracks.length);
+			assertNotNull("stts failed", imc.tracks[1].stbl.stts);
+			// defaults unchanged
+			assertNull("default failed", TrackHandler.dispatch().get(FourCC.of("smhd")));
+			// growth and removal
+			final BoxDispatch<TrackHandler> bd = new BoxDispatch<TrackHandler>();
+			for(int ix = 0; ix < 100; ix++) {
+				bd.put(ix*16, trak.get(FourCC.TKHD));
+			}
+			assertEquals("size failed", 100, bd.size());
+			for(int ix = 0; ix < 100; ix += 2) {
+				bd.put(ix*16, null);
+			}
+			assertEquals("remove failed", 50, bd.size());
+			for(int ix = 0; ix < 100; ix++) {
+				assertEquals("get(" + ix + ") failed", ix % 2 == 1, bd.get(ix*16) != null);
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
 }
@@ -0,0 +1,565 @@
+/*
+Copyright 2016 eScape Technology LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.escape_technology_llc;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Deterministic generator of synthetic ISO BMFF audio files, for scale tests and benchmarks.
+ * Every track is AAC-like sound (mp4a, 44.1kHz, 1024 samples per frame).
+ * Sample sizes come from a seeded generator, so equal settings produce identical files.
+ * Media data is not written, only reserved; on most file systems the mdat payload is sparse,
+ * which makes files with tens of millions of samples cheap to create.
+ * Set the fields, then call {@link #write(File)}.
+ * @author escape-llc
+ *
+ */
+public final class IsoGenerator {
+	static final int TIMESCALE = 44100;
+	static final int DURATION = 1024;
+	static final int MOVIE_TIMESCALE = 1000;
+	// number of sound tracks
+	public int tracks = 1;
+	// samples per track
+	public int samples = 1000;
+	// smallest sample size; equal to maxSize gives a constant-size stsz with no table
+	public int minSize = 100;
+	// largest sample size
+	public int maxSize = 300;
+	// samples-per-chunk values, cycled through; each value gives one stsc run
+	public int[] samplesPerChunk = { 22, 21 };
+	// number of consecutive chunks in each stsc run
+	public int chunksPerRun = 1;
+	// true: moov follows mdat; ignored when fragmented
+	public boolean moovAtEnd;
+	// true: every box uses the 64-bit length form
+	public boolean largeSizes;
+	// >0: fragmented layout with this many samples per track per moof/mdat pair; the moov holds empty sample tables
+	public int fragmentSamples;
+	// true: fragmented layout ends with mfra (one tfra entry per moof) and the mfro footer
+	public boolean randomAccess;
+	// true: fragmented layout has a sidx per track before the first moof, with one reference per moof/mdat pair
+	public boolean segmentIndex;
+	// >0: write stz2 with this field size (4, 8 or 16) instead of stsz; sizes must fit
+	public int compactSizes;
+	// seed for sample sizes
+	public long seed = 1;
+	/**
+	 * Growable big-endian buffer with nested box framing.
+	 */
+	static final class Out {
+		byte[] buf = new byte[4096];
+		int size;
+		final int[] stack = new int[32];
+		int depth;
+		boolean large;
+		void ensure(int more) {
+			if(size + more > buf.length) {
+				long cap = Math.max((long)buf.length*2, (long)size + more);
+				if(cap > Integer.MAX_VALUE - 8)
+					throw new IllegalStateException("box exceeds 2GB");
+				buf = Arrays.copyOf(buf, (int)cap);
+			}
+		}
+		Out u8(int vx) {
+			ensure(1);
+			buf[size++] = (byte)vx;
+			return this;
+		}
+		Out u16(int vx) {
+			ensure(2);
+			buf[size++] = (byte)(vx >> 8);
+			buf[size++] = (byte)vx;
+			return this;
+		}
+		Out u32(long vx) {
+			ensure(4);
+			buf[size++] = (byte)(vx >> 24);
+			buf[size++] = (byte)(vx >> 16);
+			buf[size++] = (byte)(vx >> 8);
+			buf[size++] = (byte)vx;
+			return this;
+		}
+		Out u64(long vx) {
+			u32(vx >>> 32);
+			return u32(vx);
+		}
+		Out type(String type) {
+			for(int ix = 0; ix < 4; ix++) {
+				u8(type.charAt(ix));
+			}
+			return this;
+		}
+		Out zeros(int count) {
+			ensure(count);
+			size += count;
+			return this;
+		}
+		Out begin(String type) {
+			stack[depth++] = size;
+			if(large) {
+				u32(1);
+				type(type);
+				u64(0);
+			}
+			else {
+				u32(0);
+				type(type);
+			}
+			return this;
+		}
+		Out full(String type, int version, int flags) {
+			begin(type);
+			return u32(((long)version << 24) | (flags & 0xffffff));
+		}
+		Out end() {
+			final int start = stack[--depth];
+			final long length = size - start;
+			if(large) {
+				put64(start + 8, length);
+			}
+			else {
+				put32(start, length);
+			}
+			return this;
+		}
+		void put32(int at, long vx) {
+			buf[at] = (byte)(vx >> 24);
+			buf[at + 1] = (byte)(vx >> 16);
+			buf[at + 2] = (byte)(vx >> 8);
+			buf[at + 3] = (byte)vx;
+		}
+		void put64(int at, long vx) {
+			put32(at, vx >>> 32);
+			put32(at + 4, vx);
+		}
+	}
+	/**
+	 * Chunk layout of one track.
+	 */
+	static final class Track {
+		final int id;
+		final int[] sizes;
+		final int constant;
+		// samples in each chunk
+		int[] chunks;
+		int nchunks;
+		// file offset of each chunk
+		long[] offsets;
+		Track(int id, int[] sizes, int constant) {
+			this.id = id;
+			this.sizes = sizes;
+			this.constant = constant;
+		}
+		int size(int sample) {
+			return sizes == null ? constant : sizes[sample];
+		}
+	}
+	/**
+	 * Write the file.
+	 * @param fx target file; overwritten.
+	 * @throws Exception on errors.
+	 */
+	public void write(File fx) throws Exception {
+		if(fx == null)
+			throw new IllegalArgumentException("fx");
+		if(tracks < 1)
+			throw new IllegalArgumentException("tracks");
+		if(samples < 1)
+			throw new IllegalArgumentException("samples");
+		if(minSize < 1 || maxSize < minSize)
+			throw new IllegalArgumentException("minSize/maxSize");
+		if(compactSizes != 0 && compactSizes != 4 && compactSizes != 8 && compactSizes != 16)
+			throw new IllegalArgumentException("compactSizes");
+		if(compactSizes > 0 && maxSize >= 1 << compactSizes)
+			throw new IllegalArgumentException("compactSizes/maxSize");
+		if(samplesPerChunk == null || samplesPerChunk.length == 0)
+			throw new IllegalArgumentException("samplesPerChunk");
+		for(final int spc : samplesPerChunk) {
+			if(spc < 1)
+				throw new IllegalArgumentException("samplesPerChunk");
+		}
+		if(chunksPerRun < 1)
+			throw new IllegalArgumentException("chunksPerRun");
+		final Track[] tks = new Track[tracks];
+		long payload = 0;
+		for(int tx = 0; tx < tracks; tx++) {
+			tks[tx] = track(tx + 1);
+			for(int ix = 0; ix < samples; ix++) {
+				payload += tks[tx].size(ix);
+			}
+		}
+		final RandomAccessFile raf = new RandomAccessFile(fx, "rw");
+		try {
+			raf.setLength(0);
+			final Out ftyp = new Out();
+			ftyp.large = largeSizes;
+			ftyp.begin("ftyp").type("M4A ").u32(0).type("M4A ").type("mp42").type("isom").end();
+			raf.write(ftyp.buf, 0, ftyp.size);
+			if(fragmentSamples > 0) {
+				writeFragmented(raf, tks);
+			}
+			else {
+				writeFlat(raf, tks, ftyp.size, payload);
+			}
+		}
+		finally {
+			raf.close();
+		}
+	}
+	/**
+	 * Single moov and mdat, with the moov before or after.
+	 */
+	void writeFlat(RandomAccessFile raf, Track[] tks, long base, long payload) throws Exception {
+		final boolean bigmdat = bigmdat(payload);
+		final int mdathdr = bigmdat ? 16 : 8;
+		// chunk offsets do not change the size of the moov, so measure it first
+		final boolean co64 = base + mdathdr + payload + moov(tks, false).size > 0xffffffffL;
+		final int moovsize = moov(tks, co64).size;
+		final long data = base + (moovAtEnd ? 0 : moovsize) + mdathdr;
+		// interleave chunks across tracks
+		long ofs = data;
+		final int[] next = new int[tks.length];
+		final int[] sample = new int[tks.length];
+		for(boolean more = true; more; ) {
+			more = false;
+			for(int tx = 0; tx < tks.length; tx++) {
+				final Track tk = tks[tx];
+				final int cx = next[tx];
+				if(cx >= tk.nchunks) continue;
+				tk.offsets[cx] = ofs;
+				for(int sx = 0; sx < tk.chunks[cx]; sx++) {
+					ofs += tk.size(sample[tx]++);
+				}
+				next[tx]++;
+				more = true;
+			}
+		}
+		final Out moov = moov(tks, co64);
+		if(!moovAtEnd) {
+			raf.write(moov.buf, 0, moov.size);
+		}
+		mdat(raf, payload, bigmdat);
+		if(moovAtEnd) {
+			raf.write(moov.buf, 0, moov.size);
+		}
+	}
+	/**
+	 * Initial moov with empty tables and mvex, then moof/mdat pairs.
+	 */
+	void writeFragmented(RandomAccessFile raf, Track[] tks) throws Exception {
+		final Out moov = moov(tks, false);
+		raf.write(moov.buf, 0, moov.size);
+		final int nfrags = (samples + fragmentSamples - 1)/fragmentSamples;
+		final long[] payload = new long[nfrags];
+		final int[] moofsize = new int[nfrags];
+		for(int fx = 0; fx < nfrags; fx++) {
+			final int first = fx*fragmentSamples;
+			final int count = Math.min(fragmentSamples, samples - first);
+			for(final Track tk : tks) {
+				for(int ix = first; ix < first + count; ix++) {
+					payload[fx] += tk.size(ix);
+				}
+			}
+			// data offsets do not change the size of the moof, so measure it first
+			moofsize[fx] = moof(tks, fx + 1, first, count, 0).size;
+		}
+		if(segmentIndex) {
+			// one sidx per track, all before the first moof; each skips the ones after it
+			final int sidxsize = sidx(tks[0], payload, moofsize, 0).size;
+			for(int tx = 0; tx < tks.length; tx++) {
+				final Out sidx = sidx(tks[tx], payload, moofsize, (long)(tks.length - 1 - tx)*sidxsize);
+				raf.write(sidx.buf, 0, sidx.size);
+			}
+		}
+		final long[] moofs = new long[nfrags];
+		for(int fx = 0; fx < nfrags; fx++) {
+			final int first = fx*fragmentSamples;
+			final int count = Math.min(fragmentSamples, samples - first);
+			final boolean bigmdat = bigmdat(payload[fx]);
+			final Out moof = moof(tks, fx + 1, first, count, moofsize[fx] + (bigmdat ? 16 : 8));
+			moofs[fx] = raf.getFilePointer();
+			raf.write(moof.buf, 0, moof.size);
+			mdat(raf, payload[fx], bigmdat);
+		}
+		if(randomAccess) {
+			final Out mfra = mfra(tks, moofs);
+			raf.write(mfra.buf, 0, mfra.size);
+		}
+	}
+	/**
+	 * Return whether the mdat needs the 64-bit length form.
+	 * Payloads from 2GB to 4GB keep the 32-bit form, with the high bit of the size set.
+	 */
+	boolean bigmdat(long payload) {
+		return largeSizes || payload + 8 > 0xffffffffL;
+	}
+	/**
+	 * Segment index of one track, with one media reference per moof/mdat pair.
+	 * The first pair starts first bytes after the sidx.
+	 */
+	Out sidx(Track tk, long[] payload, int[] moofsize, long first) {
+		final Out out = new Out();
+		out.large = largeSizes;
+		// version 1: 64-bit earliest presentation time and first offset
+		out.full("sidx", 1, 0).u32(tk.id).u32(TIMESCALE).u64(0).u64(first).u16(0).u16(payload.length);
+		for(int fx = 0; fx < payload.length; fx++) {
+			final int count = Math.min(fragmentSamples, samples - fx*fragmentSamples);
+			final long size = moofsize[fx] + (bigmdat(payload[fx]) ? 16 : 8) + payload[fx];
+			// reference type 0 (media); starts with SAP type 1
+			out.u32(size).u32((long)count*DURATION).u32(0x90000000L);
+		}
+		out.end();
+		return out;
+	}
+	/**
+	 * Random access index; every moof starts with a sync sample of each track.
+	 */
+	Out mfra(Track[] tks, long[] moofs) {
+		final Out out = new Out();
+		out.begin("mfra");
+		for(final Track tk : tks) {
+			// version 1; traf, trun and sample numbers 1 byte each
+			out.full("tfra", 1, 0).u32(tk.id).u32(0).u32(moofs.length);
+			for(int ix = 0; ix < moofs.length; ix++) {
+				out.u64((long)ix*fragmentSamples*DURATION).u64(moofs[ix]).u8(1).u8(1).u8(1);
+			}
+			out.end();
+		}
+		// mfro is the last box of the mfra and holds the size of the mfra
+		out.full("mfro", 0, 0).u32(0).end();
+		out.put32(out.size - 4, out.size);
+		out.end();
+		return out;
+	}
+	/**
+	 * Write the mdat header and reserve the payload.
+	 */
+	void mdat(RandomAccessFile raf, long payload, boolean big) throws Exception {
+		final Out hdr = new Out();
+		if(big) {
+			hdr.u32(1).type("mdat").u64(payload + 16);
+		}
+		else {
+			hdr.u32(payload + 8).type("mdat");
+		}
+		raf.write(hdr.buf, 0, hdr.size);
+		final long end = raf.getFilePointer() + payload;
+		raf.setLength(end);
+		raf.seek(end);
+	}
+	/**
+	 * Build sample sizes and chunk layout for one track.
+	 */
+	Track track(int id) {
+		final Track tk;
+		if(minSize == maxSize) {
+			tk = new Track(id, null, minSize);
+		}
+		else {
+			final int[] sizes = new int[samples];
+			final int range = maxSize - minSize + 1;
+			long state = seed*31 + id;
+			for(int ix = 0; ix < samples; ix++) {
+				state = state*6364136223846793005L + 1442695040888963407L;
+				sizes[ix] = minSize + (int)((state >>> 33) % range);
+			}
+			tk = new Track(id, sizes, 0);
+		}
+		int[] chunks = new int[1024];
+		int nchunks = 0;
+		for(int remain = samples, run = 0; remain > 0; run++) {
+			final int spc = samplesPerChunk[run % samplesPerChunk.length];
+			for(int cx = 0; cx < chunksPerRun && remain > 0; cx++) {
+				if(nchunks == chunks.length) {
+					chunks = Arrays.copyOf(chunks, nchunks*2);
+				}
+				chunks[nchunks++] = Math.min(spc, remain);
+				remain -= spc;
+			}
+		}
+		tk.chunks = chunks;
+		tk.nchunks = nchunks;
+		tk.offsets = new long[nchunks];
+		return tk;
+	}
+	Out moov(Track[] tks, boolean co64) {
+		final long mduration = (long)samples*DURATION;
+		final long duration = mduration*MOVIE_TIMESCALE/TIMESCALE;
+		final int version = mduration > 0xffffffffL ? 1 : 0;
+		final boolean fragmented = fragmentSamples > 0;
+		final Out out = new Out();
+		out.large = largeSizes;
+		out.begin("moov");
+		out.full("mvhd", version, 0);
+		times(out, version, MOVIE_TIMESCALE, fragmented ? 0 : duration);
+		out.u32(0x00010000).u16(0x0100).zeros(10);
+		matrix(out);
+		out.zeros(24).u32(tks.length + 1);
+		out.end();
+		for(final Track tk : tks) {
+			out.begin("trak");
+			out.full("tkhd", version, 7);
+			if(version == 1) {
+				out.u64(0).u64(0).u32(tk.id).u32(0).u64(fragmented ? 0 : duration);
+			}
+			else {
+				out.u32(0).u32(0).u32(tk.id).u32(0).u32(fragmented ? 0 : duration);
+			}
+			out.zeros(8).u16(0).u16(0).u16(0x0100).u16(0);
+			matrix(out);
+			out.u32(0).u32(0);
+			out.end();
+			out.begin("mdia");
+			out.full("mdhd", version, 0);
+			times(out, version, TIMESCALE, fragmented ? 0 : mduration);
+			out.u16(0x55c4).u16(0);
+			out.end();
+			out.full("hdlr", 0, 0).u32(0).type("soun").zeros(12);
+			for(final char cx : "SoundHandler".toCharArray()) {
+				out.u8(cx);
+			}
+			out.u8(0).end();
+			out.begin("minf");
+			out.full("smhd", 0, 0).u16(0).u16(0).end();
+			out.begin("dinf");
+			out.full("dref", 0, 0).u32(1);
+			out.full("url ", 0, 1).end();
+			out.end();
+			out.end();
+			out.begin("stbl");
+			out.full("stsd", 0, 0).u32(1);
+			out.begin("mp4a").zeros(6).u16(1).zeros(8).u16(2).u16(16).u16(0).u16(0).u32((long)TIMESCALE << 16).end();
+			out.end();
+			if(fragmented) {
+				out.full("stts", 0, 0).u32(0).end();
+				out.full("stsc", 0, 0).u32(0).end();
+				out.full("stsz", 0, 0).u32(0).u32(0).end();
+				out.full("stco", 0, 0).u32(0).end();
+			}
+			else {
+				stbl(out, tk, co64);
+			}
+			out.end();
+			out.end();
+			out.end();
+			out.end();
+		}
+		if(fragmented) {
+			out.begin("mvex");
+			for(final Track tk : tks) {
+				out.full("trex", 0, 0).u32(tk.id).u32(1).u32(DURATION).u32(0).u32(0).end();
+			}
+			out.end();
+		}
+		out.end();
+		return out;
+	}
+	void stbl(Out out, Track tk, boolean co64) {
+		out.full("stts", 0, 0).u32(1).u32(samples).u32(DURATION).end();
+		// one entry each time samples-per-chunk changes
+		int entries = 0;
+		for(int cx = 0; cx < tk.nchunks; cx++) {
+			if(cx == 0 || tk.chunks[cx] != tk.chunks[cx - 1]) entries++;
+		}
+		out.full("stsc", 0, 0).u32(entries);
+		for(int cx = 0; cx < tk.nchunks; cx++) {
+			if(cx == 0 || tk.chunks[cx] != tk.chunks[cx - 1]) {
+				out.u32(cx + 1).u32(tk.chunks[cx]).u32(1);
+			}
+		}
+		out.end();
+		if(tk.sizes == null) {
+			out.full("stsz", 0, 0).u32(tk.constant).u32(samples).end();
+		}
+		else if(compactSizes > 0) {
+			out.full("stz2", 0, 0).u32(compactSizes).u32(samples);
+			for(int ix = 0; ix < tk.sizes.length; ix++) {
+				if(compactSizes == 4) {
+					if((ix & 1) == 1) continue;
+					final int lo = ix + 1 < tk.sizes.length ? tk.sizes[ix + 1] : 0;
+					out.u8((tk.sizes[ix] << 4) | lo);
+				}
+				else if(compactSizes == 8) {
+					out.u8(tk.sizes[ix]);
+				}
+				else {
+					out.u16(tk.sizes[ix]);
+				}
+			}
+			out.end();
+		}
+		else {
+			out.full("stsz", 0, 0).u32(0).u32(samples);
+			for(final int sz : tk.sizes) {
+				out.u32(sz);
+			}
+			out.end();
+		}
+		if(co64) {
+			out.full("co64", 0, 0).u32(tk.nchunks);
+			for(int cx = 0; cx < tk.nchunks; cx++) {
+				out.u64(tk.offsets[cx]);
+			}
+		}
+		else {
+			out.full("stco", 0, 0).u32(tk.nchunks);
+			for(int cx = 0; cx < tk.nchunks; cx++) {
+				out.u32(tk.offsets[cx]);
+			}
+		}
+		out.end();
+	}
+	Out moof(Track[] tks, int seq, int first, int count, long dataofs) {
+		final long decode = (long)first*DURATION;
+		final Out out = new Out();
+		out.large = largeSizes;
+		out.begin("moof");
+		out.full("mfhd", 0, 0).u32(seq).end();
+		long ofs = dataofs;
+		for(final Track tk : tks) {
+			out.begin("traf");
+			// default-base-is-moof, default-sample-duration-present
+			out.full("tfhd", 0, 0x020008).u32(tk.id).u32(DURATION).end();
+			out.full("tfdt", 1, 0).u64(decode).end();
+			// data-offset-present, sample-size-present
+			out.full("trun", 0, 0x000201).u32(count).u32(ofs);
+			for(int ix = first; ix < first + count; ix++) {
+				out.u32(tk.size(ix));
+				ofs += tk.size(ix);
+			}
+			out.end();
+			out.end();
+		}
+		out.end();
+		return out;
+	}
+	static void times(Out out, int version, int timescale, long duration) {
+		if(version == 1) {
+			out.u64(0).u64(0).u32(timescale).u64(duration);
+		}
+		else {
+			out.u32(0).u32(0).u32(timescale).u32(duration);
+		}
+	}
+	static void matrix(Out out) {
+		out.u32(0x00010000).u32(0).u32(0);
+		out.u32(0).u32(0x00010000).u32(0);
+		out.u32(0).u32(0).u32(0x40000000);
+	}
+}
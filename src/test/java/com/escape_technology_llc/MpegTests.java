@@ -17,29 +17,63 @@ package com.escape_technology_llc;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
 import com.escape_technology_llc.iso.ConsoleHandler;
 import com.escape_technology_llc.iso.ISOParser;
+import com.escape_technology_llc.iso.IsoBatchScanner;
+import com.escape_technology_llc.iso.ISOPushParser;
 import com.escape_technology_llc.iso.NullHandler;
 import com.escape_technology_llc.iso.ParseCallback;
 import com.escape_technology_llc.iso.ParseContext;
+import com.escape_technology_llc.iso.ParseHandler;
 import com.escape_technology_llc.iso.box.Box;
+import com.escape_technology_llc.iso.box.FourCC;
+import com.escape_technology_llc.iso.box.FullBox;
+import com.escape_technology_llc.iso.box.handler.BoxQuery;
 import com.escape_technology_llc.iso.box.handler.BoxTreeDump;
 import com.escape_technology_llc.iso.box.handler.IsoContainerHandler;
 import com.escape_technology_llc.iso.box.handler.MetadataHandler;
+import com.escape_technology_llc.iso.box.handler.RandomAccessHandler;
+import com.escape_technology_llc.iso.box.handler.SegmentIndexHandler;
 import com.escape_technology_llc.iso.box.handler.TrackHandler;
+import com.escape_technology_llc.iso.data.BoxDataFactory;
+import com.escape_technology_llc.iso.data.ChunkOffset;
 import com.escape_technology_llc.iso.data.FileType;
+import com.escape_technology_llc.iso.data.FragmentIndex;
 import com.escape_technology_llc.iso.data.Handler_V0;
 import com.escape_technology_llc.iso.data.IsoMediaContainer;
 import com.escape_technology_llc.iso.data.Meta;
+import com.escape_technology_llc.iso.data.MetadataValue;
 import com.escape_technology_llc.iso.data.MovieHeader;
+import com.escape_technology_llc.iso.data.SampleCursor;
+import com.escape_technology_llc.iso.data.SampleSize;
+import com.escape_technology_llc.iso.data.SegmentIndex;
+import com.escape_technology_llc.iso.data.SegmentTable;
 import com.escape_technology_llc.iso.data.SoundTable;
 import com.escape_technology_llc.iso.data.Track;
+import com.escape_technology_llc.iso.data.TrackFragmentRandomAccess;
 import com.escape_technology_llc.iso.data.Unmarshal;
 
 public class MpegTests {
@@ -130,7 +164,7 @@ public class MpegTests {
 		try {
 			// IST media description "text" is scaled by the timescale
 			int startsat = 0;
-			final int ect = stbl2.stts.table.length;
+			final int ect = stbl2.stts.size();
 			for(int ix = 1; ix <= ect; ix++) {
 				final SoundTable.MediaCoordinate mc = stbl2.resolve(ix);
 				//final DataRef.Entry drefe = dref.table[mc.sampleDesc - 1];
@@ -141,7 +175,7 @@ public class MpegTests {
 				final String text = new String(buf, 2, leng);
 				final long ttx = tk.mdhd.toMilliSeconds(startsat);
 				System.out.println(String.format("leng %d text '%s' start %d %s", leng, text, startsat, ISOParser.formatDuration(ttx)));
-				startsat += stbl2.stts.table[ix - 1].duration;
+				startsat += stbl2.stts.duration[ix - 1];
 			}
 		}
 		finally {
@@ -169,7 +203,7 @@ public class MpegTests {
 		final RandomAccessFile raf = new RandomAccessFile(fx, "r");
 		try {
 			int startsat = 0;
-			final int ect = stbl1.stts.table.length;
+			final int ect = stbl1.stts.size();
 			for(int ix = 1; ix <= ect; ix++) {
 				final SoundTable.MediaCoordinate mc = stbl1.resolve(ix);
 				//final DataRef.Entry drefe = dref.table[mc.sampleDesc - 1];
@@ -180,7 +214,7 @@ public class MpegTests {
 				final String text = new String(buf, 2, leng);
 				final long ttx = tk.mdhd.toMilliSeconds(startsat);
 				System.out.println(String.format("leng %d text '%s' start %d %s", leng, text, startsat, ISOParser.formatDuration(ttx, true)));
-				startsat += stbl1.stts.table[ix - 1].duration;
+				startsat += stbl1.stts.duration[ix - 1];
 			}
 		}
 		finally {
@@ -316,4 +350,1386 @@ public class MpegTests {
 		assertNotNull("Metadata failed", tx.meta);
 		assertTrue("meta.size failed", tx.meta.map.size() > 0);
 	}
+	@Test
+	public void generatedLayouts() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			for(int layout = 0; layout < 8; layout++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 2;
+				gen.samples = 5000;
+				switch(layout) {
+				case 1:
+					gen.moovAtEnd = true;
+					break;
+				case 2:
+					gen.largeSizes = true;
+					break;
+				case 3:
+					gen.minSize = gen.maxSize = 7;
+					gen.samplesPerChunk = new int[] { 10, 3, 7 };
+					gen.chunksPerRun = 5;
+					break;
+				case 4:
+					gen.compactSizes = 4;
+					gen.minSize = 1;
+					gen.maxSize = 15;
+					break;
+				case 5:
+					gen.compactSizes = 8;
+					gen.maxSize = 255;
+					break;
+				case 6:
+					gen.compactSizes = 16;
+					gen.minSize = 1000;
+					gen.maxSize = 60000;
+					break;
+				case 7:
+					// chunks span many size checkpoints
+					gen.samplesPerChunk = new int[] { 1500, 700 };
+					break;
+				}
+				gen.write(fx);
+				final IsoContainerHandler tx = new IsoContainerHandler();
+				ISOParser.parse(fx, new NullHandler(), tx);
+				final IsoMediaContainer imc = tx.render();
+				assertNotNull("render failed", imc);
+				assertEquals("tracks.length failed", 2, imc.tracks.length);
+				final SoundTable stbl = imc.tracks[1].stbl;
+				assertEquals("stts failed", 5000, stbl.stts.count[0]);
+				// sample_count is kept with or without a table
+				assertEquals("stsz.count failed", 5000, stbl.stsz.count);
+				assertEquals("stsz.isConstant failed", layout == 3, stbl.stsz.isConstant());
+				// samples within a chunk are contiguous
+				SoundTable.SampleCoordinate psc = stbl.chunkForSample(1);
+				SoundTable.MediaCoordinate pmc = stbl.resolve(psc);
+				for(int ix = 2; ix <= 5000; ix++) {
+					final SoundTable.SampleCoordinate sc = stbl.chunkForSample(ix);
+					final SoundTable.MediaCoordinate mc = stbl.resolve(sc);
+					if(sc.chunk == psc.chunk) {
+						assertEquals("resolve(" + ix + ") failed", pmc.position + pmc.length, mc.position);
+					}
+					else {
+						assertEquals("chunkForSample(" + ix + ") failed", psc.chunk + 1, sc.chunk);
+						assertEquals("firstSampleInChunk(" + ix + ") failed", ix, sc.firstSampleInChunk);
+					}
+					psc = sc;
+					pmc = mc;
+					// seek round trip; 1024 ticks per sample
+					assertEquals("sampleTime(" + ix + ") failed", (ix - 1)*1024L, stbl.sampleTime(ix));
+					assertEquals("sampleAtTime(" + ix + ") failed", ix, stbl.sampleAtTime(stbl.sampleTime(ix) + 1023));
+				}
+				assertEquals("sampleAtTime(end) failed", 5000, stbl.sampleAtTime(5000*1024L));
+				// cursor agrees with lookup
+				final SampleCursor cursor = stbl.cursor();
+				while(cursor.next()) {
+					final SoundTable.MediaCoordinate mc = stbl.resolve(cursor.sample());
+					assertEquals("cursor.offset failed", mc.position, cursor.offset());
+					assertEquals("cursor.size failed", mc.length, cursor.size());
+					assertEquals("cursor.time failed", stbl.sampleTime(cursor.sample()), cursor.time());
+				}
+				assertEquals("cursor.sample failed", 5000, cursor.sample());
+				// no stss: every sample is a sync sample
+				assertEquals("syncSampleBefore failed", 1234, stbl.syncSampleBefore(1234));
+				// track 2 owns the last chunk
+				final SoundTable.MediaCoordinate last = stbl.resolve(5000);
+				if(gen.moovAtEnd) {
+					assertTrue("resolve(last) failed", last.position + last.length < fx.length());
+				}
+				else {
+					assertEquals("resolve(last) failed", fx.length(), last.position + last.length);
+				}
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void generatedMetadataFirst() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			for(int layout = 0; layout < 2; layout++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 2;
+				gen.samples = 5000;
+				gen.moovAtEnd = layout == 1;
+				gen.write(fx);
+				final IsoContainerHandler full = new IsoContainerHandler();
+				ISOParser.parse(fx, new NullHandler(), full);
+				final SoundTable.MediaCoordinate expected = full.render().tracks[1].stbl.resolve(5000);
+				// no probe, probe too small for the moov, probe holding the moov
+				final int[] probes = { 0, 256, 256*1024 };
+				for(final int probe : probes) {
+					final IsoContainerHandler tx = new IsoContainerHandler();
+					ISOParser.parseMetadata(fx, new NullHandler(), tx, probe);
+					final IsoMediaContainer imc = tx.render();
+					assertNotNull("render(" + layout + "," + probe + ") failed", imc);
+					assertEquals("tracks.length(" + layout + "," + probe + ") failed", 2, imc.tracks.length);
+					final SoundTable.MediaCoordinate mc = imc.tracks[1].stbl.resolve(5000);
+					assertEquals("resolve(" + layout + "," + probe + ") failed", expected.position, mc.position);
+				}
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void generatedLargeOffsets() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			// 5000 x 1MB: mdat crosses 4GB so the generator emits co64 (sparse file)
+			final IsoGenerator gen = new IsoGenerator();
+			gen.samples = 5000;
+			gen.minSize = gen.maxSize = 1024*1024;
+			gen.write(fx);
+			assertTrue("file size failed", fx.length() > 0xffffffffL);
+			final IsoContainerHandler tx = new IsoContainerHandler();
+			ISOParser.parse(fx, new NullHandler(), tx);
+			final IsoMediaContainer imc = tx.render();
+			assertNotNull("render failed", imc);
+			final SoundTable stbl = imc.tracks[0].stbl;
+			assertNotNull("stco failed", stbl.stco);
+			assertNotNull("stco.wide failed", stbl.stco.wide);
+			final SoundTable.MediaCoordinate last = stbl.resolve(5000);
+			assertEquals("resolve(last) failed", fx.length(), last.position + last.length);
+			final SampleCursor cursor = stbl.cursor();
+			cursor.seek(5000);
+			assertEquals("cursor.offset failed", last.position, cursor.offset());
+			// small offsets stay compact
+			final ChunkOffset co = new ChunkOffset(new long[] { 8L, 0xfffffff0L });
+			assertNotNull("compact failed", co.table);
+			assertEquals("get failed", 0xfffffff0L, co.get(1));
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void segmentTableHierarchy() throws Exception {
+		final int[] media = { SegmentIndex.REFERENCE_MEDIA, SegmentIndex.REFERENCE_MEDIA };
+		final int[] sap = { 0, 0 };
+		// root @0 references two child indexes, each 40 bytes followed by its two subsegments
+		final SegmentIndex root = new SegmentIndex(0, 50, 1, 1000, 500, 0,
+				new int[] { SegmentIndex.REFERENCE_INDEX, SegmentIndex.REFERENCE_INDEX }, new int[] { 340, 640 }, new int[] { 2000, 4000 }, sap);
+		final SegmentIndex c1 = new SegmentIndex(50, 90, 1, 1000, 500, 0, media, new int[] { 100, 200 }, new int[] { 1000, 1000 }, sap);
+		final SegmentIndex c2 = new SegmentIndex(390, 430, 1, 1000, 2500, 0, media, new int[] { 300, 300 }, new int[] { 1500, 2500 }, sap);
+		final SegmentTable st = SegmentTable.flatten(new SegmentIndex[] { root, c1, c2 }, 1);
+		assertEquals("size failed", 4, st.size());
+		assertArrayEquals("time failed", new long[] { 500, 1500, 2500, 4000 }, st.time);
+		assertArrayEquals("offset failed", new long[] { 90, 190, 430, 730 }, st.offset);
+		assertEquals("entryForTime failed", 2, st.entryForTime(3999));
+		assertEquals("entryForTime(before) failed", -1, st.entryForTime(499));
+		try {
+			SegmentTable.flatten(new SegmentIndex[] { root, c1 }, 1);
+			fail("missing child not detected");
+		}
+		catch(IllegalArgumentException ex) {
+		}
+		// second stream with its own timescale, interleaved in file order
+		final SegmentIndex a1 = new SegmentIndex(1000, 1040, 2, 48000, 0, 0, media, new int[] { 10, 10 }, new int[] { 48000, 48000 }, sap);
+		final SegmentIndex a2 = new SegmentIndex(2000, 2040, 2, 48000, 96000, 0, media, new int[] { 10, 10 }, new int[] { 48000, 48000 }, sap);
+		final SegmentTable[] all = SegmentTable.flattenAll(new SegmentIndex[] { root, a1, c1, c2, a2 });
+		assertEquals("flattenAll failed", 2, all.length);
+		assertEquals("referenceId(0) failed", 1, all[0].referenceId);
+		assertEquals("size(0) failed", 4, all[0].size());
+		assertEquals("referenceId(1) failed", 2, all[1].referenceId);
+		assertEquals("timescale(1) failed", 48000, all[1].timescale);
+		assertArrayEquals("time(1) failed", new long[] { 0, 48000, 96000, 144000 }, all[1].time);
+		assertArrayEquals("offset(1) failed", new long[] { 1040, 1050, 2040, 2050 }, all[1].offset);
+		assertEquals("entryForTime(1) failed", 2, all[1].entryForTime(100000));
+		try {
+			SegmentTable.flatten(new SegmentIndex[] { root, c1, c2 }, 2);
+			fail("missing stream not detected");
+		}
+		catch(IllegalArgumentException ex) {
+		}
+	}
+	@Test
+	public void generatedFragments() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.samples = 5000;
+			gen.fragmentSamples = 700;
+			gen.write(fx);
+			final int[] moofs = new int[1];
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOF)) moofs[0]++;
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			assertEquals("moof count failed", 8, moofs[0]);
+			// samples indexed across all fragments
+			gen.tracks = 2;
+			gen.write(fx);
+			final IsoContainerHandler tx = new IsoContainerHandler();
+			ISOParser.parse(fx, new NullHandler(), tx);
+			final IsoMediaContainer imc = tx.render();
+			assertNotNull("render failed", imc);
+			assertEquals("tracks.length failed", 2, imc.tracks.length);
+			final FragmentIndex fi = imc.tracks[1].fragments;
+			assertNotNull("fragments failed", fi);
+			assertEquals("count failed", 5000, fi.count());
+			assertEquals("runs failed", 8, fi.runs());
+			for(int ix = 1; ix <= 5000; ix++) {
+				assertEquals("sampleTime(" + ix + ") failed", (ix - 1)*1024L, fi.sampleTime(ix));
+				assertEquals("sampleAtTime(" + ix + ") failed", ix, fi.sampleAtTime(fi.sampleTime(ix) + 1023));
+			}
+			// track 2 owns the last run of each fragment
+			for(int ix = 1; ix < 5000; ix++) {
+				final SoundTable.MediaCoordinate mc = fi.resolve(ix);
+				final SoundTable.MediaCoordinate mc2 = fi.resolve(ix + 1);
+				if(ix % 700 != 0) {
+					assertEquals("resolve(" + ix + ") failed", mc.position + mc.length, mc2.position);
+				}
+			}
+			final SoundTable.MediaCoordinate last = fi.resolve(5000);
+			assertEquals("resolve(last) failed", fx.length(), last.position + last.length);
+			assertTrue("isSync failed", fi.isSync(1234));
+			// seek table from the footer matches the moofs
+			gen.randomAccess = true;
+			gen.write(fx);
+			final long[] moofpos = new long[8];
+			moofs[0] = 0;
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOF)) moofpos[moofs[0]++] = box.position;
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			final RandomAccessHandler rah = new RandomAccessHandler();
+			assertTrue("parseRandomAccess failed", ISOParser.parseRandomAccess(fx, new NullHandler(), rah));
+			assertEquals("tfra.length failed", 2, rah.render().length);
+			final TrackFragmentRandomAccess tfra = rah.track(2);
+			assertNotNull("track failed", tfra);
+			assertEquals("tfra.size failed", 8, tfra.size());
+			for(int ix = 0; ix < 8; ix++) {
+				assertEquals("moofForTime(" + ix + ") failed", moofpos[ix], tfra.moofForTime(ix*700*1024L + 5));
+			}
+			assertEquals("moofForTime(-1) failed", -1L, tfra.moofForTime(-1));
+			// no footer
+			gen.randomAccess = false;
+			gen.write(fx);
+			assertFalse("parseRandomAccess(none) failed", ISOParser.parseRandomAccess(fx, new NullHandler(), new RandomAccessHandler()));
+			// segment index covers each moof/mdat pair
+			gen.segmentIndex = true;
+			gen.write(fx);
+			moofs[0] = 0;
+			final SegmentIndexHandler sih = new SegmentIndexHandler();
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOF)) moofpos[moofs[0]++] = box.position;
+					sih.box(pc, box);
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			assertEquals("render(sidx) failed", 2, sih.render().length);
+			assertNull("track(3) failed", sih.track(3));
+			final SegmentTable segs = sih.track(2);
+			assertNotNull("track(2) failed", segs);
+			assertEquals("segs.size failed", 8, segs.size());
+			assertArrayEquals("track(1) failed", segs.offset, sih.track(1).offset);
+			for(int ix = 0; ix < 8; ix++) {
+				assertEquals("segs.offset(" + ix + ") failed", moofpos[ix], segs.offset[ix]);
+				assertEquals("entryForTime(" + ix + ") failed", ix, segs.entryForTime(ix*700*1024L + 5));
+			}
+			assertEquals("segs.end failed", fx.length(), segs.offset[7] + segs.size[7]);
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	/**
+	 * Build a box from type and contents.
+	 * @param type box type.
+	 * @param parts contents, in order.
+	 * @return box bytes.
+	 */
+	static byte[] box(String type, byte[]... parts) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(bos);
+		int length = 8;
+		for(final byte[] part : parts) length += part.length;
+		dos.writeInt(length);
+		dos.writeBytes(type);
+		for(final byte[] part : parts) dos.write(part);
+		return bos.toByteArray();
+	}
+	/**
+	 * Build a UTF-8 metadata item.
+	 * @param type item type.
+	 * @param value item value.
+	 * @return box bytes.
+	 */
+	static byte[] item(String type, String value) throws IOException {
+		return box(type, box("data", new byte[] { 0, 0, 0, 1, 0, 0, 0, 0 }, value.getBytes("UTF-8")));
+	}
+	@Test
+	public void generatedEarlyStop() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 5000;
+			gen.fragmentSamples = 700;
+			gen.write(fx);
+			// stop at the first moof; end still called
+			final int[] seen = new int[3];
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					seen[0]++;
+					if(box.type.equals(Box.MOOF)) {
+						seen[1]++;
+						pc.stop();
+					}
+				}
+				public void end(ParseContext pc) throws Exception {
+					seen[2]++;
+				}
+			});
+			assertEquals("stop failed", 1, seen[1]);
+			assertEquals("stop(boxes) failed", 3, seen[0]);
+			assertEquals("stop(end) failed", 1, seen[2]);
+			// skip the rest of the moov after the first trak; top level continues
+			final int[] traks = new int[2];
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOV)) {
+						pc.parseBox(box, new ParseCallback() {
+							public void start() {
+							}
+							public void box(ParseContext pc, Box box) throws Exception {
+								if(box.type.equals(Box.TRAK)) {
+									traks[0]++;
+									pc.skipSiblings();
+								}
+							}
+							public void end(ParseContext pc) throws Exception {
+							}
+						});
+					}
+					else if(box.type.equals(Box.MOOF)) traks[1]++;
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			assertEquals("skipSiblings failed", 1, traks[0]);
+			assertEquals("skipSiblings(top) failed", 8, traks[1]);
+			// skip requested at the top level survives a skip in the nested walk
+			traks[0] = traks[1] = 0;
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOV)) {
+						pc.skipSiblings();
+						pc.parseBox(box, new ParseCallback() {
+							public void start() {
+							}
+							public void box(ParseContext pc, Box box) throws Exception {
+								if(box.type.equals(Box.TRAK)) {
+									traks[0]++;
+									pc.skipSiblings();
+								}
+							}
+							public void end(ParseContext pc) throws Exception {
+							}
+						});
+					}
+					else if(box.type.equals(Box.MOOF)) traks[1]++;
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			assertEquals("skipSiblings(nested) failed", 1, traks[0]);
+			assertEquals("skipSiblings(outer) failed", 0, traks[1]);
+			// interrupt ends the parse and clears the status
+			Thread.currentThread().interrupt();
+			try {
+				ISOParser.parse(fx, new NullHandler(), new IsoContainerHandler());
+				fail("interrupt not detected");
+			}
+			catch(InterruptedException ex) {
+			}
+			assertFalse("interrupt status failed", Thread.interrupted());
+			// push parser finishes on stop
+			final ISOPushParser push = new ISOPushParser(new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.MOOV)) pc.stop();
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			final byte[] buf = new byte[64*1024];
+			final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+			try {
+				raf.readFully(buf);
+			}
+			finally {
+				raf.close();
+			}
+			assertEquals("push stop failed", ISOPushParser.Status.DONE, push.feed(ByteBuffer.wrap(buf)));
+			// item walk ends once the wanted items are found
+			final byte[] hdlr = box("hdlr", new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 'm', 'd', 'i', 'r', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+			final byte[] ilst = box("ilst", item("aART", "artist"), item("cprt", "copyright"), item("desc", "description"));
+			final FileOutputStream fos = new FileOutputStream(fx);
+			try {
+				fos.write(box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4]));
+				fos.write(box("meta", new byte[4], hdlr, ilst));
+			}
+			finally {
+				fos.close();
+			}
+			final Meta[] meta = new Meta[1];
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.META)) {
+						final MetadataHandler mh = new MetadataHandler("aART", "cprt");
+						mh.start();
+						pc.parseBox(box, mh);
+						mh.end(pc);
+						meta[0] = mh.render();
+					}
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			assertNotNull("meta failed", meta[0]);
+			assertTrue("meta(aART) failed", meta[0].map.containsKey("aART"));
+			assertTrue("meta(cprt) failed", meta[0].map.containsKey("cprt"));
+			assertFalse("meta(desc) failed", meta[0].map.containsKey("desc"));
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void generatedQuery() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 5000;
+			gen.write(fx);
+			final IsoContainerHandler full = new IsoContainerHandler();
+			ISOParser.parse(fx, new NullHandler(), full);
+			final IsoMediaContainer imc = full.render();
+			final ArrayList<Box> found = new ArrayList<Box>();
+			final ParseCallback collect = new ParseCallback() {
+				public void start() {
+					found.clear();
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					found.add(box);
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			};
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("/moov/trak[*]/mdia/mdhd").select(collect));
+			assertEquals("mdhd count failed", 2, found.size());
+			assertEquals("mdhd path failed", "/moov/trak/mdia/mdhd", found.get(1).path());
+			// second track only; create from the matched box
+			final SampleSize[] stsz = new SampleSize[1];
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("/moov/trak[2]/mdia/minf/stbl/stsz").select(new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					stsz[0] = pc.create(box);
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			}));
+			assertNotNull("stsz failed", stsz[0]);
+			assertEquals("stsz.count failed", imc.tracks[1].stbl.stsz.count, stsz[0].count);
+			assertEquals("stsz.get failed", imc.tracks[1].stbl.stsz.get(4999), stsz[0].get(4999));
+			// union of paths, descendant axis
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("//stco", "/moov/mvhd").select(collect));
+			assertEquals("union count failed", 3, found.size());
+			assertEquals("union order failed", Box.MVHD, found.get(0).type);
+			// every box, same as a full walk
+			final int[] all = new int[1];
+			ISOParser.parse(fx, new NullHandler(), new BoxTreeDump() {
+				@Override public void box(ParseContext pc, Box box) throws Exception {
+					all[0]++;
+					super.box(pc, box);
+				}
+			});
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("//*").select(collect));
+			assertEquals("//* count failed", all[0], found.size());
+			// fragments: traf headers of the third moof
+			gen.fragmentSamples = 700;
+			gen.write(fx);
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("/moof[3]/traf/tfhd").select(collect));
+			assertEquals("tfhd count failed", 2, found.size());
+			assertEquals("tfhd moof failed", found.get(0).parent.parent.position, found.get(1).parent.parent.position);
+			final String[] bad = { "moov", "/moov/tr", "/moov[0]", "/moov[", "/moov/" };
+			for(final String path : bad) {
+				try {
+					BoxQuery.compile(path);
+					fail("compile(" + path + ") not detected");
+				}
+				catch(IllegalArgumentException ex) {
+				}
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	/**
+	 * Registers an xprv unmarshaler under any parent; listed in a services file written by the test.
+	 */
+	public static class TestProvider implements BoxDataFactory.Provider {
+		public void register() {
+			BoxDataFactory.register("xprv", new BoxDataFactory.BoxUnmarshaler() {
+				public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+					return data.getInt(0);
+				}
+			});
+		}
+	}
+	/**
+	 * Fails to register; listed in a services file written by the test.
+	 */
+	public static class FailingProvider implements BoxDataFactory.Provider {
+		public void register() {
+			throw new IllegalStateException("failing provider");
+		}
+	}
+	@Test
+	public void unmarshalerRegistry() throws Exception {
+		final ByteBuffer data = ByteBuffer.wrap(new byte[] { 0, 0, 0, 7 });
+		final Box stbl = new Box(null, Box.STBL, 0, 100, 8);
+		// only under stbl
+		BoxDataFactory.register(Box.STBL, "ctts", new BoxDataFactory.BoxUnmarshaler() {
+			public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+				return data.getInt(0);
+			}
+		});
+		try {
+			assertEquals("register(ctts) failed", 7, BoxDataFactory.create(new Box(stbl, "ctts", 8, 12, 8), data));
+			assertNull("register(ctts,parent) failed", BoxDataFactory.create(new Box(null, "ctts", 8, 12, 8), data));
+		}
+		finally {
+			assertNotNull("unregister(ctts) failed", BoxDataFactory.unregister(Box.STBL, "ctts"));
+		}
+		assertNull("unregister(ctts,again) failed", BoxDataFactory.unregister(Box.STBL, "ctts"));
+		assertNull("find(ctts) failed", BoxDataFactory.find(new Box(stbl, "ctts", 8, 12, 8)));
+		// any parent, unless registered under the parent
+		BoxDataFactory.register("xtst", new BoxDataFactory.BoxUnmarshaler() {
+			public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+				return "any";
+			}
+		});
+		BoxDataFactory.register(Box.STBL, "xtst", new BoxDataFactory.BoxUnmarshaler() {
+			public Object unmarshal(Box box, ByteBuffer data) throws Exception {
+				return "stbl";
+			}
+		});
+		try {
+			assertEquals("register failed", "any", BoxDataFactory.create(new Box(null, "xtst", 8, 12, 8), data));
+			assertEquals("register(parent) failed", "stbl", BoxDataFactory.create(new Box(stbl, "xtst", 8, 12, 8), data));
+			// removing the parent registration falls back to any parent
+			BoxDataFactory.unregister(Box.STBL, "xtst");
+			assertEquals("unregister(parent) failed", "any", BoxDataFactory.create(new Box(stbl, "xtst", 8, 12, 8), data));
+		}
+		finally {
+			BoxDataFactory.unregister(Box.STBL, "xtst");
+			BoxDataFactory.unregister("xtst");
+		}
+		assertNull("unregister failed", BoxDataFactory.find(new Box(null, "xtst", 8, 12, 8)));
+		// providers from another class loader; failures are reported and skipped
+		final File dir = File.createTempFile("isoprov", "");
+		dir.delete();
+		final File services = new File(dir, "META-INF/services");
+		assertTrue("mkdirs failed", services.mkdirs());
+		final File list = new File(services, BoxDataFactory.Provider.class.getName());
+		try {
+			final FileOutputStream fos = new FileOutputStream(list);
+			try {
+				fos.write((FailingProvider.class.getName() + "\nno.such.Provider\n" + TestProvider.class.getName() + "\n").getBytes("UTF-8"));
+			}
+			finally {
+				fos.close();
+			}
+			final ArrayList<String> reports = new ArrayList<String>();
+			final URLClassLoader cl = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader());
+			BoxDataFactory.load(cl, record(reports));
+			assertEquals("load(reports) failed: " + reports, 2, reports.size());
+			assertTrue("load(failing) failed", reports.get(0).contains("failing provider"));
+			assertTrue("load(missing) failed", reports.get(1).contains("no.such.Provider"));
+			assertEquals("load(provider) failed", 7, BoxDataFactory.create(new Box(null, "xprv", 8, 12, 8), data));
+		}
+		finally {
+			BoxDataFactory.unregister("xprv");
+			list.delete();
+			services.delete();
+			services.getParentFile().delete();
+			dir.delete();
+		}
+		// built-ins still there
+		assertNotNull("find failed", BoxDataFactory.find(new Box(stbl, Box.STSZ, 8, 20, 12)));
+		try {
+			BoxDataFactory.register("xt", null);
+			fail("register(type) not detected");
+		}
+		catch(IllegalArgumentException ex) {
+		}
+		// copyright-sign items decode
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final byte[] hdlr = box("hdlr", new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 'm', 'd', 'i', 'r', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+			final byte[] ilst = box("ilst", item("\u00a9nam", "title"), item("\u00a9alb", "album"));
+			final FileOutputStream fos = new FileOutputStream(fx);
+			try {
+				fos.write(box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4]));
+				fos.write(box("meta", new byte[4], hdlr, ilst));
+			}
+			finally {
+				fos.close();
+			}
+			final MetadataHandler mh = new MetadataHandler();
+			ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					if(box.type.equals(Box.META)) {
+						pc.parseBox(box, mh);
+					}
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			});
+			final Meta meta = mh.render();
+			assertTrue("nam failed", meta.map.get("\u00a9nam").get(0) instanceof MetadataValue.StringValue);
+			assertEquals("nam.value failed", "title", ((MetadataValue.StringValue)meta.map.get("\u00a9nam").get(0)).value);
+			assertTrue("alb failed", meta.map.get("\u00a9alb").get(0) instanceof MetadataValue.StringValue);
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void generatedMapped() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			// small file, tiny window: every table read remaps or goes to the channel
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 5000;
+			gen.write(fx);
+			final IsoContainerHandler full = new IsoContainerHandler();
+			ISOParser.parse(fx, new NullHandler(), full);
+			final SoundTable expected = full.render().tracks[1].stbl;
+			final IsoContainerHandler tx = new IsoContainerHandler();
+			ISOParser.parseMapped(fx, new NullHandler(), tx, 4096);
+			final SoundTable stbl = tx.render().tracks[1].stbl;
+			for(int ix = 1; ix <= 5000; ix += 97) {
+				assertEquals("resolve(" + ix + ") failed", expected.resolve(ix).position, stbl.resolve(ix).position);
+			}
+			// 3000 x 1MB: mdat between 2GB and 4GB has a 32-bit size with the high bit set (sparse file)
+			gen.tracks = 1;
+			gen.samples = 3000;
+			gen.minSize = gen.maxSize = 1024*1024;
+			gen.moovAtEnd = true;
+			gen.write(fx);
+			assertTrue("file size failed", fx.length() > Integer.MAX_VALUE);
+			final IsoContainerHandler big = new IsoContainerHandler();
+			ISOParser.parseMapped(fx, new NullHandler(), big, 64*1024*1024);
+			final IsoMediaContainer imc = big.render();
+			assertNotNull("render failed", imc);
+			assertEquals("tracks.length failed", 1, imc.tracks.length);
+			final SoundTable.MediaCoordinate last = imc.tracks[0].stbl.resolve(3000);
+			assertTrue("resolve(last) failed", last.position > Integer.MAX_VALUE);
+			assertEquals("resolve(last).length failed", 1024*1024, last.length);
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void generatedMidSizeMdat() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			// 3000 x 1MB: 32-bit mdat size above 2GB (sparse file), then the same with the 64-bit form
+			final IsoGenerator gen = new IsoGenerator();
+			gen.samples = 3000;
+			gen.minSize = gen.maxSize = 1024*1024;
+			for(int layout = 0; layout < 3; layout++) {
+				gen.moovAtEnd = layout == 1;
+				gen.largeSizes = layout == 2;
+				gen.write(fx);
+				final Box[] mdat = new Box[1];
+				final IsoContainerHandler tx = new IsoContainerHandler();
+				ISOParser.parse(fx, new NullHandler(), new ParseCallback() {
+					public void start() {
+					}
+					public void box(ParseContext pc, Box box) throws Exception {
+						if(box.fourcc == FourCC.MDAT) mdat[0] = box;
+						tx.box(pc, box);
+					}
+					public void end(ParseContext pc) throws Exception {
+					}
+				});
+				assertNotNull("mdat(" + layout + ") failed", mdat[0]);
+				assertTrue("mdat.length(" + layout + ") failed", mdat[0].length > Integer.MAX_VALUE && mdat[0].length < 0xffffffffL);
+				assertEquals("mdat.hdrsize(" + layout + ") failed", layout == 2 ? 16 : 8, mdat[0].hdrsize);
+				final IsoMediaContainer imc = tx.render();
+				assertEquals("tracks.length(" + layout + ") failed", 1, imc.tracks.length);
+				final SoundTable.MediaCoordinate last = imc.tracks[0].stbl.resolve(3000);
+				assertEquals("resolve(last)(" + layout + ") failed", mdat[0].position + mdat[0].length, last.position + last.length);
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void sampleSizeSum() throws Exception {
+		final int[][] tables = { { 1, 2, 255, 4 }, { 1, 2, 65535, 4 }, { 1, 2, 0x7fffffff, 4 } };
+		for(final int[] table : tables) {
+			final SampleSize ss = new SampleSize(0, table.clone());
+			assertEquals("sum(all) failed", 7L + table[2], ss.sum(0, 4));
+			assertEquals("sum(1,3) failed", 2L + table[2], ss.sum(1, 3));
+			assertEquals("sum(empty) failed", 0L, ss.sum(2, 2));
+		}
+		assertEquals("sum(constant) failed", 300L, new SampleSize(100, null).sum(4, 7));
+		// long ranges go through the checkpoints; compare against a running total
+		final Random rnd = new Random(5);
+		final int[] limits = { 0xff, 0xffff, 0x7fffffff };
+		for(final int limit : limits) {
+			final int[] table = new int[10007];
+			final long[] prefix = new long[table.length + 1];
+			for(int ix = 0; ix < table.length; ix++) {
+				table[ix] = rnd.nextInt(limit) + 1;
+				prefix[ix + 1] = prefix[ix] + table[ix];
+			}
+			final SampleSize ss = new SampleSize(0, table.clone());
+			for(int ix = 0; ix <= table.length; ix++) {
+				if(ss.offset(ix) != prefix[ix]) fail(String.format("offset(%d,%d) failed", limit, ix));
+			}
+			final int[] edges = { 0, 1, 31, 32, 33, 63, 64, 65, 5000, table.length - 1, table.length };
+			for(final int from : edges) {
+				for(final int to : edges) {
+					if(to < from) continue;
+					assertEquals("sum(" + from + "," + to + ") failed", prefix[to] - prefix[from], ss.sum(from, to));
+				}
+			}
+		}
+		final SampleSize constant = new SampleSize(100, 5000, null);
+		assertEquals("count(constant) failed", 5000, constant.count);
+		assertEquals("toString(constant) failed", "[5000] all 100", constant.toString());
+		assertEquals("toString(table) failed", "[3] 1, 2, 3", new SampleSize(0, 3, new int[] { 1, 2, 3 }).toString());
+		try {
+			new SampleSize(0, 4, new int[] { 1, 2, 3 });
+			fail("count not validated");
+		}
+		catch(IllegalArgumentException ex) {
+		}
+	}
+	@Test
+	public void generatedStream() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			for(int layout = 0; layout < 2; layout++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 2;
+				gen.samples = 5000;
+				gen.moovAtEnd = layout == 1;
+				gen.write(fx);
+				final IsoContainerHandler full = new IsoContainerHandler();
+				ISOParser.parse(fx, new NullHandler(), full);
+				final SoundTable.MediaCoordinate expected = full.render().tracks[1].stbl.resolve(5000);
+				// channel and stream overloads see the same container
+				for(int source = 0; source < 2; source++) {
+					final IsoContainerHandler tx = new IsoContainerHandler();
+					final FileInputStream fis = new FileInputStream(fx);
+					try {
+						if(source == 0) ISOParser.parse(fis.getChannel(), new NullHandler(), tx);
+						else ISOParser.parse(fis, new NullHandler(), tx);
+					}
+					finally {
+						fis.close();
+					}
+					final IsoMediaContainer imc = tx.render();
+					assertNotNull("render(" + layout + "," + source + ") failed", imc);
+					assertEquals("tracks.length(" + layout + "," + source + ") failed", 2, imc.tracks.length);
+					final SoundTable.MediaCoordinate mc = imc.tracks[1].stbl.resolve(5000);
+					assertEquals("resolve(" + layout + "," + source + ") failed", expected.position, mc.position);
+					assertEquals("length(" + layout + "," + source + ") failed", expected.length, mc.length);
+				}
+			}
+			// reading behind the stream position is rejected
+			final FileInputStream fis = new FileInputStream(fx);
+			try {
+				ISOParser.parse(fis, new NullHandler(), new ParseCallback() {
+					public void start() {
+					}
+					public void box(ParseContext pc, Box box) throws Exception {
+						if(box.type.equals(Box.MDAT)) pc.materialize(0, 8);
+					}
+					public void end(ParseContext pc) throws Exception {
+					}
+				});
+				fail("seek back not detected");
+			}
+			catch(IllegalStateException ex) {
+			}
+			finally {
+				fis.close();
+			}
+			// non-blocking channel is rejected
+			final Pipe pipe = Pipe.open();
+			try {
+				pipe.source().configureBlocking(false);
+				ISOParser.parse(pipe.source(), new NullHandler(), new IsoContainerHandler());
+				fail("non-blocking not detected");
+			}
+			catch(IllegalArgumentException ex) {
+			}
+			finally {
+				pipe.source().close();
+				pipe.sink().close();
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	/**
+	 * Callback recording each top-level box, then passing it on.
+	 * @param seen receives "type@position[length/hdrsize]" per box.
+	 * @param next callback to pass boxes to.
+	 * @return new instance.
+	 */
+	static ParseCallback record(final ArrayList<String> seen, final ParseCallback next) {
+		return new ParseCallback() {
+			public void start() {
+				next.start();
+			}
+			public void box(ParseContext pc, Box box) throws Exception {
+				seen.add(String.format("%s@%d[%d/%d]", box.type, box.position, box.length, box.hdrsize));
+				next.box(pc, box);
+			}
+			public void end(ParseContext pc) throws Exception {
+				next.end(pc);
+			}
+		};
+	}
+	/**
+	 * Handler recording warnings and errors.
+	 * @param seen receives "W message" or "E message" per report.
+	 * @return new instance.
+	 */
+	static ParseHandler record(final ArrayList<String> seen) {
+		return new ParseHandler() {
+			public boolean isEnabled(int level) {
+				return level != MESSAGE;
+			}
+			public void message(String msg) {
+			}
+			public void warning(Exception ex) {
+				seen.add("W " + ex.getMessage());
+			}
+			public void error(Exception ex) {
+				seen.add("E " + ex.getMessage());
+			}
+		};
+	}
+	@Test
+	public void pushParserChunks() throws Exception {
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			for(int layout = 0; layout < 3; layout++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 2;
+				gen.samples = 1000;
+				gen.moovAtEnd = layout == 1;
+				gen.largeSizes = layout == 2;
+				gen.write(fx);
+				final byte[] file = new byte[(int)fx.length()];
+				final RandomAccessFile raf = new RandomAccessFile(fx, "r");
+				try {
+					raf.readFully(file);
+				}
+				finally {
+					raf.close();
+				}
+				final ArrayList<String> expected = new ArrayList<String>();
+				final ArrayList<String> warnings = new ArrayList<String>();
+				final IsoContainerHandler full = new IsoContainerHandler();
+				ISOParser.parse(fx, record(warnings), record(expected, full));
+				final SoundTable.MediaCoordinate last = full.render().tracks[1].stbl.resolve(1000);
+				// 64-bit largesize headers are 16 bytes
+				boolean large = false;
+				for(final String sx : expected) {
+					if(sx.startsWith("mdat@")) large = sx.endsWith("/16]");
+				}
+				assertEquals("largesize(" + layout + ") failed", gen.largeSizes, large);
+				// every header is split across feeds at some chunk size
+				final int[] chunks = { 1, 3, 7, 13, 4093, file.length };
+				for(final int chunk : chunks) {
+					final ArrayList<String> seen = new ArrayList<String>();
+					final ArrayList<String> reports = new ArrayList<String>();
+					final IsoContainerHandler tx = new IsoContainerHandler();
+					final ISOPushParser push = new ISOPushParser(record(reports), record(seen, tx));
+					for(int ofs = 0; ofs < file.length; ofs += chunk) {
+						push.feed(ByteBuffer.wrap(file, ofs, Math.min(chunk, file.length - ofs)));
+					}
+					push.end();
+					assertEquals("position(" + layout + "," + chunk + ") failed", file.length, push.position());
+					assertEquals("boxes(" + layout + "," + chunk + ") failed", expected, seen);
+					assertEquals("reports(" + layout + "," + chunk + ") failed", warnings, reports);
+					final SoundTable.MediaCoordinate mc = tx.render().tracks[1].stbl.resolve(1000);
+					assertEquals("resolve(" + layout + "," + chunk + ") failed", last.position, mc.position);
+				}
+			}
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void pushParserBoxes() throws Exception {
+		final byte[] ftyp = box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4]);
+		final ArrayList<String> seen = new ArrayList<String>();
+		final ArrayList<String> reports = new ArrayList<String>();
+		final ParseCallback none = new ParseCallback() {
+			public void start() {
+			}
+			public void box(ParseContext pc, Box box) throws Exception {
+				// header bytes are always available
+				assertEquals("materialize failed", box.type, FourCC.toString(Unmarshal.getInt32(pc.materialize(box.position, 8), 4)));
+			}
+			public void end(ParseContext pc) throws Exception {
+			}
+		};
+		// header split across feeds
+		ISOPushParser push = new ISOPushParser(record(reports), record(seen, none));
+		assertEquals("split(1) failed", ISOPushParser.Status.NEED_MORE, push.feed(ByteBuffer.wrap(ftyp, 0, 5)));
+		assertEquals("split(2) failed", ISOPushParser.Status.NEED_MORE, push.feed(ByteBuffer.wrap(ftyp, 5, 6)));
+		assertEquals("split(3) failed", ISOPushParser.Status.BOX, push.feed(ByteBuffer.wrap(ftyp, 11, ftyp.length - 11)));
+		assertEquals("split(boxes) failed", 1, seen.size());
+		// mdat is delivered once its header arrives, before its contents
+		final byte[] mdat = { 0, 0, 0, 108, 'm', 'd', 'a', 't' };
+		assertEquals("mdat(header) failed", ISOPushParser.Status.BOX, push.feed(ByteBuffer.wrap(mdat)));
+		assertEquals("mdat(boxes) failed", "mdat@" + ftyp.length + "[108/8]", seen.get(1));
+		assertEquals("mdat(body) failed", ISOPushParser.Status.NEED_MORE, push.feed(ByteBuffer.allocate(100)));
+		// 64-bit largesize, split inside the extended length
+		final byte[] large = { 0, 0, 0, 1, 'f', 'r', 'e', 'e', 0, 0, 0, 0, 0, 0, 0, 20, 1, 2, 3, 4 };
+		assertEquals("largesize(1) failed", ISOPushParser.Status.NEED_MORE, push.feed(ByteBuffer.wrap(large, 0, 12)));
+		assertEquals("largesize(2) failed", ISOPushParser.Status.BOX, push.feed(ByteBuffer.wrap(large, 12, 8)));
+		assertEquals("largesize(boxes) failed", "free@" + (ftyp.length + 108) + "[20/16]", seen.get(2));
+		push.end();
+		assertTrue("reports failed: " + reports, reports.isEmpty());
+		assertEquals("position failed", ftyp.length + 128, push.position());
+		// 32-bit size with the high bit set is unsigned
+		seen.clear();
+		push = new ISOPushParser(record(reports), record(seen, none));
+		assertEquals("unsigned failed", ISOPushParser.Status.BOX, push.feed(ByteBuffer.wrap(new byte[] { (byte)0x80, 0, 0, 16, 'm', 'd', 'a', 't' })));
+		assertEquals("unsigned(boxes) failed", "mdat@0[" + 0x80000010L + "/8]", seen.get(0));
+		assertFalse("unsigned(done) failed", push.isDone());
+		push.feed(ByteBuffer.allocate(4096));
+		push.end();
+		assertEquals("unsigned(reports) failed", 1, reports.size());
+		assertTrue("unsigned(short) failed", reports.get(0).startsWith("W input ended " + (0x80000008L - 4096)));
+		// boxes over the buffer limit are delivered header-only and skipped
+		seen.clear();
+		reports.clear();
+		final byte[] moov = box("moov", box("free", new byte[100]));
+		push = new ISOPushParser(record(reports), record(seen, none), 64);
+		push.feed(ByteBuffer.wrap(moov));
+		push.feed(ByteBuffer.wrap(ftyp));
+		push.end();
+		assertEquals("limit(boxes) failed", 2, seen.size());
+		assertEquals("limit(moov) failed", "moov@0[116/8]", seen.get(0));
+		assertEquals("limit(ftyp) failed", "ftyp@116[" + ftyp.length + "/8]", seen.get(1));
+		assertEquals("limit(reports) failed", 1, reports.size());
+		assertTrue("limit(warning) failed", reports.get(0).startsWith("W box"));
+		try {
+			new ISOPushParser(new NullHandler(), none, 16);
+			fail("maxBuffer not validated");
+		}
+		catch(IllegalArgumentException ex) {
+		}
+	}
+	@Test
+	public void batchScanner() throws Exception {
+		final File root = File.createTempFile("isoscan", "");
+		root.delete();
+		final File sub = new File(root, "sub");
+		assertTrue("mkdirs failed", sub.mkdirs());
+		final ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			final File[] files = { new File(root, "a.m4a"), new File(root, "b.mp4"), new File(sub, "c.m4b"), new File(sub, "d.m4a") };
+			for(int ix = 0; ix < files.length; ix++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 1 + ix%2;
+				gen.samples = 1000;
+				gen.moovAtEnd = ix >= 2;
+				gen.write(files[ix]);
+			}
+			final File bad = new File(sub, "e.mp4");
+			final FileOutputStream fos = new FileOutputStream(bad);
+			try {
+				fos.write(new byte[] { 0, 0, 0, 8, 'x', 'x', 'x', 'x' });
+			}
+			finally {
+				fos.close();
+			}
+			new FileOutputStream(new File(root, "notes.txt")).close();
+			// a link back to the root must not loop; skip where links are not available
+			boolean linked = false;
+			try {
+				linked = new ProcessBuilder("ln", "-s", root.getAbsolutePath(), new File(sub, "loop").getAbsolutePath()).start().waitFor() == 0;
+			}
+			catch(IOException ex) {
+			}
+			final Map<String, IsoMediaContainer> results = new HashMap<String, IsoMediaContainer>();
+			final Map<String, Exception> errors = new HashMap<String, Exception>();
+			final int[] total = new int[1];
+			final IsoBatchScanner scanner = new IsoBatchScanner(pool, 2);
+			scanner.scan(root, IsoBatchScanner.MEDIA, new IsoBatchScanner.Sink() {
+				public synchronized void result(File fx, IsoMediaContainer imc) {
+					results.put(fx.getName(), imc);
+					total[0]++;
+				}
+				public synchronized void error(File fx, Exception ex) {
+					errors.put(fx.getName(), ex);
+				}
+			});
+			// each file once, even through the link
+			assertEquals("results failed: " + results.keySet() + " linked=" + linked, 4, total[0]);
+			for(int ix = 0; ix < files.length; ix++) {
+				final IsoMediaContainer imc = results.get(files[ix].getName());
+				assertNotNull("result(" + ix + ") failed", imc);
+				assertEquals("tracks(" + ix + ") failed", 1 + ix%2, imc.tracks.length);
+			}
+			assertEquals("errors failed: " + errors, 1, errors.size());
+			assertTrue("errors(bad) failed", errors.containsKey(bad.getName()));
+			// explicit file list
+			final ArrayList<File> list = new ArrayList<File>();
+			list.add(files[1]);
+			list.add(files[2]);
+			final int[] count = new int[1];
+			scanner.scan(list, new IsoBatchScanner.Sink() {
+				public synchronized void result(File fx, IsoMediaContainer imc) {
+					count[0]++;
+				}
+				public synchronized void error(File fx, Exception ex) {
+					fail("error(" + fx + ") " + ex);
+				}
+			});
+			assertEquals("scan(list) failed", 2, count[0]);
+		}
+		finally {
+			pool.shutdown();
+			final File[] dirs = { sub, root };
+			for(final File dir : dirs) {
+				final File[] list = dir.listFiles();
+				if(list != null) {
+					for(final File fx : list) fx.delete();
+				}
+				dir.delete();
+			}
+		}
+	}
+	@Test
+	public void fourccTables() throws Exception {
+		// known types pack and unpack to the shared name
+		final String[] known = { Box.MOOV, Box.TRAK, Box.STSZ, Box.STZ2, Box.SIDX, Box.DREF_URL, "ctts", "\u00a9nam", "----" };
+		for(final String type : known) {
+			final int code = FourCC.of(type);
+			assertSame("toString(" + type + ") failed", type, FourCC.toString(code));
+			assertEquals("Box(" + type + ").type failed", type, new Box(null, code, 0, 8, 8).type);
+		}
+		assertEquals("MOOV failed", FourCC.MOOV, FourCC.of(Box.MOOV));
+		assertEquals("of(short) failed", FourCC.of("url\0"), FourCC.of("url"));
+		// unknown types round-trip through the decoded form
+		final String[] unknown = { "zz9y", "\u00a9xyz", "\u0000\u0000\u0000\u0000", "\u00ff\u00fe ~" };
+		for(final String type : unknown) {
+			final String name = FourCC.toString(FourCC.of(type));
+			assertEquals("toString(" + type + ") failed", type, name);
+			assertEquals("of(" + type + ") failed", FourCC.of(type), FourCC.of(name));
+		}
+		final Random rnd = new Random(11);
+		for(int ix = 0; ix < 10000; ix++) {
+			final int code = rnd.nextInt();
+			assertEquals("round trip(" + code + ") failed", code, FourCC.of(FourCC.toString(code)));
+		}
+		// classification tables
+		assertTrue("isTopLevel(moov) failed", Box.isTopLevel(FourCC.MOOV));
+		assertTrue("isTopLevel(sidx) failed", Box.isTopLevel(Box.SIDX));
+		assertFalse("isTopLevel(trak) failed", Box.isTopLevel(FourCC.TRAK));
+		assertFalse("isTopLevel(unknown) failed", Box.isTopLevel("zz9y"));
+		assertTrue("hasBoxes(moov) failed", Box.hasBoxes(new Box(null, FourCC.MOOV, 0, 8, 8)));
+		assertTrue("hasBoxes(stbl) failed", Box.hasBoxes(new Box(null, FourCC.STBL, 0, 8, 8)));
+		assertFalse("hasBoxes(stsz) failed", Box.hasBoxes(new Box(null, FourCC.STSZ, 0, 8, 8)));
+		assertFalse("hasBoxes(unknown) failed", Box.hasBoxes(new Box(null, "zz9y", 0, 8, 8)));
+		assertTrue("isFull(stsz) failed", FullBox.isFull(FourCC.STSZ));
+		assertTrue("isFull(sidx) failed", FullBox.isFull(Box.SIDX));
+		assertFalse("isFull(moov) failed", FullBox.isFull(FourCC.MOOV));
+		assertFalse("isFull(unknown) failed", FullBox.isFull("zz9y"));
+	}
+	@Test
+	public void boxLevelPath() throws Exception {
+		final Box moov = new Box(null, Box.MOOV, 0, 1000, 8);
+		final Box trak = new Box(moov, FourCC.TRAK, 8, 900, 8);
+		final Box mdia = new Box(trak, Box.MDIA, 16, 800, 8);
+		final Box stsz = new FullBox(mdia, FourCC.STSZ, 24, 20, 12, 0);
+		assertEquals("level(moov) failed", 0, moov.level());
+		assertEquals("level(trak) failed", 1, trak.level());
+		assertEquals("level(stsz) failed", 3, stsz.level());
+		assertEquals("path failed", "/moov/trak/mdia/stsz", stsz.path());
+		// built once, and the parent's path is reused
+		assertSame("path(cached) failed", stsz.path(), stsz.path());
+		assertSame("path(parent) failed", mdia.path(), stsz.parent.path());
+		assertEquals("path(parent) value failed", "/moov/trak/mdia", mdia.path());
+		assertTrue("isPath failed", stsz.isPath(new int[] { FourCC.MOOV, FourCC.TRAK, FourCC.MDIA, FourCC.STSZ }));
+		assertTrue("isPath(root) failed", moov.isPath(new int[] { FourCC.MOOV }));
+		assertFalse("isPath(short) failed", stsz.isPath(new int[] { FourCC.TRAK, FourCC.MDIA, FourCC.STSZ }));
+		assertFalse("isPath(long) failed", mdia.isPath(new int[] { FourCC.MOOV, FourCC.TRAK, FourCC.MDIA, FourCC.STSZ }));
+		assertFalse("isPath(middle) failed", stsz.isPath(new int[] { FourCC.MOOV, FourCC.MDIA, FourCC.MDIA, FourCC.STSZ }));
+		// boxes from a walk carry the same values
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 100;
+			gen.write(fx);
+			final ArrayList<Box> found = new ArrayList<Box>();
+			ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("//stsz").select(new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					found.add(box);
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			}));
+			assertEquals("found failed", 2, found.size());
+			for(final Box bx : found) {
+				assertEquals("level(walk) failed", 5, bx.level());
+				assertEquals("path(walk) failed", "/moov/trak/mdia/minf/stbl/stsz", bx.path());
+				assertTrue("isPath(walk) failed", bx.isPath(new int[] { FourCC.MOOV, FourCC.TRAK, FourCC.MDIA, FourCC.MINF, FourCC.STBL, FourCC.STSZ }));
+			}
+			assertNotSame("parent(walk) failed", found.get(0).parent, found.get(1).parent);
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	/**
+	 * Handler counting reports per level, and failing on reports for levels it does not enable.
+	 */
+	static class GatedHandler implements ParseHandler {
+		final boolean[] enabled;
+		final int[] reports = new int[3];
+		final ArrayList<String> ungated = new ArrayList<String>();
+		GatedHandler(boolean message, boolean warning, boolean error) {
+			enabled = new boolean[] { message, warning, error };
+		}
+		public boolean isEnabled(int level) {
+			return enabled[level];
+		}
+		void report(int level, String text) {
+			reports[level]++;
+			if(!enabled[level]) ungated.add(text);
+		}
+		public void message(String msg) {
+			report(MESSAGE, msg);
+		}
+		public void warning(Exception ex) {
+			report(WARNING, ex.getMessage());
+		}
+		public void error(Exception ex) {
+			report(ERROR, ex.getMessage());
+		}
+	}
+	@Test
+	public void handlerGating() throws Exception {
+		final int[] levels = { ParseHandler.MESSAGE, ParseHandler.WARNING, ParseHandler.ERROR };
+		for(final int level : levels) {
+			assertFalse("NullHandler(" + level + ") failed", new NullHandler().isEnabled(level));
+			assertTrue("ConsoleHandler(" + level + ") failed", new ConsoleHandler().isEnabled(level));
+		}
+		final File fx = File.createTempFile("isogen", ".m4a");
+		try {
+			final IsoGenerator gen = new IsoGenerator();
+			gen.tracks = 2;
+			gen.samples = 1000;
+			gen.fragmentSamples = 300;
+			gen.write(fx);
+			// every combination of levels; only enabled levels are reported
+			int[] all = null;
+			for(int mask = 0; mask < 8; mask++) {
+				final GatedHandler gh = new GatedHandler((mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0);
+				ISOParser.parse(fx, gh, new IsoContainerHandler());
+				assertTrue("ungated(" + mask + ") failed: " + gh.ungated, gh.ungated.isEmpty());
+				if(mask == 7) all = gh.reports;
+			}
+			assertTrue("messages failed", all[ParseHandler.MESSAGE] > 0);
+			assertTrue("warnings failed", all[ParseHandler.WARNING] > 0);
+			// console handler prints everything
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final ByteArrayOutputStream err = new ByteArrayOutputStream();
+			final PrintStream sout = System.out;
+			final PrintStream serr = System.err;
+			System.setOut(new PrintStream(out, true));
+			System.setErr(new PrintStream(err, true));
+			try {
+				ISOParser.parse(fx, new ConsoleHandler(), new IsoContainerHandler());
+			}
+			finally {
+				System.setOut(sout);
+				System.setErr(serr);
+			}
+			assertTrue("console(message) failed", out.toString().contains("TRAK"));
+			assertTrue("console(warning) failed", err.toString().contains("unhandled box"));
+		}
+		finally {
+			fx.delete();
+		}
+	}
+	@Test
+	public void contextScratch() throws Exception {
+		final File[] files = { File.createTempFile("isogen", ".m4a"), File.createTempFile("isogen", ".m4a") };
+		try {
+			final SampleSize[] expected = new SampleSize[files.length];
+			for(int ix = 0; ix < files.length; ix++) {
+				final IsoGenerator gen = new IsoGenerator();
+				gen.tracks = 2;
+				gen.samples = 3000 + ix*1000;
+				gen.minSize = 100 + ix*1000;
+				gen.maxSize = 300 + ix*60000;
+				gen.seed = ix + 1;
+				gen.write(files[ix]);
+				final IsoContainerHandler tx = new IsoContainerHandler();
+				ISOParser.parse(files[ix], new NullHandler(), tx);
+				expected[ix] = tx.render().tracks[1].stbl.stsz;
+			}
+			// a second context parses in the middle of the first one's walk, between its unmarshals
+			final ArrayList<SampleSize> nested = new ArrayList<SampleSize>();
+			final ArrayList<SampleSize> outer = new ArrayList<SampleSize>();
+			ISOParser.parse(files[0], new NullHandler(), BoxQuery.compile("//stsz").select(new ParseCallback() {
+				public void start() {
+				}
+				public void box(ParseContext pc, Box box) throws Exception {
+					final IsoContainerHandler tx = new IsoContainerHandler();
+					ISOParser.parse(files[1], new NullHandler(), tx);
+					nested.add(tx.render().tracks[1].stbl.stsz);
+					outer.add(pc.<SampleSize>create(box));
+				}
+				public void end(ParseContext pc) throws Exception {
+				}
+			}));
+			assertEquals("outer failed", 2, outer.size());
+			assertSampleSize("outer", expected[0], outer.get(1));
+			assertSampleSize("nested", expected[1], nested.get(1));
+			// contexts on different threads at the same time
+			final ExecutorService pool = Executors.newFixedThreadPool(4);
+			try {
+				final ArrayList<Future<SampleSize>> results = new ArrayList<Future<SampleSize>>();
+				for(int ix = 0; ix < 16; ix++) {
+					final File fx = files[ix%2];
+					results.add(pool.submit(new Callable<SampleSize>() {
+						public SampleSize call() throws Exception {
+							final IsoContainerHandler tx = new IsoContainerHandler();
+							ISOParser.parse(fx, new NullHandler(), tx);
+							return tx.render().tracks[1].stbl.stsz;
+						}
+					}));
+				}
+				for(int ix = 0; ix < results.size(); ix++) {
+					assertSampleSize("thread(" + ix + ")", expected[ix%2], results.get(ix).get());
+				}
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		finally {
+			for(final File fx : files) fx.delete();
+		}
+	}
+	/**
+	 * Compare sample size tables entry by entry.
+	 * @param msg assertion prefix.
+	 * @param expected expected table.
+	 * @param actual actual table.
+	 */
+	static void assertSampleSize(String msg, SampleSize expected, SampleSize actual) {
+		assertNotNull(msg + " failed", actual);
+		assertEquals(msg + ".count failed", expected.count, actual.count);
+		for(int ix = 0; ix < expected.count; ix++) {
+			if(expected.get(ix) != actual.get(ix)) {
+				fail(String.format("%s.get(%d) failed: expected %d, actual %d", msg, ix, expected.get(ix), actual.get(ix)));
+			}
+		}
+	}
+	@Test
+	public void boxQueryItems() throws Exception {
+		final ArrayList<Box> found = new ArrayList<Box>();
+		final ParseCallback collect = new ParseCallback() {
+			public void start() {
+				found.clear();
+			}
+			public void box(ParseContext pc, Box box) throws Exception {
+				found.add(box);
+			}
+			public void end(ParseContext pc) throws Exception {
+			}
+		};
+		// items below ilst are reachable; their data boxes are leaves
+		final File tx = File.createTempFile("isogen", ".m4a");
+		try {
+			final byte[] hdlr = box("hdlr", new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 'm', 'd', 'i', 'r', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+			final byte[] ilst = box("ilst", item("aART", "artist"), item("\u00a9nam", "title"), item("desc", "description"));
+			final FileOutputStream fos = new FileOutputStream(tx);
+			try {
+				fos.write(box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4]));
+				fos.write(box("moov", box("udta", box("meta", new byte[4], hdlr, ilst))));
+			}
+			finally {
+				fos.close();
+			}
+			ISOParser.parse(tx, new NullHandler(), BoxQuery.compile("//ilst/*").select(collect));
+			assertEquals("items failed", 3, found.size());
+			assertEquals("items(name) failed", "\u00a9nam", found.get(1).type);
+			ISOParser.parse(tx, new NullHandler(), BoxQuery.compile("/moov/udta/meta/ilst/desc/data").select(collect));
+			assertEquals("item data failed", 1, found.size());
+			ISOParser.parse(tx, new NullHandler(), BoxQuery.compile("//ilst//*").select(collect));
+			assertEquals("item descendants failed", 6, found.size());
+		}
+		finally {
+			tx.delete();
+		}
+		final File fx = new File(PATH + "auphonic_chapters_demo.m4a");
+		assertTrue("exists failed", fx.exists());
+		ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("//ilst/*").select(collect));
+		assertEquals("//ilst/* failed", 15, found.size());
+		ISOParser.parse(fx, new NullHandler(), BoxQuery.compile("/moov/udta/meta/ilst/*").select(collect));
+		assertEquals("/moov/udta/meta/ilst/* failed", 15, found.size());
+		assertEquals("/moov/udta/meta/ilst/*[0] failed", "/moov/udta/meta/ilst/\u00a9nam", found.get(0).path());
+	}
 }
\ No newline at end of file